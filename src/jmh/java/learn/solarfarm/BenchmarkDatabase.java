@@ -0,0 +1,51 @@
+package learn.solarfarm;
+
+import com.zaxxer.hikari.HikariDataSource;
+import learn.solarfarm.data.DataAccessException;
+import learn.solarfarm.data.SolarPanelJdbcTemplateRepository;
+import learn.solarfarm.models.SolarPanel;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.util.List;
+
+/**
+ * An in-memory H2 database, in MySQL mode, with the embedded-db profile's schema.
+ * Each instance is a separate database, dropped by {@link #close()}.
+ */
+public class BenchmarkDatabase implements AutoCloseable {
+    private static final int LOAD_BATCH_SIZE = 10_000;
+
+    private final HikariDataSource dataSource;
+    private final JdbcTemplate template;
+
+    public BenchmarkDatabase(String name) {
+        // IGNORECASE makes the unique constraint case-insensitive, like MySQL's default collation.
+        // Pooled like the application's datasource, so a query doesn't pay for a new connection.
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:" + name + ";MODE=MySQL;IGNORECASE=TRUE;DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        template = new JdbcTemplate(dataSource);
+        new ResourceDatabasePopulator(new ClassPathResource("embedded-db/schema.sql")).execute(dataSource);
+    }
+
+    public JdbcTemplate getTemplate() {
+        return template;
+    }
+
+    /**
+     * Loads a farm through the repository's batch insert.
+     */
+    public void load(SolarPanelJdbcTemplateRepository repository, List<SolarPanel> solarPanels) throws DataAccessException {
+        for (int start = 0; start < solarPanels.size(); start += LOAD_BATCH_SIZE) {
+            repository.createAll(solarPanels.subList(start, Math.min(start + LOAD_BATCH_SIZE, solarPanels.size())));
+        }
+    }
+
+    @Override
+    public void close() {
+        template.execute("drop all objects");
+        dataSource.close();
+    }
+}
@@ -0,0 +1,62 @@
+package learn.solarfarm;
+
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SolarPanel;
+import learn.solarfarm.models.SolarPanelKey;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A generated farm for benchmarks, the same for a given size and seed on every run.
+ *
+ * Sections are filled row by row, {@link #PANELS_PER_SECTION} panels each, so a farm of
+ * a million panels has a hundred sections. Ids are 1 to size, in section order.
+ */
+public final class BenchmarkFarm {
+    public static final int PANELS_PER_SECTION = 10_000;
+    public static final long SEED = 20_200_901L;
+
+    private static final int COLUMNS = 200;
+
+    private BenchmarkFarm() {
+    }
+
+    public static List<SolarPanel> generate(int size) {
+        Random random = new Random(SEED);
+        Material[] materials = Material.values();
+        ArrayList<SolarPanel> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int slot = i % PANELS_PER_SECTION;
+            result.add(new SolarPanel(i + 1, sectionName(i / PANELS_PER_SECTION),
+                    slot / COLUMNS + 1, slot % COLUMNS + 1,
+                    1990 + random.nextInt(30), materials[random.nextInt(materials.length)],
+                    random.nextInt(3) == 0));
+        }
+        return result;
+    }
+
+    public static int sectionCount(int size) {
+        return (size + PANELS_PER_SECTION - 1) / PANELS_PER_SECTION;
+    }
+
+    public static String sectionName(int section) {
+        return String.format("Section %04d", section);
+    }
+
+    /**
+     * The key of the panel with a zero-based index in a generated farm.
+     */
+    public static SolarPanelKey keyOf(int index) {
+        int slot = index % PANELS_PER_SECTION;
+        return new SolarPanelKey(sectionName(index / PANELS_PER_SECTION), slot / COLUMNS + 1, slot % COLUMNS + 1);
+    }
+
+    /**
+     * A panel that isn't in a generated farm of any size, for create benchmarks.
+     */
+    public static SolarPanel newPanel() {
+        return new SolarPanel(0, "Benchmark New", 1, 1, 2020, Material.CIGS, true);
+    }
+}
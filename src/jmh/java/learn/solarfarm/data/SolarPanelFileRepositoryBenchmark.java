@@ -0,0 +1,111 @@
+package learn.solarfarm.data;
+
+import learn.solarfarm.BenchmarkFarm;
+import learn.solarfarm.models.SolarPanel;
+import learn.solarfarm.models.SolarPanelKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The file repository over a generated farm: reads from the resident state, a write and
+ * its undo, and loading the farm from disk.
+ *
+ *   mvn -P benchmark test-compile exec:exec -Djmh.args="SolarPanelFileRepositoryBenchmark -p panels=1000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SolarPanelFileRepositoryBenchmark {
+    private static final int LOOKUPS = 1024;
+
+    @Param({"1000", "100000", "1000000"})
+    int panels;
+
+    @Param({"false", "true"})
+    boolean journaled;
+
+    Path directory;
+    String dataPath;
+    SolarPanelFileRepository repository;
+    SolarPanelKey[] keys = new SolarPanelKey[LOOKUPS];
+    String section;
+    int next;
+
+    @Setup
+    public void setup() throws IOException, DataAccessException {
+        directory = Files.createTempDirectory("solarfarm-benchmark");
+        dataPath = directory.resolve("farm.txt").toString();
+        new SolarPanelTextFormat().write(Path.of(dataPath), BenchmarkFarm.generate(panels));
+        repository = newRepository();
+
+        Random random = new Random(BenchmarkFarm.SEED);
+        for (int i = 0; i < LOOKUPS; i++) {
+            keys[i] = BenchmarkFarm.keyOf(random.nextInt(panels));
+        }
+        section = BenchmarkFarm.sectionName(BenchmarkFarm.sectionCount(panels) / 2);
+        // Loads the resident state.
+        repository.findByKey(keys[0]);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public SolarPanel findByKey() throws DataAccessException {
+        return repository.findByKey(keys[next++ % LOOKUPS]);
+    }
+
+    @Benchmark
+    public List<SolarPanel> findBySection() throws DataAccessException {
+        return repository.findBySection(section);
+    }
+
+    @Benchmark
+    public List<SolarPanel> findBySectionPage() throws DataAccessException {
+        return repository.findBySection(section, 0, 0, 100);
+    }
+
+    @Benchmark
+    public boolean createAndDelete() throws DataAccessException {
+        SolarPanel solarPanel = repository.create(BenchmarkFarm.newPanel());
+        return repository.deleteByKey(solarPanel.getKey());
+    }
+
+    @Benchmark
+    public SolarPanel load() throws DataAccessException {
+        return newRepository().findByKey(keys[0]);
+    }
+
+    private SolarPanelFileRepository newRepository() {
+        return new SolarPanelFileRepository(dataPath, "text", "single", journaled,
+                SolarPanelFileRepository.DEFAULT_COMPACTION_THRESHOLD, false, 0);
+    }
+}
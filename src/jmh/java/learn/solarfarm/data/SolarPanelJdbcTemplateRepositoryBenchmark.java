@@ -0,0 +1,86 @@
+package learn.solarfarm.data;
+
+import learn.solarfarm.BenchmarkDatabase;
+import learn.solarfarm.BenchmarkFarm;
+import learn.solarfarm.models.SolarPanel;
+import learn.solarfarm.models.SolarPanelKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The JDBC repository against an in-memory H2 database in MySQL mode, so it runs without
+ * a MySQL server. Numbers measure the repository and the driver round trip, not MySQL.
+ *
+ *   mvn -P benchmark test-compile exec:exec -Djmh.args="SolarPanelJdbcTemplateRepositoryBenchmark -p panels=1000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SolarPanelJdbcTemplateRepositoryBenchmark {
+    private static final int LOOKUPS = 1024;
+
+    @Param({"1000", "100000", "1000000"})
+    int panels;
+
+    BenchmarkDatabase database;
+    SolarPanelJdbcTemplateRepository repository;
+    SolarPanelKey[] keys = new SolarPanelKey[LOOKUPS];
+    String section;
+    int next;
+
+    @Setup
+    public void setup() throws DataAccessException {
+        database = new BenchmarkDatabase("jdbc_benchmark");
+        repository = new SolarPanelJdbcTemplateRepository(database.getTemplate());
+        database.load(repository, BenchmarkFarm.generate(panels));
+
+        Random random = new Random(BenchmarkFarm.SEED);
+        for (int i = 0; i < LOOKUPS; i++) {
+            keys[i] = BenchmarkFarm.keyOf(random.nextInt(panels));
+        }
+        section = BenchmarkFarm.sectionName(BenchmarkFarm.sectionCount(panels) / 2);
+    }
+
+    @TearDown
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public SolarPanel findByKey() throws DataAccessException {
+        return repository.findByKey(keys[next++ % LOOKUPS]);
+    }
+
+    @Benchmark
+    public List<SolarPanel> findBySection() throws DataAccessException {
+        return repository.findBySection(section);
+    }
+
+    @Benchmark
+    public List<SolarPanel> findBySectionPage() throws DataAccessException {
+        return repository.findBySection(section, 0, 0, 100);
+    }
+
+    @Benchmark
+    public boolean createAndDelete() throws DataAccessException {
+        SolarPanel solarPanel = repository.create(BenchmarkFarm.newPanel());
+        return repository.deleteByKey(solarPanel.getKey());
+    }
+}
@@ -0,0 +1,96 @@
+package learn.solarfarm.data;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import learn.solarfarm.BenchmarkFarm;
+import learn.solarfarm.models.SolarPanel;
+import learn.solarfarm.models.SolarPanelKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The cost of timing the hot read path: file repository lookups from the resident state,
+ * with and without a {@link SolarPanelMeteredRepository} recording into a Prometheus
+ * registry with percentile histograms on, as the application is configured.
+ *
+ *   mvn -P benchmark test-compile exec:exec -Djmh.args="SolarPanelMeteredRepositoryBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SolarPanelMeteredRepositoryBenchmark {
+    private static final int PANELS = 100000;
+    private static final int LOOKUPS = 1024;
+
+    @Param({"false", "true"})
+    boolean metered;
+
+    Path directory;
+    SolarPanelRepository repository;
+    SolarPanelKey[] keys = new SolarPanelKey[LOOKUPS];
+    int next;
+
+    @Setup
+    public void setup() throws IOException, DataAccessException {
+        directory = Files.createTempDirectory("solarfarm-benchmark");
+        String dataPath = directory.resolve("farm.txt").toString();
+        new SolarPanelTextFormat().write(Path.of(dataPath), BenchmarkFarm.generate(PANELS));
+        repository = new SolarPanelFileRepository(dataPath, "text", "single", false,
+                SolarPanelFileRepository.DEFAULT_COMPACTION_THRESHOLD, false, 0);
+        if (metered) {
+            PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+            registry.config().meterFilter(new MeterFilter() {
+                @Override
+                public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                    return DistributionStatisticConfig.builder().percentilesHistogram(true).build().merge(config);
+                }
+            });
+            repository = new SolarPanelMeteredRepository(repository, registry);
+        }
+
+        Random random = new Random(BenchmarkFarm.SEED);
+        for (int i = 0; i < LOOKUPS; i++) {
+            keys[i] = BenchmarkFarm.keyOf(random.nextInt(PANELS));
+        }
+        // Loads the resident state.
+        repository.findByKey(keys[0]);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public SolarPanel findByKey() throws DataAccessException {
+        return repository.findByKey(keys[next++ % LOOKUPS]);
+    }
+}
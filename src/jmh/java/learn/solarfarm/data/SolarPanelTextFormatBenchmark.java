@@ -0,0 +1,133 @@
+package learn.solarfarm.data;
+
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SolarPanel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming `~` codec with the String.split parser it replaced,
+ * reading and writing a generated farm file.
+ *
+ *   mvn -P benchmark test-compile exec:exec -Djmh.args="SolarPanelTextFormatBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SolarPanelTextFormatBenchmark {
+
+    @Param("1000000")
+    int rows;
+
+    SolarPanelTextFormat format = new SolarPanelTextFormat();
+    Path dataPath;
+    Path outputPath;
+    List<SolarPanel> solarPanels;
+
+    @Setup
+    public void setup() throws IOException, DataAccessException {
+        dataPath = Files.createTempFile("solarfarm-benchmark", ".txt");
+        outputPath = Files.createTempFile("solarfarm-benchmark-out", ".txt");
+        Material[] materials = Material.values();
+        ArrayList<SolarPanel> generated = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            generated.add(new SolarPanel(i + 1, "Section " + (i / 62_001), i / 249 % 249 + 1, i % 249 + 1,
+                    1990 + i % 30, materials[i % materials.length], i % 3 == 0));
+        }
+        format.write(dataPath, generated);
+        solarPanels = generated;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(dataPath);
+        Files.deleteIfExists(outputPath);
+    }
+
+    @Benchmark
+    public List<SolarPanel> readStreaming() throws DataAccessException {
+        return format.read(dataPath);
+    }
+
+    @Benchmark
+    public List<SolarPanel> readSplit() throws IOException {
+        ArrayList<SolarPanel> result = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(dataPath)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                SolarPanel sp = splitLineToSolarPanel(line);
+                if (sp != null) {
+                    result.add(sp);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public void writeStreaming() throws DataAccessException {
+        format.write(outputPath, solarPanels);
+    }
+
+    @Benchmark
+    public void writeConcatenated() throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(outputPath))) {
+            for (SolarPanel solarPanel : solarPanels) {
+                writer.println(concatenatedSolarPanelToLine(solarPanel));
+            }
+        }
+    }
+
+    // The parser and encoder SolarPanelTextFormat used before the streaming codec.
+
+    private static SolarPanel splitLineToSolarPanel(String line) {
+        String[] fields = line.split("~");
+
+        if (fields.length != 7) {
+            return null;
+        }
+
+        return new SolarPanel(
+                Integer.parseInt(fields[0]),
+                fields[1],
+                Integer.parseInt(fields[2]),
+                Integer.parseInt(fields[3]),
+                Integer.parseInt(fields[4]),
+                Material.valueOf(fields[5]),
+                "true".equals(fields[6])
+        );
+    }
+
+    private static String concatenatedSolarPanelToLine(SolarPanel solarPanel) {
+        StringBuilder buffer = new StringBuilder(100);
+        buffer.append(solarPanel.getId()).append("~");
+        buffer.append(solarPanel.getSection().replace("~", "").replace("/r", "").replace("/n", "")).append("~");
+        buffer.append(solarPanel.getRow()).append("~");
+        buffer.append(solarPanel.getColumn()).append("~");
+        buffer.append(solarPanel.getYearInstalled()).append("~");
+        buffer.append(solarPanel.getMaterial()).append("~");
+        buffer.append(solarPanel.isTracking());
+        return buffer.toString();
+    }
+}
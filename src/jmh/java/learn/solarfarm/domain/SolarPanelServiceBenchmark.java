@@ -0,0 +1,137 @@
+package learn.solarfarm.domain;
+
+import learn.solarfarm.BenchmarkFarm;
+import learn.solarfarm.data.SolarPanelRepository;
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SolarPanel;
+import learn.solarfarm.models.SolarPanelKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SolarPanelService.create over a repository that does no work, so the numbers are the
+ * service's own: validation and the occupancy check. The farm size sets how much
+ * occupancy there is to check against.
+ *
+ *   mvn -P benchmark test-compile exec:exec -Djmh.args="SolarPanelServiceBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SolarPanelServiceBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    int panels;
+
+    SolarPanelService service;
+
+    @Setup
+    public void setup() throws Exception {
+        service = new SolarPanelService(new NoOpRepository(BenchmarkFarm.generate(panels)));
+        // Loads the occupancy.
+        service.findFreeSlots(BenchmarkFarm.sectionName(0), 1);
+    }
+
+    @Benchmark
+    public SolarPanelResult createValid() throws Exception {
+        SolarPanelResult result = service.create(BenchmarkFarm.newPanel());
+        // Frees the slot for the next call.
+        service.deleteByKey(result.getSolarPanel().getKey());
+        return result;
+    }
+
+    @Benchmark
+    public SolarPanelResult createInvalid() throws Exception {
+        return service.create(new SolarPanel(0, " ", 0, 300, 9999, null, false));
+    }
+
+    @Benchmark
+    public SolarPanelResult createDuplicate() throws Exception {
+        return service.create(new SolarPanel(0, BenchmarkFarm.sectionName(0), 1, 1, 2020, Material.CIGS, true));
+    }
+
+    private static class NoOpRepository implements SolarPanelRepository {
+        private final HashMap<Integer, SolarPanelKey> keys = new HashMap<>();
+
+        NoOpRepository(List<SolarPanel> solarPanels) {
+            for (SolarPanel solarPanel : solarPanels) {
+                keys.put(solarPanel.getId(), solarPanel.getKey());
+            }
+        }
+
+        @Override
+        public List<SolarPanel> findBySection(String section) {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public List<SolarPanel> findBySection(String section, int afterRow, int afterColumn, int limit) {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public void streamBySection(String section, Consumer<SolarPanel> consumer) {
+        }
+
+        @Override
+        public SolarPanel findByKey(SolarPanelKey key) {
+            return null;
+        }
+
+        @Override
+        public SolarPanel findById(int id) {
+            return null;
+        }
+
+        @Override
+        public Map<Integer, SolarPanelKey> findAllKeys() {
+            return keys;
+        }
+
+        @Override
+        public List<SolarPanel> findByKeys(Collection<SolarPanelKey> keys) {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public SolarPanel create(SolarPanel solarPanel) {
+            solarPanel.setId(Integer.MAX_VALUE);
+            return solarPanel;
+        }
+
+        @Override
+        public List<SolarPanel> createAll(List<SolarPanel> solarPanels) {
+            return solarPanels;
+        }
+
+        @Override
+        public boolean update(SolarPanel solarPanel) {
+            return true;
+        }
+
+        @Override
+        public boolean deleteByKey(SolarPanelKey key) {
+            return true;
+        }
+    }
+}
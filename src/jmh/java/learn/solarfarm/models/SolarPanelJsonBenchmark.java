@@ -0,0 +1,164 @@
+package learn.solarfarm.models;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import learn.solarfarm.BenchmarkFarm;
+import learn.solarfarm.controller.SolarPanelBinaryHttpMessageConverter;
+import learn.solarfarm.controller.SolarPanelJsonModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson (de)serialization of SolarPanel, one panel and a whole section, with the
+ * ObjectMapper settings Spring Boot's web layer uses, against the binary wire form.
+ *
+ * `format` is how panels are written:
+ *   reflection  Jackson's default bean serialization, with the `key` object (before)
+ *   json        SolarPanelJsonModule's hand-written serializer
+ *   compact     each panel as an array of its fields
+ *   columnar    one array per field
+ *   binary      SolarPanelBinaryHttpMessageConverter's varints and section dictionary
+ * Compact and columnar aren't read, so the deserialize benchmarks don't take them.
+ * The bytes per panel of a section are printed when the benchmark is set up.
+ *
+ *   mvn -P benchmark test-compile exec:exec -Djmh.args="SolarPanelJsonBenchmark.serialize -prof gc"
+ *   mvn -P benchmark test-compile exec:exec -Djmh.args="SolarPanelJsonBenchmark.deserialize -p format=reflection,json,binary"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SolarPanelJsonBenchmark {
+    private static final TypeReference<List<SolarPanel>> SOLAR_PANEL_LIST = new TypeReference<>() {
+    };
+
+    @Param({"1000", "10000"})
+    int sectionSize;
+
+    @Param({"reflection", "json", "compact", "columnar", "binary"})
+    String format;
+
+    ObjectMapper reflectionMapper = Jackson2ObjectMapperBuilder.json().build();
+    ObjectMapper mapper;
+    SolarPanel solarPanel;
+    List<SolarPanel> section;
+    String solarPanelJson;
+    String sectionJson;
+    byte[] solarPanelBinary;
+    byte[] sectionBinary;
+
+    @Setup
+    public void setup() throws IOException {
+        mapper = "reflection".equals(format)
+                ? reflectionMapper
+                : Jackson2ObjectMapperBuilder.json().modulesToInstall(new SolarPanelJsonModule()).build();
+        section = BenchmarkFarm.generate(sectionSize);
+        solarPanel = section.get(0);
+        solarPanelJson = mapper.writeValueAsString(requestBody(solarPanel));
+        sectionJson = mapper.writeValueAsString(requestBody(section));
+        solarPanelBinary = binary(List.of(solarPanel));
+        sectionBinary = binary(section);
+        System.out.printf("%n%s: %.1f bytes per panel in a section of %s%n",
+                format, (double) serializeSection().length / sectionSize, sectionSize);
+    }
+
+    // A request body, as a client sends it: the computed `key` is output only.
+    private JsonNode requestBody(Object value) {
+        JsonNode tree = reflectionMapper.valueToTree(value);
+        if (tree.isArray()) {
+            tree.forEach(element -> ((ObjectNode) element).remove("key"));
+        } else {
+            ((ObjectNode) tree).remove("key");
+        }
+        return tree;
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        switch (format) {
+            case "compact":
+                return write(generator -> SolarPanelJsonModule.writeCompact(solarPanel, generator));
+            case "columnar":
+                return write(generator -> SolarPanelJsonModule.writeColumnar(List.of(solarPanel), generator));
+            case "binary":
+                return binary(List.of(solarPanel));
+            default:
+                return mapper.writeValueAsBytes(solarPanel);
+        }
+    }
+
+    @Benchmark
+    public byte[] serializeSection() throws IOException {
+        switch (format) {
+            case "compact":
+                return write(generator -> {
+                    generator.writeStartArray();
+                    for (SolarPanel panel : section) {
+                        SolarPanelJsonModule.writeCompact(panel, generator);
+                    }
+                    generator.writeEndArray();
+                });
+            case "columnar":
+                return write(generator -> SolarPanelJsonModule.writeColumnar(section, generator));
+            case "binary":
+                return binary(section);
+            default:
+                return mapper.writeValueAsBytes(section);
+        }
+    }
+
+    @Benchmark
+    public SolarPanel deserialize() throws IOException {
+        if ("binary".equals(format)) {
+            return SolarPanelBinaryHttpMessageConverter.read(solarPanelBinary, null).get(0);
+        }
+        return mapper.readValue(solarPanelJson, SolarPanel.class);
+    }
+
+    @Benchmark
+    public List<SolarPanel> deserializeSection() throws IOException {
+        if ("binary".equals(format)) {
+            return SolarPanelBinaryHttpMessageConverter.read(sectionBinary, null);
+        }
+        return mapper.readValue(sectionJson, SOLAR_PANEL_LIST);
+    }
+
+    private byte[] binary(List<SolarPanel> solarPanels) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SolarPanelBinaryHttpMessageConverter.write(solarPanels, out);
+        return out.toByteArray();
+    }
+
+    private byte[] write(GeneratorWork work) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            work.write(generator);
+        }
+        return out.toByteArray();
+    }
+
+    private interface GeneratorWork {
+        void write(JsonGenerator generator) throws IOException;
+    }
+}
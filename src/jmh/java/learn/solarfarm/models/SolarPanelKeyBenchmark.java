@@ -0,0 +1,230 @@
+package learn.solarfarm.models;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import learn.solarfarm.data.SolarPanelIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the lazy, hash-caching key with the eager key it replaced: populating a panel
+ * through its setters, deserializing one from JSON, and finding a panel by a key whose
+ * section is spelled in a different case. The index lookups find the same panels through
+ * the file repository's index, which is keyed on the packed key: once with keys that have
+ * already packed themselves, and once with a new key per lookup.
+ *
+ *   mvn -P benchmark test-compile exec:exec -Djmh.args="SolarPanelKeyBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SolarPanelKeyBenchmark {
+    private static final int PANELS = 10_000;
+    private static final String JSON = "{\"section\":\"The Ridge\",\"row\":12,\"column\":34,"
+            + "\"yearInstalled\":2015,\"material\":\"CIGS\",\"tracking\":true}";
+
+    ObjectMapper mapper = new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    HashMap<SolarPanelKey, SolarPanel> byKey = new HashMap<>();
+    HashMap<LegacyKey, LegacyPanel> legacyByKey = new HashMap<>();
+    SolarPanelIndex index = new SolarPanelIndex();
+    SolarPanelKey[] lookups = new SolarPanelKey[PANELS];
+    LegacyKey[] legacyLookups = new LegacyKey[PANELS];
+    int next;
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < PANELS; i++) {
+            String section = "Section " + (i / 1000);
+            int row = i / 100 % 10 + 1;
+            int column = i % 100 + 1;
+            SolarPanel solarPanel = new SolarPanel(i + 1, section, row, column, 2000, Material.CIGS, false);
+            byKey.put(solarPanel.getKey(), solarPanel);
+            index.put(new SolarPanel(solarPanel));
+            LegacyPanel legacy = new LegacyPanel(section, row, column);
+            legacyByKey.put(LegacyKey.normalize(legacy.key), legacy);
+            lookups[i] = new SolarPanelKey(section.toUpperCase(Locale.ROOT), row, column);
+            legacyLookups[i] = new LegacyKey(section.toUpperCase(Locale.ROOT), row, column);
+        }
+    }
+
+    @Benchmark
+    public SolarPanelKey populate() {
+        SolarPanel solarPanel = new SolarPanel();
+        solarPanel.setSection("The Ridge");
+        solarPanel.setRow(12);
+        solarPanel.setColumn(34);
+        solarPanel.setYearInstalled(2015);
+        solarPanel.setMaterial(Material.CIGS);
+        return solarPanel.getKey();
+    }
+
+    @Benchmark
+    public LegacyKey populateLegacy() {
+        LegacyPanel solarPanel = new LegacyPanel();
+        solarPanel.setSection("The Ridge");
+        solarPanel.setRow(12);
+        solarPanel.setColumn(34);
+        solarPanel.setYearInstalled(2015);
+        solarPanel.setMaterial(Material.CIGS);
+        return solarPanel.getKey();
+    }
+
+    @Benchmark
+    public SolarPanel deserialize() throws IOException {
+        return mapper.readValue(JSON, SolarPanel.class);
+    }
+
+    @Benchmark
+    public LegacyPanel deserializeLegacy() throws IOException {
+        return mapper.readValue(JSON, LegacyPanel.class);
+    }
+
+    @Benchmark
+    public SolarPanel lookup() {
+        return byKey.get(lookups[next++ % PANELS]);
+    }
+
+    @Benchmark
+    public SolarPanel lookupIndex() {
+        return index.findByKey(lookups[next++ % PANELS]);
+    }
+
+    @Benchmark
+    public SolarPanel lookupIndexNewKey() {
+        SolarPanelKey key = lookups[next++ % PANELS];
+        return index.findByKey(new SolarPanelKey(key.getSection(), key.getRow(), key.getColumn()));
+    }
+
+    @Benchmark
+    public LegacyPanel lookupLegacy() {
+        return legacyByKey.get(LegacyKey.normalize(legacyLookups[next++ % PANELS]));
+    }
+
+    /**
+     * The key as it was: hashed with Objects.hash on every call, and lower-cased into
+     * a copy before it could be used in a case-insensitive map.
+     */
+    public static class LegacyKey {
+        private final String section;
+        private final int row;
+        private final int column;
+
+        public LegacyKey(String section, int row, int column) {
+            this.section = section;
+            this.row = row;
+            this.column = column;
+        }
+
+        static LegacyKey normalize(LegacyKey key) {
+            return new LegacyKey(key.section.toLowerCase(Locale.ROOT), key.row, key.column);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            LegacyKey that = (LegacyKey) o;
+            return row == that.row && column == that.column && section.equalsIgnoreCase(that.section);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(section, row, column);
+        }
+    }
+
+    /**
+     * The panel as it was: every section, row, and column setter built a new key.
+     */
+    public static class LegacyPanel {
+        private String section;
+        private int row;
+        private int column;
+        private int yearInstalled;
+        private Material material;
+        private boolean tracking;
+        private LegacyKey key;
+
+        public LegacyPanel() {
+        }
+
+        LegacyPanel(String section, int row, int column) {
+            this.section = section;
+            this.row = row;
+            this.column = column;
+            this.key = new LegacyKey(section, row, column);
+        }
+
+        public String getSection() {
+            return section;
+        }
+
+        public void setSection(String section) {
+            this.section = section;
+            this.key = new LegacyKey(section, row, column);
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        public void setRow(int row) {
+            this.row = row;
+            this.key = new LegacyKey(section, row, column);
+        }
+
+        public int getColumn() {
+            return column;
+        }
+
+        public void setColumn(int column) {
+            this.column = column;
+            this.key = new LegacyKey(section, row, column);
+        }
+
+        public int getYearInstalled() {
+            return yearInstalled;
+        }
+
+        public void setYearInstalled(int yearInstalled) {
+            this.yearInstalled = yearInstalled;
+        }
+
+        public Material getMaterial() {
+            return material;
+        }
+
+        public void setMaterial(Material material) {
+            this.material = material;
+        }
+
+        public boolean isTracking() {
+            return tracking;
+        }
+
+        public void setTracking(boolean tracking) {
+            this.tracking = tracking;
+        }
+
+        public LegacyKey getKey() {
+            return key;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package learn.solarfarm.controller;
+
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SolarPanel;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Reads and writes solar panels in a compact binary form, for clients that send or ask for
+ * `application/vnd.solarfarm.panels`. A section of panels is usually under 10 bytes each,
+ * and decoding is a pass over the bytes with no tokenizing or field-name matching.
+ *
+ * Every integer is an unsigned LEB128 varint: 7 bits a byte, low bits first, high bit set
+ * on every byte but the last. A negative int takes 5 bytes and reads back as itself.
+ *
+ *   version         varint, 1
+ *   sectionCount    varint
+ *   dictionary      sectionCount x (varint byteLength, UTF-8 bytes)
+ *   panelCount      varint
+ *   panels          panelCount x (varint id, varint sectionIndex, varint row, varint column,
+ *                                 varint yearInstalled, byte material value << 1 | tracking)
+ *
+ * A material of 0 is no material. A single panel is written and read as a list of one.
+ */
+public class SolarPanelBinaryHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+    public static final MediaType BINARY = MediaType.parseMediaType("application/vnd.solarfarm.panels");
+    public static final int VERSION = 1;
+
+    private static final int TRACKING_BIT = 1;
+    private static final int BUFFER_SIZE = 8192;
+    // The fewest bytes a panel can take, to bound a count before allocating for it.
+    private static final int MIN_PANEL_SIZE = 6;
+
+    private static final Material[] MATERIALS = new Material[128];
+
+    static {
+        for (Material material : Material.values()) {
+            MATERIALS[material.getValue()] = material;
+        }
+    }
+
+    public SolarPanelBinaryHttpMessageConverter() {
+        super(BINARY);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return SolarPanel.class.isAssignableFrom(clazz) || Collection.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        return canWrite(mediaType) && isSolarPanels(type == null ? ResolvableType.forClass(clazz) : ResolvableType.forType(type));
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return canRead(mediaType) && isSolarPanels(ResolvableType.forType(type));
+    }
+
+    private boolean isSolarPanels(ResolvableType type) {
+        Class<?> clazz = type.toClass();
+        if (SolarPanel.class.isAssignableFrom(clazz)) {
+            return true;
+        }
+        if (!Collection.class.isAssignableFrom(clazz)) {
+            return false;
+        }
+        Class<?> element = type.asCollection().resolveGeneric(0);
+        return element != null && SolarPanel.class.isAssignableFrom(element);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void writeInternal(Object value, Type type, HttpOutputMessage outputMessage) throws IOException {
+        Collection<SolarPanel> solarPanels = value instanceof SolarPanel
+                ? List.of((SolarPanel) value)
+                : (Collection<SolarPanel>) value;
+        write(solarPanels, outputMessage.getBody());
+    }
+
+    /**
+     * Writes solar panels in the binary form. The stream isn't closed.
+     */
+    public static void write(Collection<SolarPanel> solarPanels, OutputStream out) throws IOException {
+        LinkedHashMap<String, Integer> sections = new LinkedHashMap<>();
+        for (SolarPanel solarPanel : solarPanels) {
+            sections.putIfAbsent(solarPanel.getSection(), sections.size());
+        }
+
+        VarintWriter writer = new VarintWriter(out);
+        writer.writeVarint(VERSION);
+        writer.writeVarint(sections.size());
+        for (String section : sections.keySet()) {
+            byte[] bytes = (section == null ? "" : section).getBytes(StandardCharsets.UTF_8);
+            writer.writeVarint(bytes.length);
+            writer.write(bytes);
+        }
+        writer.writeVarint(solarPanels.size());
+        for (SolarPanel solarPanel : solarPanels) {
+            writer.writeVarint(solarPanel.getId());
+            writer.writeVarint(sections.get(solarPanel.getSection()));
+            writer.writeVarint(solarPanel.getRow());
+            writer.writeVarint(solarPanel.getColumn());
+            writer.writeVarint(solarPanel.getYearInstalled());
+            int material = solarPanel.getMaterial() == null ? 0 : solarPanel.getMaterial().getValue();
+            writer.writeByte(material << 1 | (solarPanel.isTracking() ? TRACKING_BIT : 0));
+        }
+        writer.flush();
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+        List<SolarPanel> solarPanels = read(StreamUtils.copyToByteArray(inputMessage.getBody()), inputMessage);
+        if (!SolarPanel.class.isAssignableFrom(ResolvableType.forType(type).toClass())) {
+            return solarPanels;
+        }
+        if (solarPanels.size() != 1) {
+            throw new HttpMessageNotReadableException("Expected one solar panel, found " + solarPanels.size(), inputMessage);
+        }
+        return solarPanels.get(0);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        return read(clazz, null, inputMessage);
+    }
+
+    /**
+     * Reads solar panels in the binary form.
+     */
+    public static List<SolarPanel> read(byte[] bytes, HttpInputMessage inputMessage) {
+        VarintReader reader = new VarintReader(bytes, inputMessage);
+        int version = reader.readVarint();
+        if (version != VERSION) {
+            throw new HttpMessageNotReadableException("Unsupported solar panel binary version: " + version, inputMessage);
+        }
+
+        String[] sections = new String[reader.readCount(1)];
+        for (int i = 0; i < sections.length; i++) {
+            sections[i] = reader.readString();
+        }
+
+        int count = reader.readCount(MIN_PANEL_SIZE);
+        ArrayList<SolarPanel> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int id = reader.readVarint();
+            int section = reader.readVarint();
+            if (section < 0 || section >= sections.length) {
+                throw new HttpMessageNotReadableException("Unknown section index: " + section, inputMessage);
+            }
+            int row = reader.readVarint();
+            int column = reader.readVarint();
+            int yearInstalled = reader.readVarint();
+            int flags = reader.readByte();
+            result.add(new SolarPanel(id, sections[section], row, column, yearInstalled,
+                    MATERIALS[flags >>> 1], (flags & TRACKING_BIT) != 0));
+        }
+        if (reader.hasRemaining()) {
+            throw new HttpMessageNotReadableException("Unexpected bytes after the last solar panel", inputMessage);
+        }
+        return result;
+    }
+
+    private static class VarintWriter {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position;
+
+        private VarintWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        void writeVarint(int value) throws IOException {
+            if (position > BUFFER_SIZE - 5) {
+                flush();
+            }
+            while ((value & ~0x7F) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeByte(int value) throws IOException {
+            if (position == BUFFER_SIZE) {
+                flush();
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void write(byte[] bytes) throws IOException {
+            if (bytes.length > BUFFER_SIZE - position) {
+                flush();
+                out.write(bytes);
+            } else {
+                System.arraycopy(bytes, 0, buffer, position, bytes.length);
+                position += bytes.length;
+            }
+        }
+
+        void flush() throws IOException {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    private static class VarintReader {
+        private final byte[] bytes;
+        private final HttpInputMessage inputMessage;
+        private int position;
+
+        private VarintReader(byte[] bytes, HttpInputMessage inputMessage) {
+            this.bytes = bytes;
+            this.inputMessage = inputMessage;
+        }
+
+        int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new HttpMessageNotReadableException("Malformed varint at byte " + position, inputMessage);
+        }
+
+        // A count of items at least minSize bytes each, checked against the bytes left so a
+        // bad count can't make the reader allocate more than the body could hold.
+        int readCount(int minSize) {
+            int count = readVarint();
+            if (count < 0 || count > (bytes.length - position) / minSize) {
+                throw new HttpMessageNotReadableException("Count " + count + " is larger than the body", inputMessage);
+            }
+            return count;
+        }
+
+        String readString() {
+            int length = readCount(1);
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        int readByte() {
+            if (position >= bytes.length) {
+                throw new HttpMessageNotReadableException("Unexpected end of solar panel binary body", inputMessage);
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        boolean hasRemaining() {
+            return position < bytes.length;
+        }
+    }
+}
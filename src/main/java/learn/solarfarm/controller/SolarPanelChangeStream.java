@@ -0,0 +1,388 @@
+package learn.solarfarm.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import learn.solarfarm.domain.SolarPanelChange;
+import learn.solarfarm.domain.SolarPanelService;
+import learn.solarfarm.models.SectionRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Pushes solar panel changes to Server-Sent Events subscribers, for
+ * `GET /solar-panel/stream`.
+ *
+ * Each change is turned into a complete event, `id` (the change's sequence), `event`
+ * (create, update, or delete), and `data` (the change as JSON), once, on a single
+ * dispatcher thread, and the same bytes are queued for every subscriber that wants them.
+ * A subscriber's queue is drained by a small shared pool of writers; a connection has
+ * no thread of its own while it waits.
+ *
+ * A subscriber's queue holds `solarPanelStreamBuffer` events. When a slow subscriber's
+ * queue is full, `solarPanelStreamOverflow` decides what happens:
+ *   drop        the new event is dropped, and a `dropped` event with the count is sent
+ *               before the next one, so the client can fill the gap from
+ *               `/{section}/changes?since=` the last id it received
+ *   disconnect  the subscriber is disconnected, and reconnects when it's ready
+ *
+ * A write is blocking, so a subscriber whose write takes longer than
+ * `solarPanelStreamWriteTimeoutMillis` is dropped and its writer is replaced; a few slow
+ * sockets can't hold every writer.
+ *
+ * A comment is sent to every subscriber every 30 seconds, so connections that were
+ * closed without a word are found and dropped.
+ */
+@Component
+@Profile("rest")
+public class SolarPanelChangeStream implements DisposableBean {
+    public static final String SUBSCRIBERS_NAME = "solarfarm.stream.subscribers";
+    public static final String DROPPED_NAME = "solarfarm.stream.dropped";
+
+    private static final Logger logger = LoggerFactory.getLogger(SolarPanelChangeStream.class);
+    private static final int ALL_SECTIONS = Integer.MIN_VALUE;
+    private static final int DISPATCH_QUEUE_SIZE = 10_000;
+    // Events a writer sends to one subscriber before letting the next one have a turn.
+    private static final int DRAIN_BATCH = 64;
+    private static final long HEARTBEAT_SECONDS = 30;
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final SolarPanelService service;
+    private final ObjectMapper mapper;
+    private final int bufferSize;
+    private final boolean disconnectOnOverflow;
+    private final long timeoutMillis;
+    private final long writeTimeoutNanos;
+
+    private final ConcurrentHashMap.KeySetView<Subscriber, Boolean> subscribers = ConcurrentHashMap.newKeySet();
+    private final ThreadPoolExecutor dispatcher;
+    private final ThreadPoolExecutor writers;
+    private final ScheduledExecutorService heartbeat;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Consumer<SolarPanelChange> listener = this::publish;
+
+    public SolarPanelChangeStream(SolarPanelService service, ObjectMapper mapper, MeterRegistry registry,
+                                  @Value("${solarPanelStreamBuffer:256}") int bufferSize,
+                                  @Value("${solarPanelStreamOverflow:drop}") String overflow,
+                                  @Value("${solarPanelStreamThreads:4}") int threads,
+                                  @Value("${solarPanelStreamTimeoutMillis:1800000}") long timeoutMillis,
+                                  @Value("${solarPanelStreamWriteTimeoutMillis:5000}") long writeTimeoutMillis) {
+        this.service = service;
+        this.mapper = mapper;
+        this.bufferSize = Math.max(1, bufferSize);
+        switch (overflow.toLowerCase()) {
+            case "drop":
+                disconnectOnOverflow = false;
+                break;
+            case "disconnect":
+                disconnectOnOverflow = true;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown stream overflow policy: " + overflow);
+        }
+        this.timeoutMillis = timeoutMillis;
+        this.writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, writeTimeoutMillis));
+
+        dispatcher = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(DISPATCH_QUEUE_SIZE), threads("solar-panel-stream-dispatcher"),
+                (runnable, pool) -> overflowAll());
+        writers = (ThreadPoolExecutor) Executors.newFixedThreadPool(Math.max(1, threads),
+                threads("solar-panel-stream-writer"));
+        heartbeat = Executors.newSingleThreadScheduledExecutor(threads("solar-panel-stream-heartbeat"));
+        heartbeat.scheduleWithFixedDelay(() -> subscribers.forEach(s -> s.offer(HEARTBEAT)),
+                HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+        long checkMillis = Math.max(10, writeTimeoutMillis / 4);
+        heartbeat.scheduleWithFixedDelay(this::dropStuckWriters, checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+
+        Gauge.builder(SUBSCRIBERS_NAME, subscribers, ConcurrentHashMap.KeySetView::size)
+                .description("Open solar panel event streams")
+                .register(registry);
+        FunctionCounter.builder(DROPPED_NAME, dropped, AtomicLong::get)
+                .description("Solar panel events not sent to a subscriber that had fallen behind")
+                .register(registry);
+
+        service.addChangeListener(listener);
+    }
+
+    /**
+     * Opens a stream of the changes to a section, or to every section when it's null.
+     * A section that has never been written is matched by name until its first change,
+     * so subscribing doesn't add to the {@link SectionRegistry}.
+     */
+    public ResponseBodyEmitter subscribe(String section) {
+        Emitter emitter = new Emitter(timeoutMillis);
+        int sectionId = section == null ? ALL_SECTIONS : SectionRegistry.getDefault().find(section);
+        Subscriber subscriber = new Subscriber(emitter, section, sectionId);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(ex -> subscriber.close());
+        subscribers.add(subscriber);
+        return emitter;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    @Override
+    public void destroy() {
+        service.removeChangeListener(listener);
+        heartbeat.shutdownNow();
+        dispatcher.shutdownNow();
+        subscribers.forEach(Subscriber::close);
+        writers.shutdownNow();
+    }
+
+    // Called by the service's change log, which is locked, so this only queues the change.
+    private void publish(SolarPanelChange change) {
+        if (!subscribers.isEmpty()) {
+            dispatcher.execute(() -> dispatch(change));
+        }
+    }
+
+    private void dispatch(SolarPanelChange change) {
+        byte[] event;
+        try {
+            event = event(change);
+        } catch (JsonProcessingException ex) {
+            logger.warn("Could not write solar panel change {}", change.getSequence(), ex);
+            return;
+        }
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.wants(change)) {
+                subscriber.offer(event);
+            }
+        }
+    }
+
+    private void dropStuckWriters() {
+        long now = System.nanoTime();
+        for (Subscriber subscriber : subscribers) {
+            long started = subscriber.writeStarted;
+            if (started != 0 && now - started > writeTimeoutNanos) {
+                logger.warn("Dropping a solar panel stream subscriber whose write took over {} ms",
+                        TimeUnit.NANOSECONDS.toMillis(writeTimeoutNanos));
+                subscriber.abandon();
+            }
+        }
+    }
+
+    // A writer stuck in a send is left to finish on its own; another one takes its place.
+    private synchronized void resizeWriters(int delta) {
+        if (delta > 0) {
+            writers.setMaximumPoolSize(writers.getMaximumPoolSize() + delta);
+            writers.setCorePoolSize(writers.getCorePoolSize() + delta);
+        } else {
+            writers.setCorePoolSize(writers.getCorePoolSize() + delta);
+            writers.setMaximumPoolSize(writers.getMaximumPoolSize() + delta);
+        }
+    }
+
+    private byte[] event(SolarPanelChange change) throws JsonProcessingException {
+        ByteArrayOutputStream event = new ByteArrayOutputStream(256);
+        event.writeBytes(("id:" + change.getSequence() + "\nevent:" + change.getType().name().toLowerCase()
+                + "\ndata:").getBytes(StandardCharsets.UTF_8));
+        // JSON is written on one line, so it's a single data field.
+        event.writeBytes(mapper.writeValueAsBytes(change));
+        event.writeBytes(new byte[]{'\n', '\n'});
+        return event.toByteArray();
+    }
+
+    // The dispatcher itself has fallen behind: every subscriber may miss an event.
+    private void overflowAll() {
+        subscribers.forEach(Subscriber::overflow);
+    }
+
+    private static ThreadFactory threads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Writes already-formatted events as they are, where SseEmitter would format each one
+     * again for every subscriber.
+     */
+    private static class Emitter extends ResponseBodyEmitter {
+        private Emitter(long timeoutMillis) {
+            super(timeoutMillis);
+        }
+
+        @Override
+        protected void extendResponse(ServerHttpResponse outputMessage) {
+            super.extendResponse(outputMessage);
+            outputMessage.getHeaders().setContentType(MediaType.TEXT_EVENT_STREAM);
+            outputMessage.getHeaders().setCacheControl("no-cache");
+        }
+    }
+
+    private class Subscriber {
+        private final Emitter emitter;
+        private final String section;
+        private volatile int sectionId;
+        private final ArrayBlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(bufferSize);
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicLong missed = new AtomicLong();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        // When the current send started, by System.nanoTime(), or 0 between sends.
+        private volatile long writeStarted;
+        // Guarded by this subscriber, so a writer can't finish between being found stuck
+        // and being replaced.
+        private Thread writer;
+        private volatile boolean abandoned;
+
+        private Subscriber(Emitter emitter, String section, int sectionId) {
+            this.emitter = emitter;
+            this.section = section;
+            this.sectionId = sectionId;
+        }
+
+        boolean wants(SolarPanelChange change) {
+            if (sectionId == ALL_SECTIONS || sectionId == change.sectionId()) {
+                return true;
+            }
+            if (sectionId == SectionRegistry.UNKNOWN && change.getKey().getSection().equalsIgnoreCase(section)) {
+                // The section has been registered by its first write.
+                sectionId = change.sectionId();
+                return true;
+            }
+            return false;
+        }
+
+        void offer(byte[] event) {
+            if (closed.get()) {
+                return;
+            }
+            if (!queue.offer(event)) {
+                if (event == HEARTBEAT) {
+                    // A full queue already has something to send.
+                    return;
+                }
+                overflow();
+                return;
+            }
+            schedule();
+        }
+
+        void overflow() {
+            dropped.incrementAndGet();
+            if (disconnectOnOverflow) {
+                close();
+            } else {
+                missed.incrementAndGet();
+                schedule();
+            }
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    writers.execute(this::drain);
+                } catch (RejectedExecutionException ex) {
+                    // Shutting down.
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        private void drain() {
+            synchronized (this) {
+                writer = Thread.currentThread();
+            }
+            try {
+                for (int sent = 0; sent < DRAIN_BATCH && !closed.get(); sent++) {
+                    long count = missed.getAndSet(0);
+                    if (count > 0) {
+                        send(("event:dropped\ndata:" + count + "\n\n").getBytes(StandardCharsets.UTF_8));
+                    }
+                    byte[] event = queue.poll();
+                    if (event == null) {
+                        break;
+                    }
+                    send(event);
+                }
+            } catch (IOException | IllegalStateException ex) {
+                // The client went away, or the emitter already completed.
+                close();
+            } finally {
+                synchronized (this) {
+                    writer = null;
+                }
+                scheduled.set(false);
+            }
+            if (abandoned) {
+                // The send has returned, so the emitter can be completed, and the writer
+                // that replaced this one is no longer needed.
+                Thread.interrupted();
+                emitter.complete();
+                resizeWriters(-1);
+                return;
+            }
+            if (!closed.get() && (!queue.isEmpty() || missed.get() > 0)) {
+                schedule();
+            }
+        }
+
+        private void send(byte[] event) throws IOException {
+            writeStarted = System.nanoTime();
+            try {
+                emitter.send(event, MediaType.TEXT_EVENT_STREAM);
+            } finally {
+                writeStarted = 0;
+            }
+        }
+
+        void close() {
+            if (markClosed()) {
+                emitter.complete();
+            }
+        }
+
+        // Called while a send is blocked. The send holds the emitter's lock, so the writer
+        // completes the emitter once the send returns; interrupting it may hurry that along.
+        synchronized void abandon() {
+            if (writer != null && markClosed()) {
+                abandoned = true;
+                resizeWriters(1);
+                writer.interrupt();
+            }
+        }
+
+        private boolean markClosed() {
+            if (!closed.compareAndSet(false, true)) {
+                return false;
+            }
+            subscribers.remove(this);
+            queue.clear();
+            return true;
+        }
+    }
+}
@@ -1,37 +1,167 @@
 package learn.solarfarm.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import learn.solarfarm.data.DataAccessException;
+import learn.solarfarm.domain.SolarPanelBatchResult;
+import learn.solarfarm.domain.SolarPanelChanges;
 import learn.solarfarm.domain.SolarPanelResult;
 import learn.solarfarm.domain.SolarPanelService;
 import learn.solarfarm.models.SolarPanel;
 import learn.solarfarm.models.SolarPanelKey;
 import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 @Profile("rest")
 @RestController
 @RequestMapping("solar-panel")
 public class SolarPanelController {
+    public static final String CHANGE_SEQUENCE = "X-Change-Sequence";
 
     private SolarPanelService service;
+    private ObjectMapper mapper;
+    private SolarPanelChangeStream changeStream;
 
-    public SolarPanelController(SolarPanelService service) {
+    public SolarPanelController(SolarPanelService service, ObjectMapper mapper, SolarPanelChangeStream changeStream) {
         this.service = service;
+        this.mapper = mapper;
+        this.changeStream = changeStream;
     }
 
+    /**
+     * A Server-Sent Events stream of changes to solar panels, to one section or all of them.
+     * Each event's id is the change's sequence, for `/{section}/changes?since=`.
+     */
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseBodyEmitter streamChanges(@RequestParam(required = false) String section) {
+        return changeStream.subscribe(section);
+    }
+
+    /**
+     * Without `limit` or `after`, returns the whole section.
+     * With them, returns one page ordered by row then column. `after` is the
+     * `row-column` of the last panel already seen, and a `Link` header points to the
+     * next page while there may be more.
+     */
     @GetMapping("/{section}")
-    public List<SolarPanel> getAllBySection(@PathVariable String section) throws DataAccessException {
-        return service.findBySection(section);
+    public ResponseEntity<List<SolarPanel>> getAllBySection(@PathVariable String section,
+                                                            @RequestParam(required = false) Integer limit,
+                                                            @RequestParam(required = false) String after,
+                                                            ServletWebRequest request) throws DataAccessException {
+        if (checkNotModified(section, request)) {
+            return null;
+        }
+        // Read before the section, so the section has at least the changes up to it.
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(CHANGE_SEQUENCE, Long.toString(service.getChangeSequence()));
+        if (limit == null && after == null) {
+            return new ResponseEntity<>(service.findBySection(section), headers, HttpStatus.OK);
+        }
+
+        int afterRow = 0;
+        int afterColumn = 0;
+        if (after != null) {
+            String[] cursor = after.split("-");
+            try {
+                afterRow = Integer.parseInt(cursor[0]);
+                afterColumn = Integer.parseInt(cursor[1]);
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+                return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+            }
+        }
+        // The page size the service will use, so a full page means there may be more.
+        int pageSize = limit == null ? SolarPanelService.MAX_PAGE_SIZE : SolarPanelService.clampPageSize(limit);
+
+        List<SolarPanel> page = service.findBySection(section, afterRow, afterColumn, pageSize);
+
+        if (!page.isEmpty() && page.size() >= pageSize) {
+            SolarPanel last = page.get(page.size() - 1);
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("after", last.getRow() + "-" + last.getColumn())
+                    .build(true)
+                    .toUriString();
+            headers.add(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return new ResponseEntity<>(page, headers, HttpStatus.OK);
+    }
+
+    /**
+     * Streams a whole section as a JSON array, ordered by row then column.
+     * Panels are written as the repository reads them, so memory use doesn't grow
+     * with the size of the section.
+     */
+    @GetMapping("/{section}/stream")
+    public ResponseEntity<StreamingResponseBody> streamBySection(@PathVariable String section) {
+        ObjectWriter writer = mapper.writerFor(SolarPanel.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+                generator.writeStartArray();
+                service.streamBySection(section, panel -> {
+                    try {
+                        writer.writeValue(generator, panel);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+                generator.writeEndArray();
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            } catch (DataAccessException ex) {
+                throw new IOException("Could not stream section: " + section, ex);
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    /**
+     * The changes to a section after the sequence `since`, oldest first.
+     * Answers 410 Gone, with `resync` set, when the changes since then aren't all kept any
+     * more; the client reads the section again and continues from the returned sequence.
+     * The `X-Change-Sequence` header of a section GET is the sequence to continue from.
+     */
+    @GetMapping("/{section}/changes")
+    public ResponseEntity<SolarPanelChanges> getChanges(@PathVariable String section,
+                                                        @RequestParam long since) {
+        SolarPanelChanges changes = service.findChanges(section, since);
+        return new ResponseEntity<>(changes, changes.isResync() ? HttpStatus.GONE : HttpStatus.OK);
+    }
+
+    /**
+     * The first free slots of a section (`limit`, 100 by default), in row then column order.
+     */
+    @GetMapping("/{section}/free")
+    public List<SolarPanelKey> getFreeSlots(@PathVariable String section,
+                                            @RequestParam(defaultValue = "100") int limit) throws DataAccessException {
+        return service.findFreeSlots(section, limit);
     }
 
     @GetMapping("/{section}/{row}/{column}")
     public ResponseEntity<SolarPanel> getPanelByKey(@PathVariable String section,
                                     @PathVariable int row,
-                                    @PathVariable int column) throws DataAccessException {
+                                    @PathVariable int column,
+                                    ServletWebRequest request) throws DataAccessException {
+        if (checkNotModified(section, request)) {
+            return null;
+        }
         SolarPanelKey key = new SolarPanelKey(section, row, column);
         SolarPanel panel = service.findByKey(key);
         if (panel == null) {
@@ -51,4 +181,34 @@ public class SolarPanelController {
         }
     }
 
+    @PostMapping("/batch")
+    public ResponseEntity<SolarPanelBatchResult> saveNewPanels(@RequestBody List<SolarPanel> panels) throws DataAccessException {
+        SolarPanelBatchResult result = service.createAll(panels);
+        if (result.isSuccess()) {
+            return new ResponseEntity<>(result, HttpStatus.CREATED);
+        } else {
+            return new ResponseEntity<>(result, HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Answers with 304 Not Modified, and nothing else, when the request's `If-None-Match`
+     * has the section's current ETag.
+     *
+     * The ETag is the section's version, which changes with every write to the section,
+     * so it doesn't need the response to compute it. It's prefixed with the service's
+     * epoch, since versions start over when the application restarts, and suffixed with
+     * a hash of the `Accept` header, since each media type is a different representation.
+     *
+     * The version only counts this instance's writes, so the ETag is only valid when a
+     * single instance writes the data; see {@link SolarPanelService#getSectionVersion}.
+     */
+    private boolean checkNotModified(String section, ServletWebRequest request) {
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        String etag = "\"" + Long.toHexString(service.getVersionEpoch())
+                + "-" + Long.toHexString(service.getSectionVersion(section))
+                + "-" + Integer.toHexString(accept == null ? 0 : accept.hashCode()) + "\"";
+        request.getResponse().addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        return request.checkNotModified(etag);
+    }
 }
@@ -0,0 +1,116 @@
+package learn.solarfarm.controller;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import learn.solarfarm.models.SolarPanel;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Collection;
+
+/**
+ * Writes solar panels in one of the leaner JSON forms of {@link SolarPanelJsonModule},
+ * for clients that ask for it with an `Accept` header:
+ *
+ *   application/vnd.solarfarm.compact+json   each panel as an array of its fields
+ *   application/vnd.solarfarm.columnar+json  a list of panels as one array per field
+ *
+ * Only responses are converted; requests are still read as plain JSON.
+ */
+public class SolarPanelJsonHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+    public static final MediaType COMPACT = MediaType.parseMediaType("application/vnd.solarfarm.compact+json");
+    public static final MediaType COLUMNAR = MediaType.parseMediaType("application/vnd.solarfarm.columnar+json");
+
+    private final JsonFactory factory;
+    private final boolean columnar;
+
+    private SolarPanelJsonHttpMessageConverter(JsonFactory factory, MediaType mediaType) {
+        super(mediaType);
+        this.factory = factory;
+        this.columnar = mediaType == COLUMNAR;
+    }
+
+    /**
+     * Writes a solar panel, or a list of them, in the compact form.
+     */
+    public static SolarPanelJsonHttpMessageConverter compact(JsonFactory factory) {
+        return new SolarPanelJsonHttpMessageConverter(factory, COMPACT);
+    }
+
+    /**
+     * Writes a list of solar panels in the columnar form.
+     */
+    public static SolarPanelJsonHttpMessageConverter columnar(JsonFactory factory) {
+        return new SolarPanelJsonHttpMessageConverter(factory, COLUMNAR);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return (!columnar && SolarPanel.class.isAssignableFrom(clazz)) || Collection.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        // Spring asks with no media type when it lists what a handler can produce. Saying no
+        // keeps these types out of that list, so `Accept: */*` still gets plain JSON. A client
+        // that names one of them is matched by Jackson's `application/*+json`, and then this
+        // converter, ahead of Jackson's, writes the response.
+        if (mediaType == null || !canWrite(mediaType)) {
+            return false;
+        }
+        ResolvableType resolved = type == null ? ResolvableType.forClass(clazz) : ResolvableType.forType(type);
+        if (!columnar && SolarPanel.class.isAssignableFrom(resolved.toClass())) {
+            return true;
+        }
+        if (!Collection.class.isAssignableFrom(resolved.toClass())) {
+            return false;
+        }
+        Class<?> element = resolved.asCollection().resolveGeneric(0);
+        return element != null && SolarPanel.class.isAssignableFrom(element);
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void writeInternal(Object value, Type type, HttpOutputMessage outputMessage) throws IOException {
+        JsonGenerator generator = factory.createGenerator(outputMessage.getBody(), JsonEncoding.UTF8);
+        if (value instanceof SolarPanel) {
+            SolarPanelJsonModule.writeCompact((SolarPanel) value, generator);
+        } else if (columnar) {
+            SolarPanelJsonModule.writeColumnar((Collection<SolarPanel>) value, generator);
+        } else {
+            generator.writeStartArray();
+            for (SolarPanel solarPanel : (Collection<SolarPanel>) value) {
+                SolarPanelJsonModule.writeCompact(solarPanel, generator);
+            }
+            generator.writeEndArray();
+        }
+        generator.flush();
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Solar panels can't be read as " + getSupportedMediaTypes(), inputMessage);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Solar panels can't be read as " + getSupportedMediaTypes(), inputMessage);
+    }
+}
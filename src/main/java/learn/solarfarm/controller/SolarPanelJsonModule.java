@@ -0,0 +1,236 @@
+package learn.solarfarm.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SolarPanel;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Hand-written JSON for solar panels, in place of Jackson's reflection over the getters.
+ * Spring Boot adds the module to the application's ObjectMapper.
+ *
+ * A solar panel is written as
+ *   {"id":1,"section":"The Ridge","row":1,"column":1,"yearInstalled":2020,"material":"POLY_SI","tracking":true}
+ * without the `key` that getKey() used to add, which repeated the section, row, and column.
+ * A `key` in a request body is ignored, like any other unknown field.
+ * `material` is read as a name or as a {@link Material#getValue()}.
+ *
+ * The compact and columnar forms are served by {@link SolarPanelJsonHttpMessageConverter}.
+ */
+@Component
+public class SolarPanelJsonModule extends SimpleModule {
+    private static final SerializedString ID = new SerializedString("id");
+    private static final SerializedString SECTION = new SerializedString("section");
+    private static final SerializedString ROW = new SerializedString("row");
+    private static final SerializedString COLUMN = new SerializedString("column");
+    private static final SerializedString YEAR_INSTALLED = new SerializedString("yearInstalled");
+    private static final SerializedString MATERIAL = new SerializedString("material");
+    private static final SerializedString TRACKING = new SerializedString("tracking");
+    private static final SerializedString COUNT = new SerializedString("count");
+
+    public SolarPanelJsonModule() {
+        super(SolarPanelJsonModule.class.getSimpleName());
+        addSerializer(SolarPanel.class, new Serializer());
+        addDeserializer(SolarPanel.class, new Deserializer());
+    }
+
+    public static void write(SolarPanel solarPanel, JsonGenerator generator) throws IOException {
+        generator.writeStartObject(solarPanel);
+        generator.writeFieldName(ID);
+        generator.writeNumber(solarPanel.getId());
+        generator.writeFieldName(SECTION);
+        generator.writeString(solarPanel.getSection());
+        generator.writeFieldName(ROW);
+        generator.writeNumber(solarPanel.getRow());
+        generator.writeFieldName(COLUMN);
+        generator.writeNumber(solarPanel.getColumn());
+        generator.writeFieldName(YEAR_INSTALLED);
+        generator.writeNumber(solarPanel.getYearInstalled());
+        generator.writeFieldName(MATERIAL);
+        if (solarPanel.getMaterial() == null) {
+            generator.writeNull();
+        } else {
+            generator.writeString(solarPanel.getMaterial().name());
+        }
+        generator.writeFieldName(TRACKING);
+        generator.writeBoolean(solarPanel.isTracking());
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes a solar panel as an array of its fields, in the object form's order,
+     * with the material's value:
+     *   [1,"The Ridge",1,1,2020,1,true]
+     */
+    public static void writeCompact(SolarPanel solarPanel, JsonGenerator generator) throws IOException {
+        generator.writeStartArray();
+        generator.writeNumber(solarPanel.getId());
+        generator.writeString(solarPanel.getSection());
+        generator.writeNumber(solarPanel.getRow());
+        generator.writeNumber(solarPanel.getColumn());
+        generator.writeNumber(solarPanel.getYearInstalled());
+        writeMaterialValue(solarPanel.getMaterial(), generator);
+        generator.writeBoolean(solarPanel.isTracking());
+        generator.writeEndArray();
+    }
+
+    /**
+     * Writes solar panels as one array per field, with the materials' values:
+     *   {"count":2,"id":[1,2],"section":["The Ridge","The Ridge"],"row":[1,1],"column":[1,2],
+     *    "yearInstalled":[2020,2019],"material":[1,1],"tracking":[true,false]}
+     */
+    public static void writeColumnar(Collection<SolarPanel> solarPanels, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(COUNT);
+        generator.writeNumber(solarPanels.size());
+        generator.writeFieldName(ID);
+        generator.writeStartArray();
+        for (SolarPanel solarPanel : solarPanels) {
+            generator.writeNumber(solarPanel.getId());
+        }
+        generator.writeEndArray();
+        generator.writeFieldName(SECTION);
+        generator.writeStartArray();
+        for (SolarPanel solarPanel : solarPanels) {
+            generator.writeString(solarPanel.getSection());
+        }
+        generator.writeEndArray();
+        generator.writeFieldName(ROW);
+        generator.writeStartArray();
+        for (SolarPanel solarPanel : solarPanels) {
+            generator.writeNumber(solarPanel.getRow());
+        }
+        generator.writeEndArray();
+        generator.writeFieldName(COLUMN);
+        generator.writeStartArray();
+        for (SolarPanel solarPanel : solarPanels) {
+            generator.writeNumber(solarPanel.getColumn());
+        }
+        generator.writeEndArray();
+        generator.writeFieldName(YEAR_INSTALLED);
+        generator.writeStartArray();
+        for (SolarPanel solarPanel : solarPanels) {
+            generator.writeNumber(solarPanel.getYearInstalled());
+        }
+        generator.writeEndArray();
+        generator.writeFieldName(MATERIAL);
+        generator.writeStartArray();
+        for (SolarPanel solarPanel : solarPanels) {
+            writeMaterialValue(solarPanel.getMaterial(), generator);
+        }
+        generator.writeEndArray();
+        generator.writeFieldName(TRACKING);
+        generator.writeStartArray();
+        for (SolarPanel solarPanel : solarPanels) {
+            generator.writeBoolean(solarPanel.isTracking());
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    private static void writeMaterialValue(Material material, JsonGenerator generator) throws IOException {
+        if (material == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(material.getValue());
+        }
+    }
+
+    private static class Serializer extends StdSerializer<SolarPanel> {
+        private Serializer() {
+            super(SolarPanel.class);
+        }
+
+        @Override
+        public void serialize(SolarPanel solarPanel, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            write(solarPanel, generator);
+        }
+    }
+
+    private static class Deserializer extends StdDeserializer<SolarPanel> {
+        private Deserializer() {
+            super(SolarPanel.class);
+        }
+
+        @Override
+        public SolarPanel deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            JsonToken token = parser.currentToken();
+            if (token == JsonToken.START_OBJECT) {
+                token = parser.nextToken();
+            }
+            if (token != JsonToken.FIELD_NAME && token != JsonToken.END_OBJECT) {
+                return (SolarPanel) context.handleUnexpectedToken(SolarPanel.class, parser);
+            }
+
+            SolarPanel solarPanel = new SolarPanel();
+            for (; token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                switch (name) {
+                    case "id":
+                        solarPanel.setId(_parseIntPrimitive(parser, context));
+                        break;
+                    case "section":
+                        solarPanel.setSection(parser.currentToken() == JsonToken.VALUE_NULL
+                                ? null
+                                : _parseString(parser, context));
+                        break;
+                    case "row":
+                        solarPanel.setRow(_parseIntPrimitive(parser, context));
+                        break;
+                    case "column":
+                        solarPanel.setColumn(_parseIntPrimitive(parser, context));
+                        break;
+                    case "yearInstalled":
+                        solarPanel.setYearInstalled(_parseIntPrimitive(parser, context));
+                        break;
+                    case "material":
+                        solarPanel.setMaterial(material(parser, context));
+                        break;
+                    case "tracking":
+                        solarPanel.setTracking(_parseBooleanPrimitive(parser, context));
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            return solarPanel;
+        }
+
+        private Material material(JsonParser parser, DeserializationContext context) throws IOException {
+            switch (parser.currentToken()) {
+                case VALUE_NULL:
+                    return null;
+                case VALUE_STRING:
+                    String name = parser.getText();
+                    for (Material material : Material.values()) {
+                        if (material.name().equals(name)) {
+                            return material;
+                        }
+                    }
+                    throw context.weirdStringException(name, Material.class, "not a Material name");
+                case VALUE_NUMBER_INT:
+                    int value = parser.getIntValue();
+                    for (Material material : Material.values()) {
+                        if (material.getValue() == value) {
+                            return material;
+                        }
+                    }
+                    throw context.weirdNumberException(value, Material.class, "not a Material value");
+                default:
+                    return (Material) context.handleUnexpectedToken(Material.class, parser);
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package learn.solarfarm.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * Adds the compact and columnar solar panel converters ahead of Jackson's, which would
+ * otherwise answer their `+json` media types with plain JSON.
+ *
+ * The binary converter goes last. Spring offers the media types of earlier converters
+ * first, so a client that accepts anything still gets JSON.
+ */
+@Configuration
+@Profile("rest")
+public class SolarPanelWebConfiguration implements WebMvcConfigurer {
+    private final ObjectMapper mapper;
+
+    public SolarPanelWebConfiguration(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        int jackson = 0;
+        while (jackson < converters.size() && !(converters.get(jackson) instanceof MappingJackson2HttpMessageConverter)) {
+            jackson++;
+        }
+        converters.add(jackson, SolarPanelJsonHttpMessageConverter.columnar(mapper.getFactory()));
+        converters.add(jackson, SolarPanelJsonHttpMessageConverter.compact(mapper.getFactory()));
+        converters.add(new SolarPanelBinaryHttpMessageConverter());
+    }
+}
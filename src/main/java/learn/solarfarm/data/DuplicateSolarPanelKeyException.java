@@ -0,0 +1,17 @@
+package learn.solarfarm.data;
+
+/**
+ * Thrown when a write would give two solar panels the same section, row, and column.
+ * Repositories enforce the natural key themselves (the database through its unique
+ * constraint), so callers don't need to look the key up before writing.
+ */
+public class DuplicateSolarPanelKeyException extends DataAccessException {
+
+    public DuplicateSolarPanelKeyException(String message) {
+        super(message);
+    }
+
+    public DuplicateSolarPanelKeyException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,35 @@
+package learn.solarfarm.data;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Stored procedures for the embedded (H2) database, which runs Java static methods
+ * where MySQL runs SQL procedures. embedded-db/schema.sql registers them by name,
+ * so callers use the same `call ...` statements against either database.
+ */
+public class EmbeddedDatabaseProcedures {
+
+    private EmbeddedDatabaseProcedures() {
+    }
+
+    /**
+     * The embedded version of the `set_known_good_state` procedure in
+     * databaseScripts/createSolarFarm-test.sql.
+     */
+    public static void setKnownGoodState(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            // MySQL's truncate also restarts the auto_increment ids.
+            statement.execute("truncate table solar_panel");
+            statement.execute("alter table solar_panel alter column solar_panel_id restart with 1");
+            statement.execute("insert into solar_panel " +
+                    "(section, `row`, `column`, year_installed, material_id, is_tracking) values " +
+                    "('The Ridge', 1, 1, 2020, 1, 1), " +
+                    "('The Ridge', 1, 2, 2019, 2, 1), " +
+                    "('Flats', 1, 1, 2017, 3, 1), " +
+                    "('Flats', 2, 6, 2017, 4, 1), " +
+                    "('Flats', 3, 7, 2000, 5, 0)");
+        }
+    }
+}
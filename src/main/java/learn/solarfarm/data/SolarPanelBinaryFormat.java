@@ -0,0 +1,163 @@
+package learn.solarfarm.data;
+
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SectionRegistry;
+import learn.solarfarm.models.SolarPanel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * A compact binary format: a header, a dictionary of section names, then one fixed-width
+ * record per solar panel. Files are read through a memory map, so decoding a record is
+ * a handful of absolute reads at a computed offset, and each section name is decoded once
+ * and shared by every panel in it. A read decodes every record; the file repository keeps
+ * the whole farm resident, so it never reads a single record from the file.
+ *
+ * Layout (big-endian):
+ *   header     int magic, short version, short reserved, int sectionCount, int recordCount
+ *   dictionary sectionCount x (unsigned short byteLength, UTF-8 bytes)
+ *   records    recordCount x RECORD_SIZE bytes:
+ *                int id, short sectionIndex, short row, short column, short yearInstalled,
+ *                byte material value, byte flags (bit 0: tracking), short reserved
+ */
+public class SolarPanelBinaryFormat implements SolarPanelFileFormat {
+    public static final int MAGIC = 0x53504E4C; // "SPNL"
+    public static final short VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int RECORD_SIZE = 16;
+    public static final int MAX_SECTION_BYTES = 0xFFFF;
+
+    private static final int TRACKING_FLAG = 1;
+
+    @Override
+    public List<SolarPanel> read(Path path) throws DataAccessException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() == 0) {
+                return new ArrayList<>();
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer, path);
+        } catch (NoSuchFileException ex) {
+            // No file just means no solar panels yet.
+            return new ArrayList<>();
+        } catch (IOException | RuntimeException ex) {
+            throw new DataAccessException("Could not read binary file path: " + path, ex);
+        }
+    }
+
+    @Override
+    public void write(Path path, Collection<SolarPanel> solarPanels) throws DataAccessException {
+        LinkedHashMap<String, Integer> sections = new LinkedHashMap<>();
+        int dictionarySize = 0;
+        for (SolarPanel solarPanel : solarPanels) {
+            if (!sections.containsKey(solarPanel.getSection())) {
+                int length = solarPanel.getSection().getBytes(StandardCharsets.UTF_8).length;
+                if (length > MAX_SECTION_BYTES) {
+                    throw new DataAccessException(String.format(
+                            "SolarPanel `section` is %s bytes as UTF-8, more than the binary format's %s.",
+                            length, MAX_SECTION_BYTES));
+                }
+                sections.put(solarPanel.getSection(), sections.size());
+                dictionarySize += 2 + length;
+            }
+        }
+        if (sections.size() > Short.MAX_VALUE) {
+            throw new DataAccessException("Too many sections for the binary format: " + sections.size());
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + dictionarySize + RECORD_SIZE * solarPanels.size());
+        buffer.putInt(MAGIC).putShort(VERSION).putShort((short) 0)
+                .putInt(sections.size()).putInt(solarPanels.size());
+        for (String section : sections.keySet()) {
+            byte[] bytes = section.getBytes(StandardCharsets.UTF_8);
+            buffer.putShort((short) bytes.length).put(bytes);
+        }
+        for (SolarPanel solarPanel : solarPanels) {
+            buffer.putInt(solarPanel.getId());
+            buffer.putShort(sections.get(solarPanel.getSection()).shortValue());
+            buffer.putShort(toShort(solarPanel.getRow(), "row"));
+            buffer.putShort(toShort(solarPanel.getColumn(), "column"));
+            buffer.putShort(toShort(solarPanel.getYearInstalled(), "yearInstalled"));
+            buffer.put((byte) solarPanel.getMaterial().getValue());
+            buffer.put((byte) (solarPanel.isTracking() ? TRACKING_FLAG : 0));
+            buffer.putShort((short) 0);
+        }
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException ex) {
+            throw new DataAccessException("Could not write to binary file path: " + path, ex);
+        }
+    }
+
+    private List<SolarPanel> read(ByteBuffer buffer, Path path) throws DataAccessException {
+        if (buffer.getInt(0) != MAGIC || buffer.getShort(4) != VERSION) {
+            throw new DataAccessException("Not a version " + VERSION + " solar panel binary file: " + path);
+        }
+        int sectionCount = buffer.getInt(8);
+        int recordCount = buffer.getInt(12);
+
+        String[] sections = new String[sectionCount];
+        ByteBuffer dictionary = buffer.duplicate();
+        dictionary.position(HEADER_SIZE);
+        for (int i = 0; i < sectionCount; i++) {
+            byte[] bytes = new byte[dictionary.getShort() & 0xFFFF];
+            dictionary.get(bytes);
+            sections[i] = SectionRegistry.getDefault().intern(new String(bytes, StandardCharsets.UTF_8));
+        }
+        int offset = dictionary.position();
+
+        // Materials are looked up by value once instead of once per record.
+        Material[] materials = new Material[Material.values().length + 1];
+        for (Material material : Material.values()) {
+            materials[material.getValue()] = material;
+        }
+
+        ArrayList<SolarPanel> result = new ArrayList<>(recordCount);
+        for (int i = 0; i < recordCount; i++, offset += RECORD_SIZE) {
+            int section = buffer.getShort(offset + 4);
+            int material = buffer.get(offset + 12);
+            if (section < 0 || section >= sectionCount) {
+                throw new DataAccessException(String.format(
+                        "Record %s of %s has section index %s, but the dictionary has %s sections.",
+                        i + 1, path, section, sectionCount));
+            }
+            if (material < 0 || material >= materials.length || materials[material] == null) {
+                throw new DataAccessException(String.format(
+                        "Record %s of %s has unknown material value %s.", i + 1, path, material));
+            }
+            result.add(new SolarPanel(
+                    buffer.getInt(offset),
+                    sections[section],
+                    buffer.getShort(offset + 6),
+                    buffer.getShort(offset + 8),
+                    buffer.getShort(offset + 10),
+                    materials[material],
+                    (buffer.get(offset + 13) & TRACKING_FLAG) != 0
+            ));
+        }
+        return result;
+    }
+
+    private short toShort(int value, String field) throws DataAccessException {
+        if (value < Short.MIN_VALUE || value > Short.MAX_VALUE) {
+            throw new DataAccessException(String.format("SolarPanel `%s` %s doesn't fit the binary format.", field, value));
+        }
+        return (short) value;
+    }
+}
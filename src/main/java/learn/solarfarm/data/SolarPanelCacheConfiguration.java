@@ -0,0 +1,76 @@
+package learn.solarfarm.data;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * With the `cache` profile active, the repository the service sees is a
+ * {@link SolarPanelCachingRepository} in front of whichever repository the
+ * `jdbc-template` or `file-repository` profile created.
+ *
+ * With a meter registry, the repository behind the cache is timed as well (the service
+ * times calls to the cache itself), and the cache's hits, misses, evictions, and size are
+ * published as `cache.*` meters tagged `cache=solarPanel`.
+ */
+@Configuration
+@Profile("cache")
+public class SolarPanelCacheConfiguration {
+
+    @Bean
+    @Primary
+    public SolarPanelCachingRepository cachingRepository(
+            ObjectProvider<SolarPanelJdbcTemplateRepository> jdbcTemplateRepository,
+            ObjectProvider<SolarPanelFileRepository> fileRepository,
+            ObjectProvider<MeterRegistry> meterRegistry,
+            @Value("${solarPanelCacheMaxKeys:10000}") int maxKeys,
+            @Value("${solarPanelCacheMaxSectionPanels:100000}") int maxSectionPanels,
+            @Value("${solarPanelCacheTtlMillis:60000}") long ttlMillis,
+            @Value("${solarPanelMetricsSampleEvery:64}") int sampleEvery) {
+        SolarPanelRepository delegate = jdbcTemplateRepository.getIfAvailable();
+        if (delegate == null) {
+            delegate = fileRepository.getIfAvailable();
+        }
+        if (delegate == null) {
+            throw new IllegalStateException("The cache profile needs the jdbc-template or file-repository profile.");
+        }
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry == null) {
+            return new SolarPanelCachingRepository(delegate, maxKeys, maxSectionPanels, ttlMillis);
+        }
+        SolarPanelCachingRepository cache = new SolarPanelCachingRepository(
+                new SolarPanelMeteredRepository(delegate, registry, sampleEvery), maxKeys, maxSectionPanels, ttlMillis);
+        bindCacheMeters(cache, registry);
+        return cache;
+    }
+
+    private static void bindCacheMeters(SolarPanelCachingRepository cache, MeterRegistry registry) {
+        // Read from the cache's own counters when scraped, nothing is added to a lookup.
+        FunctionCounter.builder("cache.gets", cache, SolarPanelCachingRepository::getHitCount)
+                .tag("cache", "solarPanel").tag("result", "hit")
+                .description("Lookups answered from the cache")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", cache, SolarPanelCachingRepository::getMissCount)
+                .tag("cache", "solarPanel").tag("result", "miss")
+                .description("Lookups passed to the repository")
+                .register(registry);
+        FunctionCounter.builder("cache.evictions", cache, SolarPanelCachingRepository::getEvictionCount)
+                .tag("cache", "solarPanel")
+                .description("Entries removed to stay within the cache's limits")
+                .register(registry);
+        Gauge.builder("cache.size", cache, SolarPanelCachingRepository::getKeyCount)
+                .tag("cache", "solarPanel").tag("entries", "keys")
+                .description("Solar panels cached by key")
+                .register(registry);
+        Gauge.builder("cache.size", cache, SolarPanelCachingRepository::getSectionCount)
+                .tag("cache", "solarPanel").tag("entries", "sections")
+                .description("Sections cached")
+                .register(registry);
+    }
+}
@@ -0,0 +1,312 @@
+package learn.solarfarm.data;
+
+import learn.solarfarm.models.SectionRegistry;
+import learn.solarfarm.models.SolarPanel;
+import learn.solarfarm.models.SolarPanelKey;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A read-through cache in front of another repository.
+ *
+ * `findByKey` results (including "not found") and whole `findBySection` results are
+ * cached with a time to live, in least recently used order. Keys are bounded by count
+ * and sections by the number of panels they hold. Paged, streamed, batch, and id lookups
+ * go straight to the delegate. Sections are cached by their {@link SectionRegistry} id.
+ *
+ * Writes invalidate exactly what they touch: the key and section written, and for an
+ * update, the key and section the panel had before. The old key is found through an
+ * id to key map that covers every cached panel.
+ *
+ * A read that misses and loads from the delegate only caches its result if no write
+ * happened while it was loading, so a slow read can't cache a value a write replaced.
+ */
+public class SolarPanelCachingRepository implements SolarPanelRepository {
+
+    private final SolarPanelRepository delegate;
+    private final int maxKeys;
+    private final int maxSectionPanels;
+    private final long ttlNanos;
+
+    // Guarded by this.
+    private final LinkedHashMap<SolarPanelKey, Entry<SolarPanel>> keys = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Integer, Entry<List<SolarPanel>>> sections = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Integer, SolarPanelKey> keysById = new LinkedHashMap<>();
+    private int sectionPanels;
+    private long writeGeneration;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxKeys The most `findByKey` results to keep.
+     * @param maxSectionPanels The most panels to keep across cached sections.
+     *                         A section bigger than this is never cached.
+     * @param ttlMillis How long a cached result is served before it's loaded again.
+     */
+    public SolarPanelCachingRepository(SolarPanelRepository delegate, int maxKeys,
+                                       int maxSectionPanels, long ttlMillis) {
+        this.delegate = delegate;
+        this.maxKeys = maxKeys;
+        this.maxSectionPanels = maxSectionPanels;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public synchronized int getKeyCount() {
+        return keys.size();
+    }
+
+    public synchronized int getSectionCount() {
+        return sections.size();
+    }
+
+    @Override
+    public List<SolarPanel> findBySection(String section) throws DataAccessException {
+        SectionRegistry registry = SectionRegistry.getDefault();
+        int sectionId = registry.find(section);
+        long generation;
+        synchronized (this) {
+            Entry<List<SolarPanel>> entry = sections.get(sectionId);
+            if (entry != null && !isExpired(entry)) {
+                hits.incrementAndGet();
+                return copyAll(entry.value);
+            }
+            if (entry != null) {
+                removeSection(sectionId);
+                evictions.incrementAndGet();
+            }
+            generation = writeGeneration;
+        }
+        misses.incrementAndGet();
+
+        List<SolarPanel> loaded = delegate.findBySection(section);
+
+        // A section nobody has written to is only registered once it has panels to cache.
+        if (sectionId == SectionRegistry.UNKNOWN && !loaded.isEmpty()) {
+            sectionId = registry.register(section);
+        }
+        synchronized (this) {
+            if (generation == writeGeneration && sectionId != SectionRegistry.UNKNOWN
+                    && loaded.size() <= maxSectionPanels) {
+                removeSection(sectionId);
+                sections.put(sectionId, new Entry<>(copyAll(loaded), System.nanoTime() + ttlNanos));
+                sectionPanels += loaded.size();
+                for (SolarPanel solarPanel : loaded) {
+                    trackId(solarPanel);
+                }
+                evictSections();
+            }
+        }
+        return loaded;
+    }
+
+    @Override
+    public SolarPanel findByKey(SolarPanelKey key) throws DataAccessException {
+        long generation;
+        synchronized (this) {
+            Entry<SolarPanel> entry = keys.get(key);
+            if (entry != null && !isExpired(entry)) {
+                hits.incrementAndGet();
+                return entry.value == null ? null : new SolarPanel(entry.value);
+            }
+            if (entry != null) {
+                keys.remove(key);
+                evictions.incrementAndGet();
+            }
+            generation = writeGeneration;
+        }
+        misses.incrementAndGet();
+
+        SolarPanel loaded = delegate.findByKey(key);
+
+        synchronized (this) {
+            if (generation == writeGeneration) {
+                keys.put(key, new Entry<>(loaded == null ? null : new SolarPanel(loaded),
+                        System.nanoTime() + ttlNanos));
+                if (loaded != null) {
+                    trackId(loaded);
+                }
+                evictKeys();
+            }
+        }
+        return loaded;
+    }
+
+    @Override
+    public List<SolarPanel> findBySection(String section, int afterRow, int afterColumn, int limit) throws DataAccessException {
+        return delegate.findBySection(section, afterRow, afterColumn, limit);
+    }
+
+    @Override
+    public void streamBySection(String section, Consumer<SolarPanel> consumer) throws DataAccessException {
+        delegate.streamBySection(section, consumer);
+    }
+
+    @Override
+    public Map<Integer, SolarPanelKey> findAllKeys() throws DataAccessException {
+        return delegate.findAllKeys();
+    }
+
+    @Override
+    public SolarPanel findById(int id) throws DataAccessException {
+        return delegate.findById(id);
+    }
+
+    @Override
+    public List<SolarPanel> findByKeys(Collection<SolarPanelKey> keys) throws DataAccessException {
+        return delegate.findByKeys(keys);
+    }
+
+    @Override
+    public SolarPanel create(SolarPanel solarPanel) throws DataAccessException {
+        try {
+            return delegate.create(solarPanel);
+        } finally {
+            invalidate(solarPanel.getKey());
+        }
+    }
+
+    @Override
+    public List<SolarPanel> createAll(List<SolarPanel> solarPanels) throws DataAccessException {
+        try {
+            return delegate.createAll(solarPanels);
+        } finally {
+            synchronized (this) {
+                for (SolarPanel solarPanel : solarPanels) {
+                    invalidate(solarPanel.getKey());
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean update(SolarPanel solarPanel) throws DataAccessException {
+        try {
+            return delegate.update(solarPanel);
+        } finally {
+            synchronized (this) {
+                // The update may have moved the panel to a new natural key.
+                SolarPanelKey previous = keysById.remove(solarPanel.getId());
+                if (previous != null) {
+                    invalidate(previous);
+                }
+                invalidate(solarPanel.getKey());
+            }
+        }
+    }
+
+    @Override
+    public boolean deleteByKey(SolarPanelKey key) throws DataAccessException {
+        try {
+            return delegate.deleteByKey(key);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    /**
+     * Drops every cached entry.
+     */
+    public synchronized void clear() {
+        writeGeneration++;
+        keys.clear();
+        sections.clear();
+        keysById.clear();
+        sectionPanels = 0;
+    }
+
+    // Invalidation runs whether or not the delegate succeeded; a failed write may still
+    // have changed the data.
+    private synchronized void invalidate(SolarPanelKey key) {
+        writeGeneration++;
+        keys.remove(key);
+        removeSection(SectionRegistry.getDefault().find(key.getSection()));
+    }
+
+    private void trackId(SolarPanel solarPanel) {
+        keysById.put(solarPanel.getId(), solarPanel.getKey());
+        // Every cached panel must be in the id map so an update can find its old key.
+        // Forgetting an id means dropping whatever might hold that panel.
+        int limit = maxKeys + maxSectionPanels;
+        Iterator<Map.Entry<Integer, SolarPanelKey>> oldest = keysById.entrySet().iterator();
+        while (keysById.size() > limit && oldest.hasNext()) {
+            SolarPanelKey forgotten = oldest.next().getValue();
+            oldest.remove();
+            if (keys.remove(forgotten) != null) {
+                evictions.incrementAndGet();
+            }
+            if (removeSection(SectionRegistry.getDefault().find(forgotten.getSection()))) {
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private void evictKeys() {
+        Iterator<SolarPanelKey> eldest = keys.keySet().iterator();
+        while (keys.size() > maxKeys && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void evictSections() {
+        Iterator<Map.Entry<Integer, Entry<List<SolarPanel>>>> eldest = sections.entrySet().iterator();
+        while (sectionPanels > maxSectionPanels && eldest.hasNext()) {
+            sectionPanels -= eldest.next().getValue().value.size();
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private boolean removeSection(int section) {
+        Entry<List<SolarPanel>> removed = sections.remove(section);
+        if (removed != null) {
+            sectionPanels -= removed.value.size();
+        }
+        return removed != null;
+    }
+
+    private boolean isExpired(Entry<?> entry) {
+        return System.nanoTime() - entry.expiresAt > 0;
+    }
+
+    private List<SolarPanel> copyAll(List<SolarPanel> solarPanels) {
+        ArrayList<SolarPanel> result = new ArrayList<>(solarPanels.size());
+        for (SolarPanel solarPanel : solarPanels) {
+            result.add(new SolarPanel(solarPanel));
+        }
+        return result;
+    }
+
+    private static class Entry<T> {
+        private final T value;
+        private final long expiresAt;
+
+        private Entry(T value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package learn.solarfarm.data;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JDK Flight Recorder event for one solar panel repository operation, or for the file
+ * I/O behind one (`load`, `writeFile`, `appendJournal`). The I/O has events of its own
+ * because a group commit writes other threads' changes too; in a recording they nest
+ * under the operation that ran them on the same thread.
+ *
+ * Bytes are only known for file I/O. JDBC traffic is in the JDK's own `jdk.SocketRead`
+ * and `jdk.SocketWrite` events, which `jfr/solarfarm.jfc` turns on.
+ *
+ * Nothing is recorded, and the JIT removes the event entirely, unless a recording has
+ * the event enabled. An operation that throws isn't recorded.
+ */
+@Name("learn.solarfarm.DataAccess")
+@Label("Solar Panel Data Access")
+@Category({"Solar Farm", "Data Access"})
+@Description("A solar panel repository operation or the file I/O behind one")
+@StackTrace(false)
+public class SolarPanelDataAccessEvent extends Event {
+    @Label("Repository")
+    String repository;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Section")
+    String section;
+
+    @Label("Row Count")
+    @Description("Solar panels read, written, or removed")
+    int rowCount;
+
+    @Label("Bytes Read")
+    @DataAmount
+    long bytesRead;
+
+    @Label("Bytes Written")
+    @DataAmount
+    long bytesWritten;
+
+    /**
+     * Starts timing an operation.
+     */
+    static SolarPanelDataAccessEvent begin(String repository, String operation, String section) {
+        SolarPanelDataAccessEvent event = new SolarPanelDataAccessEvent();
+        event.repository = repository;
+        event.operation = operation;
+        event.section = section;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends the operation and records it, if a recording wants it.
+     */
+    void commit(int rowCount) {
+        end();
+        if (shouldCommit()) {
+            this.rowCount = rowCount;
+            commit();
+        }
+    }
+}
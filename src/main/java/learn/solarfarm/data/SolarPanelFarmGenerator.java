@@ -0,0 +1,381 @@
+package learn.solarfarm.data;
+
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SolarPanel;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Generates synthetic farms for load tests and benchmarks. The same settings and seed
+ * always generate the same farm.
+ *
+ * Each section is a grid of `rows` x `columns` slots, visited row by row; a slot holds a
+ * panel with probability `density`. Materials are drawn from a weighted mix and install
+ * years from a range, skewed towards recent years when `yearSkew` is above 1.
+ * Ids run from 1 in generation order.
+ *
+ * A farm can be written as a `~` delimited data file, as a SQL script of multi-row
+ * inserts, or inserted straight into a database with JDBC batches:
+ *
+ *   java -cp ... learn.solarfarm.data.SolarPanelFarmGenerator sections=100 density=0.5 text=./data/large.txt
+ *   java -cp ... learn.solarfarm.data.SolarPanelFarmGenerator seed=7 sql=./data/large.sql
+ *   java -cp ... learn.solarfarm.data.SolarPanelFarmGenerator jdbc=jdbc:mysql://localhost:3306/solar_farm?rewriteBatchedStatements=true user=root password=...
+ */
+public class SolarPanelFarmGenerator {
+    // The largest row and column SolarPanelService accepts.
+    public static final int MAX_GRID = 249;
+
+    private static final String INSERT_PREFIX =
+            "insert into solar_panel (section,`row`,`column`,year_installed,material_id,is_tracking) values";
+    private static final int SQL_ROWS_PER_INSERT = 1000;
+    private static final int JDBC_BATCH_SIZE = 1000;
+    private static final int JDBC_BATCHES_PER_COMMIT = 50;
+    private static final int WRITE_CHUNK = 64 * 1024;
+
+    private long seed = 1;
+    private int sections = 10;
+    private String sectionPrefix = "Section";
+    private int rows = MAX_GRID;
+    private int columns = MAX_GRID;
+    private double density = 1.0;
+    private final double[] materialWeights = new double[Material.values().length];
+    private int minYear = 1990;
+    private int maxYear = 2020;
+    private double yearSkew = 1.0;
+    private double trackingRatio = 0.3;
+
+    public SolarPanelFarmGenerator() {
+        Arrays.fill(materialWeights, 1.0);
+    }
+
+    public static void main(String[] args) throws DataAccessException {
+        if (args.length == 0) {
+            System.out.println("Usage: SolarPanelFarmGenerator [setting=value ...] (text=<path> | sql=<path> | jdbc=<url>)");
+            System.out.println("Settings: seed=1 sections=10 sectionPrefix=Section rows=249 columns=249 density=1.0");
+            System.out.println("          materials=POLY_SI:1,MONO_SI:1,A_SI:1,CD_TE:1,CIGS:1 years=1990-2020 yearSkew=1.0");
+            System.out.println("          tracking=0.3 user=<jdbc user> password=<jdbc password>");
+            return;
+        }
+
+        SolarPanelFarmGenerator generator = new SolarPanelFarmGenerator();
+        String text = null;
+        String sql = null;
+        String jdbc = null;
+        String user = null;
+        String password = null;
+        int rows = MAX_GRID;
+        int columns = MAX_GRID;
+        int[] years = {generator.minYear, generator.maxYear};
+        double skew = 1.0;
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (split < 0) {
+                throw new IllegalArgumentException("Expected setting=value but got: " + arg);
+            }
+            String value = arg.substring(split + 1);
+            switch (arg.substring(0, split)) {
+                case "seed": generator.setSeed(Long.parseLong(value)); break;
+                case "sections": generator.setSections(Integer.parseInt(value)); break;
+                case "sectionPrefix": generator.setSectionPrefix(value); break;
+                case "rows": rows = Integer.parseInt(value); break;
+                case "columns": columns = Integer.parseInt(value); break;
+                case "density": generator.setDensity(Double.parseDouble(value)); break;
+                case "materials":
+                    Arrays.fill(generator.materialWeights, 0);
+                    for (String weight : value.split(",")) {
+                        String[] parts = weight.split(":");
+                        generator.setMaterialWeight(Material.valueOf(parts[0].trim().toUpperCase()),
+                                parts.length > 1 ? Double.parseDouble(parts[1]) : 1);
+                    }
+                    break;
+                case "years":
+                    String[] range = value.split("-");
+                    years[0] = Integer.parseInt(range[0]);
+                    years[1] = Integer.parseInt(range[range.length - 1]);
+                    break;
+                case "yearSkew": skew = Double.parseDouble(value); break;
+                case "tracking": generator.setTrackingRatio(Double.parseDouble(value)); break;
+                case "text": text = value; break;
+                case "sql": sql = value; break;
+                case "jdbc": jdbc = value; break;
+                case "user": user = value; break;
+                case "password": password = value; break;
+                default: throw new IllegalArgumentException("Unknown setting: " + arg);
+            }
+        }
+        generator.setGrid(rows, columns);
+        generator.setYears(years[0], years[1], skew);
+
+        long start = System.nanoTime();
+        long count;
+        String target;
+        if (text != null) {
+            count = generator.writeText(Paths.get(text));
+            target = text;
+        } else if (sql != null) {
+            count = generator.writeSql(Paths.get(sql));
+            target = sql;
+        } else if (jdbc != null) {
+            try (Connection connection = DriverManager.getConnection(jdbc, user, password)) {
+                count = generator.insert(connection);
+            } catch (SQLException ex) {
+                throw new DataAccessException("Could not connect to: " + jdbc, ex);
+            }
+            target = jdbc;
+        } else {
+            throw new IllegalArgumentException("One of text=, sql=, or jdbc= is required.");
+        }
+        System.out.printf("Generated %s solar panels into %s in %s ms.%n", count, target,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public void setSections(int sections) {
+        if (sections < 1) {
+            throw new IllegalArgumentException("sections must be at least 1.");
+        }
+        this.sections = sections;
+    }
+
+    public void setSectionPrefix(String sectionPrefix) {
+        this.sectionPrefix = sectionPrefix;
+    }
+
+    public void setGrid(int rows, int columns) {
+        if (rows < 1 || rows > MAX_GRID || columns < 1 || columns > MAX_GRID) {
+            throw new IllegalArgumentException("rows and columns must be between 1 and " + MAX_GRID + ".");
+        }
+        this.rows = rows;
+        this.columns = columns;
+    }
+
+    public void setDensity(double density) {
+        if (density <= 0 || density > 1) {
+            throw new IllegalArgumentException("density must be greater than 0 and at most 1.");
+        }
+        this.density = density;
+    }
+
+    /**
+     * Sets the relative weight of a material. Every material starts with a weight of 1.
+     */
+    public void setMaterialWeight(Material material, double weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("Material weights can't be negative.");
+        }
+        materialWeights[material.ordinal()] = weight;
+    }
+
+    /**
+     * @param skew 1 draws years uniformly. Above 1 favors recent years, below 1 older ones.
+     */
+    public void setYears(int minYear, int maxYear, double skew) {
+        if (minYear > maxYear || skew <= 0) {
+            throw new IllegalArgumentException("Years need minYear <= maxYear and a positive skew.");
+        }
+        this.minYear = minYear;
+        this.maxYear = maxYear;
+        this.yearSkew = skew;
+    }
+
+    public void setTrackingRatio(double trackingRatio) {
+        this.trackingRatio = trackingRatio;
+    }
+
+    /**
+     * Hands every generated panel to the consumer, in id order.
+     * The consumer may keep the panels; each is a new instance.
+     * @return The number of panels generated.
+     */
+    public long generate(Consumer<SolarPanel> consumer) {
+        Material[] materials = Material.values();
+        double[] cumulative = new double[materials.length];
+        double total = 0;
+        for (int m = 0; m < materials.length; m++) {
+            total += materialWeights[m];
+            cumulative[m] = total;
+        }
+        if (total <= 0) {
+            throw new IllegalStateException("At least one material needs a positive weight.");
+        }
+
+        SplittableRandom random = new SplittableRandom(seed);
+        int yearSpan = maxYear - minYear + 1;
+        int id = 0;
+        for (int s = 1; s <= sections; s++) {
+            String section = String.format("%s %0" + String.valueOf(sections).length() + "d", sectionPrefix, s);
+            for (int row = 1; row <= rows; row++) {
+                for (int column = 1; column <= columns; column++) {
+                    if (density < 1 && random.nextDouble() >= density) {
+                        continue;
+                    }
+                    double pick = random.nextDouble() * total;
+                    int m = 0;
+                    while (m < materials.length - 1 && pick >= cumulative[m]) {
+                        m++;
+                    }
+                    int year = minYear + Math.min(yearSpan - 1,
+                            (int) (yearSpan * Math.pow(random.nextDouble(), 1 / yearSkew)));
+                    consumer.accept(new SolarPanel(++id, section, row, column, year, materials[m],
+                            random.nextDouble() < trackingRatio));
+                }
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Writes the farm as a `~` delimited data file, the format SolarPanelTextFormat reads.
+     * @return The number of panels written.
+     */
+    public long writeText(Path path) throws DataAccessException {
+        SolarPanelTextCodec codec = new SolarPanelTextCodec();
+        return write(path, (solarPanel, out) -> {
+            codec.encode(solarPanel, out);
+            out.append(System.lineSeparator());
+        }, null, null);
+    }
+
+    /**
+     * Writes the farm as a MySQL script of multi-row inserts into an existing solar_panel
+     * table, one transaction for the whole farm. Ids are left to the database.
+     * @return The number of panels written.
+     */
+    public long writeSql(Path path) throws DataAccessException {
+        long[] count = {0};
+        return write(path, (solarPanel, out) -> {
+            if (count[0]++ % SQL_ROWS_PER_INSERT == 0) {
+                out.append(count[0] == 1 ? "" : ";\n").append(INSERT_PREFIX).append('\n');
+            } else {
+                out.append(",\n");
+            }
+            out.append("('");
+            for (int i = 0; i < solarPanel.getSection().length(); i++) {
+                char c = solarPanel.getSection().charAt(i);
+                if (c == '\'' || c == '\\') {
+                    out.append(c);
+                }
+                out.append(c);
+            }
+            out.append("',").append(solarPanel.getRow())
+                    .append(',').append(solarPanel.getColumn())
+                    .append(',').append(solarPanel.getYearInstalled())
+                    .append(',').append(solarPanel.getMaterial().getValue())
+                    .append(',').append(solarPanel.isTracking() ? 1 : 0).append(')');
+        }, "start transaction;\n", () -> count[0] == 0 ? "commit;\n" : ";\ncommit;\n");
+    }
+
+    /**
+     * Inserts the farm into an existing solar_panel table with JDBC batches, committing
+     * every {@value #JDBC_BATCHES_PER_COMMIT} batches. Ids are left to the database.
+     * With MySQL, add `rewriteBatchedStatements=true` to the url so each batch is sent
+     * as multi-row inserts.
+     * @return The number of panels inserted.
+     */
+    public long insert(Connection connection) throws DataAccessException {
+        boolean autoCommit = true;
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_PREFIX + " (?,?,?,?,?,?)")) {
+            autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            long[] pending = {0};
+            SQLException[] failure = {null};
+            long count = generate(solarPanel -> {
+                if (failure[0] != null) {
+                    return;
+                }
+                try {
+                    statement.setString(1, solarPanel.getSection());
+                    statement.setInt(2, solarPanel.getRow());
+                    statement.setInt(3, solarPanel.getColumn());
+                    statement.setInt(4, solarPanel.getYearInstalled());
+                    statement.setInt(5, solarPanel.getMaterial().getValue());
+                    statement.setBoolean(6, solarPanel.isTracking());
+                    statement.addBatch();
+                    if (++pending[0] % JDBC_BATCH_SIZE == 0) {
+                        statement.executeBatch();
+                        if (pending[0] % (JDBC_BATCH_SIZE * JDBC_BATCHES_PER_COMMIT) == 0) {
+                            connection.commit();
+                        }
+                    }
+                } catch (SQLException ex) {
+                    failure[0] = ex;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            statement.executeBatch();
+            connection.commit();
+            return count;
+        } catch (SQLException ex) {
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackFailure) {
+                ex.addSuppressed(rollbackFailure);
+            }
+            throw new DataAccessException("Could not insert the generated farm.", ex);
+        } finally {
+            try {
+                connection.setAutoCommit(autoCommit);
+            } catch (SQLException ignored) {
+                // The connection is unusable anyway.
+            }
+        }
+    }
+
+    private long write(Path path, Encoder encoder, String header,
+                       Supplier<String> footer) throws DataAccessException {
+        StringBuilder out = new StringBuilder(WRITE_CHUNK + 256);
+        IOException[] failure = {null};
+        try (Writer writer = new BufferedWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8), WRITE_CHUNK)) {
+            if (header != null) {
+                out.append(header);
+            }
+            long count = generate(solarPanel -> {
+                if (failure[0] != null) {
+                    return;
+                }
+                encoder.encode(solarPanel, out);
+                if (out.length() >= WRITE_CHUNK) {
+                    try {
+                        writer.append(out);
+                    } catch (IOException ex) {
+                        failure[0] = ex;
+                    }
+                    out.setLength(0);
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            if (footer != null) {
+                out.append(footer.get());
+            }
+            writer.append(out);
+            return count;
+        } catch (IOException ex) {
+            throw new DataAccessException("Could not write the generated farm to: " + path, ex);
+        }
+    }
+
+    private interface Encoder {
+        void encode(SolarPanel solarPanel, StringBuilder out);
+    }
+}
@@ -0,0 +1,37 @@
+package learn.solarfarm.data;
+
+import learn.solarfarm.models.SolarPanel;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Converts a farm file from one format to another, e.g. to migrate an existing
+ * `~` delimited file to the binary format:
+ *
+ *   java -cp ... learn.solarfarm.data.SolarPanelFileConverter text binary ./data/solarfarm.txt ./data/solarfarm.bin
+ */
+public class SolarPanelFileConverter {
+
+    public static void main(String[] args) throws DataAccessException {
+        if (args.length != 4) {
+            System.out.println("Usage: SolarPanelFileConverter <fromFormat> <toFormat> <fromPath> <toPath>");
+            System.out.println("Formats: text, binary");
+            return;
+        }
+        int count = convert(SolarPanelFileFormat.forName(args[0]), SolarPanelFileFormat.forName(args[1]),
+                Paths.get(args[2]), Paths.get(args[3]));
+        System.out.printf("Converted %s solar panels from %s to %s.%n", count, args[2], args[3]);
+    }
+
+    /**
+     * @return The number of solar panels converted.
+     */
+    public static int convert(SolarPanelFileFormat from, SolarPanelFileFormat to,
+                              Path fromPath, Path toPath) throws DataAccessException {
+        List<SolarPanel> solarPanels = from.read(fromPath);
+        to.write(toPath, solarPanels);
+        return solarPanels.size();
+    }
+}
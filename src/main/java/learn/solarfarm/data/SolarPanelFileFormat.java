@@ -0,0 +1,35 @@
+package learn.solarfarm.data;
+
+import learn.solarfarm.models.SolarPanel;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * An on-disk representation of a whole farm.
+ */
+public interface SolarPanelFileFormat {
+
+    /**
+     * Reads every solar panel in the file, in file order.
+     * A missing file is an empty farm.
+     */
+    List<SolarPanel> read(Path path) throws DataAccessException;
+
+    /**
+     * Writes every solar panel to the file, replacing its contents.
+     */
+    void write(Path path, Collection<SolarPanel> solarPanels) throws DataAccessException;
+
+    static SolarPanelFileFormat forName(String name) {
+        switch (name.toLowerCase()) {
+            case "text":
+                return new SolarPanelTextFormat();
+            case "binary":
+                return new SolarPanelBinaryFormat();
+            default:
+                throw new IllegalArgumentException("Unknown data file format: " + name);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package learn.solarfarm.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Coordinates processes that share one data file.
+ *
+ * A lock file (`farm.txt.lock`) next to the data file is locked exclusively by a writer
+ * and shared by a reader that reloads the data file. It also holds a generation number
+ * that every writer increments, so a process can tell that another process changed the
+ * data without re-reading it.
+ *
+ * File locks are held on behalf of the whole JVM, so callers must make sure only one
+ * thread in the process holds the lock at a time.
+ */
+public class SolarPanelFileLock {
+    private final Path lockPath;
+    private FileChannel channel;
+
+    public SolarPanelFileLock(String dataFilePath) {
+        this.lockPath = Paths.get(dataFilePath + ".lock");
+    }
+
+    public Hold lock(boolean shared) throws DataAccessException {
+        try {
+            return new Hold(getChannel().lock(0, Long.MAX_VALUE, shared));
+        } catch (IOException ex) {
+            throw new DataAccessException("Could not lock: " + lockPath, ex);
+        }
+    }
+
+    /**
+     * The current generation. Safe to call without holding the lock,
+     * the value is a hint that the data file should be reloaded.
+     */
+    public long readGeneration() throws DataAccessException {
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+            FileChannel current = getChannel();
+            while (buffer.hasRemaining()) {
+                if (current.read(buffer, buffer.position()) < 0) {
+                    return 0;
+                }
+            }
+            return buffer.getLong(0);
+        } catch (IOException ex) {
+            throw new DataAccessException("Could not read: " + lockPath, ex);
+        }
+    }
+
+    private synchronized FileChannel getChannel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(lockPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        return channel;
+    }
+
+    public class Hold implements AutoCloseable {
+        private final FileLock lock;
+
+        private Hold(FileLock lock) {
+            this.lock = lock;
+        }
+
+        /**
+         * Records that the data file changed.
+         * @return The new generation.
+         */
+        public long incrementGeneration() throws DataAccessException {
+            long generation = readGeneration() + 1;
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES).putLong(0, generation);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer, buffer.position());
+                }
+                channel.force(false);
+            } catch (IOException ex) {
+                throw new DataAccessException("Could not write: " + lockPath, ex);
+            }
+            return generation;
+        }
+
+        @Override
+        public void close() throws DataAccessException {
+            try {
+                lock.release();
+            } catch (IOException ex) {
+                throw new DataAccessException("Could not unlock: " + lockPath, ex);
+            }
+        }
+    }
+}
@@ -1,161 +1,927 @@
 package learn.solarfarm.data;
 
-import learn.solarfarm.models.Material;
 import learn.solarfarm.models.SolarPanel;
 import learn.solarfarm.models.SolarPanelKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Repository;
 
-import java.io.*;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 
 @Repository
 @Profile("file-repository")
 public class SolarPanelFileRepository implements SolarPanelRepository {
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 1000;
+
+    private static final Logger logger = LoggerFactory.getLogger(SolarPanelFileRepository.class);
+    private static final String EVENT_REPOSITORY = SolarPanelFileRepository.class.getSimpleName();
+    private static final String UPSERT_RECORD = "U";
+    private static final String DELETE_RECORD = "D";
+    private static final Comparator<SolarPanel> ROW_COLUMN_ORDER =
+            Comparator.comparingInt(SolarPanel::getRow).thenComparingInt(SolarPanel::getColumn);
+
     private final String filePath;
     private final String delimiter = "~";
+    private final SolarPanelFileFormat format;
+    private final SolarPanelTextFormat journalFormat = new SolarPanelTextFormat();
+
+    // Journal mode only.
+    private final SolarPanelJournal journal;
+    private final int compactionThreshold;
+    private final ExecutorService compactor;
+
+    // Readers share the lock, writers (and loading the state) take it exclusively.
+    // When the data file is shared with other processes, writers also hold the file lock.
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final SolarPanelFileLock fileLock;
+    private long loadedGeneration;
+
+    // Sharded layout only: one file per section under the data directory.
+    private final boolean sharded;
+
+    // Sharded layout only. Moving a panel to another section rewrites two shards, one after
+    // the other, and a crash between them would lose the panel or leave two copies of it.
+    // So the move is journaled before either shard is written, along with any later change
+    // to the same panel, and the journal is replayed over the shards on load. Once every
+    // shard a journaled change touched has been written, the journal is discarded.
+    // Guarded by the lock.
+    private final SolarPanelJournal moves;
+    private final HashSet<Integer> movingIds = new HashSet<>();
+    private final ArrayList<List<CommitBatch>> pendingMoves = new ArrayList<>();
+    private volatile boolean movesPending;
 
-    public SolarPanelFileRepository(@Value("${dataFilePath:./data/solarfarm.txt}")String filePath) {
+    // The farm's section names, registered before the data is read so section ids
+    // are handed out in the same order on every load.
+    private final SolarPanelSectionDictionary dictionary;
+
+    // Group commit: writers stage their change in memory and in the open batch of every
+    // shard it touches, then wait for a single flush to make every staged change durable.
+    // The single-file layout has one shard, the farm. Flushes of a shard are serialized
+    // by its commit monitor, so different shards flush in parallel.
+    // Open batches and pending records are guarded by the lock.
+    private final long commitWindowMillis;
+    private final Shard farmShard = new Shard(null);
+    private final ConcurrentHashMap<String, Shard> sectionShards = new ConcurrentHashMap<>();
+    private final ArrayList<String> pendingRecords = new ArrayList<>();
+
+    // The resident state of the farm, loaded on first use. Reads are served from here,
+    // the file is only touched when the state is loaded and when it changes.
+    private volatile SolarPanelIndex index;
+
+    public SolarPanelFileRepository(String filePath) {
+        this(filePath, "text", "single", false, DEFAULT_COMPACTION_THRESHOLD, false, 0);
+    }
+
+    /**
+     * @param format The data file format, "text" (`~` delimited) or "binary".
+     *               See {@link SolarPanelFileConverter} to migrate an existing file.
+     * @param layout "single" keeps the whole farm in the data file. "sharded" treats the
+     *               data file path as a directory and keeps each section in its own file,
+     *               so a write only rewrites the sections it changed.
+     * @param journaled When true, mutations are appended to a journal next to the data file
+     *                  instead of rewriting it. The live state is rebuilt from the data file
+     *                  plus the journal on first use. Requires the single layout.
+     * @param compactionThreshold The number of journal records that triggers a background
+     *                            compaction of the journal into the data file.
+     * @param shared When true, the data file may be changed by other processes. Writes hold
+     *               a cross-process file lock, and the resident state is reloaded when
+     *               another process has changed the file.
+     * @param commitWindowMillis How long a flush waits for more writers to join it.
+     *                           Writers that arrive while a flush is running always join
+     *                           the next one, so 0 still coalesces concurrent writes.
+     *                           Ignored when the data file is shared.
+     */
+    @Autowired
+    public SolarPanelFileRepository(@Value("${dataFilePath:./data/solarfarm.txt}") String filePath,
+                                    @Value("${dataFileFormat:text}") String format,
+                                    @Value("${dataFileLayout:single}") String layout,
+                                    @Value("${dataFileJournal:false}") boolean journaled,
+                                    @Value("${dataFileJournalCompactionThreshold:1000}") int compactionThreshold,
+                                    @Value("${dataFileShared:false}") boolean shared,
+                                    @Value("${dataFileGroupCommitWindowMillis:0}") long commitWindowMillis) {
         this.filePath = filePath;
+        this.format = SolarPanelFileFormat.forName(format);
+        this.sharded = "sharded".equalsIgnoreCase(layout);
+        if (!sharded && !"single".equalsIgnoreCase(layout)) {
+            throw new IllegalArgumentException("Unknown data file layout: " + layout);
+        }
+        if (sharded && journaled) {
+            throw new IllegalArgumentException("The data file journal requires the single layout.");
+        }
+        this.compactionThreshold = compactionThreshold;
+        this.commitWindowMillis = commitWindowMillis;
+        this.fileLock = shared ? new SolarPanelFileLock(filePath) : null;
+        this.dictionary = new SolarPanelSectionDictionary(filePath);
+        this.moves = sharded ? new SolarPanelJournal(filePath + ".moves") : null;
+        if (journaled) {
+            this.journal = new SolarPanelJournal(filePath);
+            this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "solar-panel-journal-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.journal = null;
+            this.compactor = null;
+        }
     }
 
     @Override
     public List<SolarPanel> findBySection(String section) throws DataAccessException {
-        ArrayList<SolarPanel> result = new ArrayList<>();
-        for (SolarPanel solarPanel : findAll()) {
-            if (solarPanel.getSection().equalsIgnoreCase(section)) {
-                result.add(solarPanel);
+        SolarPanelDataAccessEvent event = SolarPanelDataAccessEvent.begin(EVENT_REPOSITORY, "findBySection", section);
+        List<SolarPanel> result;
+        SolarPanelIndex current = lockForRead();
+        try {
+            result = copyAll(current.findBySection(section));
+        } finally {
+            lock.readLock().unlock();
+        }
+        event.commit(result.size());
+        return result;
+    }
+
+    @Override
+    public List<SolarPanel> findBySection(String section, int afterRow, int afterColumn, int limit) throws DataAccessException {
+        SolarPanelDataAccessEvent event = SolarPanelDataAccessEvent.begin(EVENT_REPOSITORY, "findBySectionPage", section);
+        List<SolarPanel> result;
+        SolarPanelIndex current = lockForRead();
+        try {
+            ArrayList<SolarPanel> page = new ArrayList<>();
+            for (SolarPanel solarPanel : current.findBySection(section)) {
+                if (solarPanel.getRow() > afterRow
+                        || (solarPanel.getRow() == afterRow && solarPanel.getColumn() > afterColumn)) {
+                    page.add(solarPanel);
+                }
             }
+            page.sort(ROW_COLUMN_ORDER);
+            result = copyAll(page.subList(0, Math.min(limit, page.size())));
+        } finally {
+            lock.readLock().unlock();
         }
+        event.commit(result.size());
         return result;
     }
 
+    @Override
+    public void streamBySection(String section, Consumer<SolarPanel> consumer) throws DataAccessException {
+        // The section is already resident, so copy it and hand it over without holding the lock.
+        SolarPanelDataAccessEvent event = SolarPanelDataAccessEvent.begin(EVENT_REPOSITORY, "streamBySection", section);
+        List<SolarPanel> solarPanels = findBySection(section);
+        solarPanels.sort(ROW_COLUMN_ORDER);
+        solarPanels.forEach(consumer);
+        event.commit(solarPanels.size());
+    }
+
     @Override
     public SolarPanel findByKey(SolarPanelKey key) throws DataAccessException {
-        List<SolarPanel> all = findAll();
-        for (SolarPanel solarPanel : all) {
-            if (solarPanel.isMatch(key)) {
-                return solarPanel;
+        SolarPanelDataAccessEvent event = SolarPanelDataAccessEvent.begin(EVENT_REPOSITORY, "findByKey", key.getSection());
+        SolarPanel result;
+        SolarPanelIndex current = lockForRead();
+        try {
+            SolarPanel solarPanel = current.findByKey(key);
+            result = solarPanel == null ? null : new SolarPanel(solarPanel);
+        } finally {
+            lock.readLock().unlock();
+        }
+        event.commit(result == null ? 0 : 1);
+        return result;
+    }
+
+    @Override
+    public SolarPanel findById(int id) throws DataAccessException {
+        SolarPanelDataAccessEvent event = SolarPanelDataAccessEvent.begin(EVENT_REPOSITORY, "findById", null);
+        SolarPanel result;
+        SolarPanelIndex current = lockForRead();
+        try {
+            SolarPanel solarPanel = current.findById(id);
+            result = solarPanel == null ? null : new SolarPanel(solarPanel);
+        } finally {
+            lock.readLock().unlock();
+        }
+        event.commit(result == null ? 0 : 1);
+        return result;
+    }
+
+    @Override
+    public Map<Integer, SolarPanelKey> findAllKeys() throws DataAccessException {
+        SolarPanelDataAccessEvent event = SolarPanelDataAccessEvent.begin(EVENT_REPOSITORY, "findAllKeys", null);
+        HashMap<Integer, SolarPanelKey> result = new HashMap<>();
+        SolarPanelIndex current = lockForRead();
+        try {
+            for (SolarPanel solarPanel : current.findAll()) {
+                result.put(solarPanel.getId(), solarPanel.getKey());
             }
+        } finally {
+            lock.readLock().unlock();
         }
-        return null;
+        event.commit(result.size());
+        return result;
+    }
+
+    @Override
+    public List<SolarPanel> findByKeys(Collection<SolarPanelKey> keys) throws DataAccessException {
+        SolarPanelDataAccessEvent event = SolarPanelDataAccessEvent.begin(EVENT_REPOSITORY, "findByKeys", null);
+        ArrayList<SolarPanel> result = new ArrayList<>();
+        SolarPanelIndex current = lockForRead();
+        try {
+            for (SolarPanelKey key : keys) {
+                SolarPanel solarPanel = current.findByKey(key);
+                if (solarPanel != null) {
+                    result.add(new SolarPanel(solarPanel));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        event.commit(result.size());
+        return result;
     }
 
     @Override
     public SolarPanel create(SolarPanel solarPanel) throws DataAccessException {
-        List<SolarPanel> all = findAll();
-        int nextId = getNextId(all);
-        solarPanel.setId(nextId);
-        all.add(solarPanel);
-        writeToFile(all);
+        SolarPanelDataAccessEvent event = SolarPanelDataAccessEvent.begin(EVENT_REPOSITORY, "create", solarPanel.getSection());
+        List<CommitBatch> batches;
+        lock.writeLock().lock();
+        try (SolarPanelFileLock.Hold hold = lockFile(false)) {
+            SolarPanelIndex current = getIndex(hold);
+            if (current.findByKey(solarPanel.getKey()) != null) {
+                throw duplicateKey(solarPanel);
+            }
+            solarPanel.setId(current.nextId());
+            current.put(new SolarPanel(solarPanel));
+            batches = persistUpsert(solarPanel, hold, solarPanel.getSection());
+        } finally {
+            lock.writeLock().unlock();
+        }
+        commit(batches);
+        event.commit(1);
         return solarPanel;
     }
 
+    @Override
+    public List<SolarPanel> createAll(List<SolarPanel> solarPanels) throws DataAccessException {
+        SolarPanelDataAccessEvent event = SolarPanelDataAccessEvent.begin(EVENT_REPOSITORY, "createAll", null);
+        List<CommitBatch> batches;
+        lock.writeLock().lock();
+        try (SolarPanelFileLock.Hold hold = lockFile(false)) {
+            SolarPanelIndex current = getIndex(hold);
+            // Check every key before changing anything, so a duplicate fails the whole batch.
+            HashSet<SolarPanelKey> batchKeys = new HashSet<>();
+            for (SolarPanel solarPanel : solarPanels) {
+                SolarPanelKey key = solarPanel.getKey();
+                if (current.findByKey(key) != null || !batchKeys.add(key)) {
+                    throw duplicateKey(solarPanel);
+                }
+            }
+            ArrayList<String> records = new ArrayList<>(solarPanels.size());
+            LinkedHashSet<String> sections = new LinkedHashSet<>();
+            for (SolarPanel solarPanel : solarPanels) {
+                solarPanel.setId(current.nextId());
+                current.put(new SolarPanel(solarPanel));
+                records.add(upsertRecord(solarPanel));
+                sections.add(solarPanel.getSection());
+            }
+            // Every panel joins the same batches, so the whole batch is written together.
+            // New panels aren't moving, so there's no id to journal.
+            batches = persist(records, hold, sections, 0);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        commit(batches);
+        event.commit(solarPanels.size());
+        return solarPanels;
+    }
+
     @Override
     public boolean update(SolarPanel solarPanel) throws DataAccessException {
-        List<SolarPanel> all = findAll();
-        for (int i = 0; i < all.size(); i++) {
+        SolarPanelDataAccessEvent event = SolarPanelDataAccessEvent.begin(EVENT_REPOSITORY, "update", solarPanel.getSection());
+        List<CommitBatch> batches;
+        lock.writeLock().lock();
+        try (SolarPanelFileLock.Hold hold = lockFile(false)) {
             // Use the id to find the solar panel to update.
             // Using this approach allows the natural key of the solar panel to be updated.
-            if (all.get(i).getId() == solarPanel.getId()) {
-                all.set(i, solarPanel);
-                writeToFile(all);
-                return true;
+            SolarPanelIndex current = getIndex(hold);
+            SolarPanel existing = current.findById(solarPanel.getId());
+            if (existing == null) {
+                event.commit(0);
+                return false;
+            }
+            SolarPanel other = current.findByKey(solarPanel.getKey());
+            if (other != null && other.getId() != solarPanel.getId()) {
+                throw duplicateKey(solarPanel);
             }
+            current.put(new SolarPanel(solarPanel));
+            batches = persistUpsert(solarPanel, hold, existing.getSection(), solarPanel.getSection());
+        } finally {
+            lock.writeLock().unlock();
         }
-        return false;
+        commit(batches);
+        event.commit(1);
+        return true;
     }
 
     @Override
     public boolean deleteByKey(SolarPanelKey key) throws DataAccessException {
-        List<SolarPanel> all = findAll();
-        for (int i = 0; i < all.size(); i++) {
-            if (all.get(i).isMatch(key)) {
-                all.remove(i);
-                writeToFile(all);
-                return true;
+        SolarPanelDataAccessEvent event = SolarPanelDataAccessEvent.begin(EVENT_REPOSITORY, "deleteByKey", key.getSection());
+        List<CommitBatch> batches;
+        lock.writeLock().lock();
+        try (SolarPanelFileLock.Hold hold = lockFile(false)) {
+            SolarPanelIndex current = getIndex(hold);
+            SolarPanel existing = current.findByKey(key);
+            if (existing == null) {
+                event.commit(0);
+                return false;
             }
+            current.remove(existing.getId());
+            batches = persistDelete(existing, hold);
+        } finally {
+            lock.writeLock().unlock();
         }
-        return false;
+        commit(batches);
+        event.commit(1);
+        return true;
     }
 
-    private List<SolarPanel> findAll() throws DataAccessException {
-        ArrayList<SolarPanel> result = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
-                SolarPanel sp = lineToSolarPanel(line);
-                if (sp != null) {
-                    result.add(sp);
+    /**
+     * Takes the read lock on an up-to-date index.
+     * Loading the state needs the write lock, so a reader that finds the state missing
+     * (or stale) loads it under the write lock and tries again.
+     * The caller must release the read lock.
+     */
+    private SolarPanelIndex lockForRead() throws DataAccessException {
+        while (true) {
+            lock.readLock().lock();
+            SolarPanelIndex current = index;
+            if (current != null && !isStale()) {
+                return current;
+            }
+            lock.readLock().unlock();
+
+            lock.writeLock().lock();
+            // A sharded load may finish an interrupted move, which writes.
+            try (SolarPanelFileLock.Hold hold = lockFile(!sharded)) {
+                getIndex(hold);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private DuplicateSolarPanelKeyException duplicateKey(SolarPanel solarPanel) {
+        return new DuplicateSolarPanelKeyException(String.format("SolarPanel %s already exists.",
+                solarPanel.getKey()));
+    }
+
+    private SolarPanelFileLock.Hold lockFile(boolean shared) throws DataAccessException {
+        return fileLock == null ? null : fileLock.lock(shared);
+    }
+
+    private boolean isStale() throws DataAccessException {
+        return fileLock != null && fileLock.readGeneration() != loadedGeneration;
+    }
+
+    /**
+     * Loads the resident state if it's missing or another process changed the file.
+     * Call with the write lock (and the file lock, if shared) held.
+     *
+     * In journal mode the data file is the snapshot, and every journal record is replayed
+     * on top of it in order. The journal only holds records the snapshot doesn't include;
+     * an interrupted compaction is finished or rolled back first, see {@link SolarPanelJournal}.
+     * In the sharded layout, journaled moves are replayed over the shards the same way.
+     */
+    private SolarPanelIndex getIndex(SolarPanelFileLock.Hold hold) throws DataAccessException {
+        if (index == null || isStale()) {
+            SolarPanelDataAccessEvent event = SolarPanelDataAccessEvent.begin(EVENT_REPOSITORY, "load", null);
+            long generation = fileLock == null ? 0 : fileLock.readGeneration();
+            dictionary.load();
+            if (journal != null) {
+                journal.recoverCompaction();
+            }
+            SolarPanelIndex loaded = new SolarPanelIndex();
+            LinkedHashSet<String> sections = new LinkedHashSet<>();
+            for (SolarPanel solarPanel : readAll(event)) {
+                loaded.put(solarPanel);
+                sections.add(solarPanel.getSection());
+            }
+            if (journal != null) {
+                SolarPanelTextCodec codec = new SolarPanelTextCodec();
+                long recordNumber = 0;
+                for (String record : journal.readRecords()) {
+                    replay(record, ++recordNumber, codec, loaded);
                 }
+                event.bytesRead += journal.getBytesRead();
+            }
+            if (moves != null) {
+                generation = recoverMoves(loaded, sections, hold, generation);
+                event.bytesRead += moves.getBytesRead();
+            }
+            // Data written before the dictionary existed, or by a process that didn't keep it.
+            dictionary.addAll(sections);
+            index = loaded;
+            loadedGeneration = generation;
+            event.commit(loaded.size());
+            if (journal != null && journal.isCompacting()) {
+                // A previous compaction didn't finish. Finish it now.
+                scheduleCompaction();
             }
-        } catch (FileNotFoundException ex) {
-            // If the file doesn't exist, no big deal.
-            // We'll create it when we add a new solar panel.
-            // No file just means no solar panels yet.
-        } catch (IOException ex) {
-            throw new DataAccessException("Could not open the file path: " + filePath, ex);
         }
-        return result;
+        return index;
     }
 
-    private int getNextId(List<SolarPanel> solarPanels) {
-        int maxId = 0;
-        for (SolarPanel solarPanel : solarPanels) {
-            if (maxId < solarPanel.getId()) {
-                maxId = solarPanel.getId();
+    /**
+     * Replays moves that were journaled but maybe not written to every shard, then writes
+     * every shard they touched and discards the journal.
+     * @return The file generation the loaded state matches.
+     */
+    private long recoverMoves(SolarPanelIndex loaded, Collection<String> sections,
+                              SolarPanelFileLock.Hold hold, long generation) throws DataAccessException {
+        pendingMoves.clear();
+        movingIds.clear();
+        movesPending = false;
+        List<String> records = moves.readRecords();
+        if (records.isEmpty()) {
+            return generation;
+        }
+        logger.warn("Finishing {} interrupted section moves in {}", records.size(), filePath);
+        SolarPanelTextCodec codec = new SolarPanelTextCodec();
+        long recordNumber = 0;
+        for (String record : records) {
+            replay(record, ++recordNumber, codec, loaded);
+        }
+        // The sections as read, which may hold a copy the replay removed, and as replayed.
+        LinkedHashSet<String> shardNames = new LinkedHashSet<>();
+        for (String section : sections) {
+            shardNames.add(shardName(section));
+        }
+        sections.clear();
+        for (SolarPanel solarPanel : loaded.findAll()) {
+            shardNames.add(shardName(solarPanel.getSection()));
+            sections.add(solarPanel.getSection());
+        }
+        for (String shardName : shardNames) {
+            writeShard(sectionShards.computeIfAbsent(shardName, Shard::new),
+                    new ArrayList<>(loaded.findBySection(shardName)));
+        }
+        discardMoves();
+        return hold == null ? generation : hold.incrementGeneration();
+    }
+
+    private List<CommitBatch> persistUpsert(SolarPanel solarPanel, SolarPanelFileLock.Hold hold,
+                                            String... sections) throws DataAccessException {
+        return persist(List.of(upsertRecord(solarPanel)), hold, Arrays.asList(sections), solarPanel.getId());
+    }
+
+    private List<CommitBatch> persistDelete(SolarPanel solarPanel, SolarPanelFileLock.Hold hold) throws DataAccessException {
+        return persist(List.of(DELETE_RECORD + delimiter + solarPanel.getId()), hold,
+                List.of(solarPanel.getSection()), solarPanel.getId());
+    }
+
+    private String upsertRecord(SolarPanel solarPanel) {
+        return UPSERT_RECORD + delimiter + journalFormat.solarPanelToLine(solarPanel);
+    }
+
+    /**
+     * Records a change that was just applied to the resident state.
+     * Call with the write lock held.
+     *
+     * A shared data file is written immediately, while the file lock is held, because
+     * another process may change the file as soon as the lock is released.
+     * Otherwise the change joins the open batch of every shard it touches and the caller
+     * must {@link #commit} them after releasing the write lock.
+     *
+     * @param sections The sections the change touched.
+     * @param id The id of the changed panel, or 0 for new panels.
+     * @return The batches to commit; empty when the change is already durable.
+     */
+    private List<CommitBatch> persist(List<String> journalRecords, SolarPanelFileLock.Hold hold,
+                                      Collection<String> sections, int id) throws DataAccessException {
+        try {
+            // Only touches the disk for a section the farm hasn't had before.
+            dictionary.addAll(sections);
+        } catch (DataAccessException ex) {
+            index = null;
+            throw ex;
+        }
+
+        ArrayList<Shard> shards = new ArrayList<>();
+        if (sharded) {
+            for (String section : sections) {
+                Shard shard = sectionShards.computeIfAbsent(shardName(section), Shard::new);
+                if (!shards.contains(shard)) {
+                    shards.add(shard);
+                }
+            }
+        } else {
+            shards.add(farmShard);
+        }
+
+        boolean move = sharded && id > 0 && (shards.size() > 1 || movingIds.contains(id));
+        if (move) {
+            try {
+                moves.append(journalRecords);
+                movingIds.add(id);
+            } catch (DataAccessException ex) {
+                index = null;
+                throw ex;
             }
         }
-        return maxId + 1;
+
+        if (hold == null) {
+            if (journal != null) {
+                pendingRecords.addAll(journalRecords);
+            }
+            ArrayList<CommitBatch> batches = new ArrayList<>();
+            for (Shard shard : shards) {
+                batches.add(shard.openBatch);
+            }
+            if (move) {
+                pendingMoves.add(batches);
+                movesPending = true;
+            }
+            return batches;
+        }
+
+        try {
+            if (journal != null) {
+                appendJournal(journalRecords);
+                compactIfNeeded();
+            } else {
+                for (Shard shard : shards) {
+                    writeShard(shard, shardContents(shard));
+                }
+                if (move) {
+                    discardMoves();
+                }
+            }
+            loadedGeneration = hold.incrementGeneration();
+        } catch (DataAccessException ex) {
+            // The resident state is ahead of the file. Drop it so it's reloaded from disk.
+            index = null;
+            throw ex;
+        }
+        return List.of();
     }
 
-    private void writeToFile(List<SolarPanel> solarPanels) throws DataAccessException {
-        try (PrintWriter writer = new PrintWriter(filePath)) {
-            for (SolarPanel solarPanel : solarPanels) {
-                writer.println(solarPanelToLine(solarPanel));
+    /**
+     * Waits until staged changes are on disk.
+     * The first writer to get to a shard flushes every change staged for it so far,
+     * including changes from writers that are still waiting; they find their batch done
+     * and return at once.
+     */
+    private void commit(List<CommitBatch> batches) throws DataAccessException {
+        for (CommitBatch batch : batches) {
+            synchronized (batch.shard.commitMonitor) {
+                if (!batch.done) {
+                    if (commitWindowMillis > 0) {
+                        try {
+                            Thread.sleep(commitWindowMillis);
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    flush(batch.shard);
+                }
+            }
+        }
+        if (movesPending) {
+            discardWrittenMoves();
+        }
+        for (CommitBatch batch : batches) {
+            if (batch.failure != null) {
+                throw new DataAccessException("Could not commit to file path: " + filePath, batch.failure);
+            }
+        }
+    }
+
+    /**
+     * Discards the moves journal once every shard its changes touched has been written.
+     * A move whose write failed stays journaled; the failure dropped the resident state,
+     * and the next load replays it.
+     */
+    private void discardWrittenMoves() {
+        lock.writeLock().lock();
+        try {
+            pendingMoves.removeIf(batches -> batches.stream().allMatch(b -> b.done && b.failure == null));
+            if (movesPending && pendingMoves.isEmpty()) {
+                discardMoves();
+            }
+        } catch (DataAccessException ex) {
+            // Replaying the journal again on the next load is harmless.
+            logger.warn("Could not discard the moves journal for {}", filePath, ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Call with the write lock held.
+    private void discardMoves() throws DataAccessException {
+        moves.clear();
+        movingIds.clear();
+        movesPending = false;
+    }
+
+    /**
+     * Closes a shard's open batch and writes it. Call with the shard's commit monitor held.
+     */
+    private void flush(Shard shard) {
+        CommitBatch batch;
+        List<String> records = null;
+        List<SolarPanel> contents = null;
+        // The read lock is enough to keep writers out while the batch is swapped;
+        // only the shard's flusher touches its batch while holding the read lock.
+        lock.readLock().lock();
+        try {
+            batch = shard.openBatch;
+            shard.openBatch = new CommitBatch(shard);
+            if (journal != null) {
+                records = new ArrayList<>(pendingRecords);
+                pendingRecords.clear();
+            } else {
+                contents = shardContents(shard);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        try {
+            if (journal != null) {
+                appendJournal(records);
+                compactIfNeeded();
+            } else {
+                writeShard(shard, contents);
+            }
+        } catch (DataAccessException ex) {
+            batch.failure = ex;
+            lock.writeLock().lock();
+            try {
+                // The resident state is ahead of the files. Drop it so it's reloaded from disk.
+                // Changes staged since the swap were made on top of the dropped state, so
+                // their batches fail too.
+                index = null;
+                pendingRecords.clear();
+                failOpenBatch(farmShard, ex);
+                for (Shard other : sectionShards.values()) {
+                    failOpenBatch(other, ex);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        batch.done = true;
+    }
+
+    private void failOpenBatch(Shard shard, DataAccessException ex) {
+        shard.openBatch.failure = ex;
+        shard.openBatch.done = true;
+        shard.openBatch = new CommitBatch(shard);
+    }
+
+    private List<SolarPanel> shardContents(Shard shard) {
+        if (shard.section == null) {
+            return new ArrayList<>(index.findAll());
+        }
+        return new ArrayList<>(index.findBySection(shard.section));
+    }
+
+    private void writeShard(Shard shard, List<SolarPanel> contents) throws DataAccessException {
+        if (shard.section == null) {
+            writeToFile(Paths.get(filePath), contents);
+        } else if (contents.isEmpty()) {
+            // The last panel left the section.
+            try {
+                Files.deleteIfExists(shardPath(shard.section));
+            } catch (IOException ex) {
+                throw new DataAccessException("Could not delete section file for: " + shard.section, ex);
+            }
+        } else {
+            writeToFile(shardPath(shard.section), contents);
+        }
+    }
+
+    private String shardName(String section) {
+        return section.toLowerCase(Locale.ROOT);
+    }
+
+    private Path shardPath(String shardName) {
+        return Paths.get(filePath).resolve(URLEncoder.encode(shardName, StandardCharsets.UTF_8) + shardExtension());
+    }
+
+    private String shardExtension() {
+        return format instanceof SolarPanelBinaryFormat ? ".bin" : ".txt";
+    }
+
+    private void replay(String record, long recordNumber, SolarPanelTextCodec codec,
+                        SolarPanelIndex state) throws DataAccessException {
+        int split = record.indexOf(delimiter);
+        String type = split < 0 ? "" : record.substring(0, split);
+        if (UPSERT_RECORD.equals(type)) {
+            char[] chars = record.toCharArray();
+            state.put(codec.decode(chars, split + delimiter.length(), chars.length,
+                    recordNumber, "journal " + filePath));
+        } else if (DELETE_RECORD.equals(type)) {
+            try {
+                state.remove(Integer.parseInt(record.substring(split + delimiter.length())));
+            } catch (NumberFormatException ex) {
+                throw new DataAccessException(String.format("Malformed journal record %s of %s: `%s`.",
+                        recordNumber, filePath, record), ex);
+            }
+        } else {
+            throw new DataAccessException(String.format("Malformed journal record %s of %s: `%s`.",
+                    recordNumber, filePath, record));
+        }
+    }
+
+    private void appendJournal(List<String> records) throws DataAccessException {
+        SolarPanelDataAccessEvent event = SolarPanelDataAccessEvent.begin(EVENT_REPOSITORY, "appendJournal", null);
+        event.bytesWritten = journal.append(records);
+        event.commit(records.size());
+    }
+
+    private void compactIfNeeded() {
+        if (journal.getRecordCount() >= compactionThreshold && !journal.isCompacting()) {
+            scheduleCompaction();
+        }
+    }
+
+    private void scheduleCompaction() {
+        compactor.submit(() -> {
+            try {
+                compact();
+            } catch (DataAccessException ex) {
+                // The rotated journal is left in place, so nothing is lost.
+                // The next compaction (or the next startup) picks it up again.
+                logger.warn("Journal compaction failed for {}", filePath, ex);
+            }
+        });
+    }
+
+    /**
+     * Folds the journal into a new snapshot.
+     * The journal is rotated and the state copied while holding the locks; the slow part,
+     * writing the snapshot, happens without blocking readers or writers.
+     */
+    private void compact() throws DataAccessException {
+        List<SolarPanel> snapshot;
+        // Rotating waits for any flush in progress, so every record in the rotated journal
+        // is also in the copied state.
+        synchronized (farmShard.commitMonitor) {
+            lock.writeLock().lock();
+            try (SolarPanelFileLock.Hold hold = lockFile(false)) {
+                SolarPanelIndex current = getIndex(hold);
+                journal.beginCompaction();
+                snapshot = new ArrayList<>(current.findAll());
+            } finally {
+                lock.writeLock().unlock();
             }
+        }
+
+        Path temp = writeTempFile(Paths.get(filePath), snapshot);
+        lock.writeLock().lock();
+        try (SolarPanelFileLock.Hold ignored = lockFile(false)) {
+            // Under the locks, so a load can't roll back a snapshot that's being installed.
+            replaceFile(temp, journal.getCompactedPath());
+            journal.finishCompaction();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private List<SolarPanel> copyAll(Collection<SolarPanel> solarPanels) {
+        ArrayList<SolarPanel> result = new ArrayList<>(solarPanels.size());
+        for (SolarPanel solarPanel : solarPanels) {
+            result.add(new SolarPanel(solarPanel));
+        }
+        return result;
+    }
+
+    private List<SolarPanel> readAll(SolarPanelDataAccessEvent event) throws DataAccessException {
+        if (!sharded) {
+            List<SolarPanel> result = format.read(Paths.get(filePath));
+            event.bytesRead += sizeOf(Paths.get(filePath));
+            return result;
+        }
+        ArrayList<SolarPanel> result = new ArrayList<>();
+        try (DirectoryStream<Path> shardPaths = Files.newDirectoryStream(Paths.get(filePath), "*" + shardExtension())) {
+            for (Path shardPath : shardPaths) {
+                result.addAll(format.read(shardPath));
+                event.bytesRead += sizeOf(shardPath);
+            }
+        } catch (NoSuchFileException ex) {
+            // No directory just means no solar panels yet.
+        } catch (IOException ex) {
+            throw new DataAccessException("Could not list the directory: " + filePath, ex);
+        }
+        return result;
+    }
+
+    private long sizeOf(Path path) {
+        try {
+            return Files.size(path);
         } catch (IOException ex) {
-            throw new DataAccessException("Could not write to file path: " + filePath, ex);
+            // Missing, or gone since it was read. Only the event's byte count is affected.
+            return 0;
         }
     }
 
-    private SolarPanel lineToSolarPanel(String line) {
-        String[] fields = line.split(delimiter);
+    /**
+     * Replaces the data file without ever truncating it: the new contents are written
+     * and synced to a temporary file, then renamed over the data file in one step.
+     * A crash leaves either the old file or the new one, never a partial file.
+     */
+    private void writeToFile(Path target, Collection<SolarPanel> solarPanels) throws DataAccessException {
+        replaceFile(writeTempFile(target, solarPanels), target);
+    }
 
-        if (fields.length != 7) {
-            return null;
+    private Path writeTempFile(Path target, Collection<SolarPanel> solarPanels) throws DataAccessException {
+        SolarPanelDataAccessEvent event = SolarPanelDataAccessEvent.begin(EVENT_REPOSITORY, "writeFile", null);
+        target = target.toAbsolutePath();
+        Path temp = null;
+        try {
+            Files.createDirectories(target.getParent());
+            temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+            format.write(temp, solarPanels);
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+                event.bytesWritten = channel.size();
+            }
+            event.commit(solarPanels.size());
+            return temp;
+        } catch (IOException | DataAccessException ex) {
+            deleteQuietly(temp);
+            if (ex instanceof DataAccessException) {
+                throw (DataAccessException) ex;
+            }
+            throw new DataAccessException("Could not write to file path: " + target, ex);
         }
+    }
 
-        return new SolarPanel(
-                Integer.parseInt(fields[0]),
-                fields[1],
-                Integer.parseInt(fields[2]),
-                Integer.parseInt(fields[3]),
-                Integer.parseInt(fields[4]),
-                Material.valueOf(fields[5]),
-                "true".equals(fields[6])
-        );
+    private void replaceFile(Path temp, Path target) throws DataAccessException {
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            deleteQuietly(temp);
+            throw new DataAccessException("Could not replace file path: " + target, ex);
+        }
     }
 
-    private String solarPanelToLine(SolarPanel solarPanel) {
-        StringBuilder buffer = new StringBuilder(100);
-        buffer.append(solarPanel.getId()).append(delimiter);
-        buffer.append(cleanField(solarPanel.getSection())).append(delimiter);
-        buffer.append(solarPanel.getRow()).append(delimiter);
-        buffer.append(solarPanel.getColumn()).append(delimiter);
-        buffer.append(solarPanel.getYearInstalled()).append(delimiter);
-        buffer.append(solarPanel.getMaterial()).append(delimiter);
-        buffer.append(solarPanel.isTracking());
-        return buffer.toString();
+    private void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            logger.warn("Could not delete temporary file {}", path, ex);
+        }
     }
 
-    private String cleanField(String field) {
-        // If the file delimiter, a carriage return, or a newline was written to the file,
-        // it would ruin our ability to read the solar panel.
-        // Here, we insure those characters don't end up in the file.
-        return field.replace(delimiter, "")
-                .replace("/r", "")
-                .replace("/n", "");
+    private static class Shard {
+        // The shard's section (folded to lower case), or null for the whole farm.
+        private final String section;
+        private final Object commitMonitor = new Object();
+        private CommitBatch openBatch = new CommitBatch(this);
+
+        private Shard(String section) {
+            this.section = section;
+        }
+    }
+
+    private static class CommitBatch {
+        private final Shard shard;
+        // Set by the shard's flusher, or by another shard's flusher when it fails.
+        private volatile boolean done;
+        private volatile DataAccessException failure;
+
+        private CommitBatch(Shard shard) {
+            this.shard = shard;
+        }
     }
 }
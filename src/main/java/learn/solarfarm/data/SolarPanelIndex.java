@@ -0,0 +1,139 @@
+package learn.solarfarm.data;
+
+import learn.solarfarm.models.SectionRegistry;
+import learn.solarfarm.models.SolarPanel;
+import learn.solarfarm.models.SolarPanelKey;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+/**
+ * A resident, in-memory model of every solar panel in a farm.
+ *
+ * Panels are indexed three ways:
+ *   - by id, in insertion (file) order
+ *   - by natural key (section, row, column), case-insensitive on section
+ *   - by section, case-insensitive, in insertion order
+ *
+ * Sections are indexed by their {@link SectionRegistry} id, so a lookup doesn't
+ * build a lower-cased copy of the section name, and panels hold the registry's
+ * interned section String. Natural keys are indexed by {@link SolarPanelKey#toLong()}
+ * in a {@link PackedKeyMap}; the rare key whose row or column doesn't fit the packed
+ * form is kept in a HashMap instead.
+ *
+ * The index owns the SolarPanel instances it holds. Callers must not modify a panel
+ * returned from the index; put a new instance instead. This class isn't thread-safe,
+ * the owning repository is responsible for locking.
+ */
+public class SolarPanelIndex {
+    private final LinkedHashMap<Integer, SolarPanel> byId = new LinkedHashMap<>();
+    private final PackedKeyMap<SolarPanel> byKey = new PackedKeyMap<>();
+    private final HashMap<SolarPanelKey, SolarPanel> byUnpackedKey = new HashMap<>();
+    private final HashMap<Integer, LinkedHashMap<Integer, SolarPanel>> bySection = new HashMap<>();
+    private int maxId;
+
+    public SolarPanel findById(int id) {
+        return byId.get(id);
+    }
+
+    public SolarPanel findByKey(SolarPanelKey key) {
+        if (key == null || key.getSection() == null) {
+            return null;
+        }
+        // A key whose section isn't registered packs to UNPACKED and isn't in either map.
+        long packed = key.toLong();
+        return packed == SolarPanelKey.UNPACKED ? byUnpackedKey.get(key) : byKey.get(packed);
+    }
+
+    public Collection<SolarPanel> findBySection(String section) {
+        if (section == null) {
+            return Collections.emptyList();
+        }
+        int sectionId = SectionRegistry.getDefault().find(section);
+        LinkedHashMap<Integer, SolarPanel> panels = sectionId == SectionRegistry.UNKNOWN
+                ? null : bySection.get(sectionId);
+        return panels == null ? Collections.emptyList() : Collections.unmodifiableCollection(panels.values());
+    }
+
+    public Collection<SolarPanel> findAll() {
+        return Collections.unmodifiableCollection(byId.values());
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    public int nextId() {
+        return maxId + 1;
+    }
+
+    /**
+     * Adds a panel or replaces the panel with the same id.
+     * A replaced panel keeps its position; if the replacement changes the natural key,
+     * the old key and section entries are removed.
+     */
+    public void put(SolarPanel solarPanel) {
+        String section = SectionRegistry.getDefault().intern(solarPanel.getSection());
+        if (section != solarPanel.getSection()) {
+            solarPanel.setSection(section);
+        }
+        SolarPanel existing = byId.put(solarPanel.getId(), solarPanel);
+        if (existing != null) {
+            unindex(existing, solarPanel.getSection());
+        }
+        // The section was registered when it was interned, so only an out of range row or
+        // column leaves the key unpacked.
+        long packed = solarPanel.getKey().toLong();
+        if (packed == SolarPanelKey.UNPACKED) {
+            byUnpackedKey.put(solarPanel.getKey(), solarPanel);
+        } else {
+            byKey.put(packed, solarPanel);
+        }
+        bySection.computeIfAbsent(SectionRegistry.getDefault().register(solarPanel.getSection()),
+                        id -> new LinkedHashMap<>())
+                .put(solarPanel.getId(), solarPanel);
+        maxId = Math.max(maxId, solarPanel.getId());
+    }
+
+    /**
+     * Removes a panel by id.
+     * @return The removed panel or null if no panel has the id.
+     */
+    public SolarPanel remove(int id) {
+        SolarPanel existing = byId.remove(id);
+        if (existing == null) {
+            return null;
+        }
+        unindex(existing, null);
+        if (id == maxId) {
+            // Match the file repository's historic behavior: the next id is always
+            // one more than the largest id that currently exists.
+            maxId = 0;
+            for (int remaining : byId.keySet()) {
+                maxId = Math.max(maxId, remaining);
+            }
+        }
+        return existing;
+    }
+
+    private void unindex(SolarPanel existing, String replacementSection) {
+        long packed = existing.getKey().toLong();
+        if (packed == SolarPanelKey.UNPACKED) {
+            byUnpackedKey.remove(existing.getKey());
+        } else {
+            byKey.remove(packed);
+        }
+        if (replacementSection != null && replacementSection.equalsIgnoreCase(existing.getSection())) {
+            // Staying in the same section, keep its place in the section.
+            return;
+        }
+        int section = SectionRegistry.getDefault().find(existing.getSection());
+        LinkedHashMap<Integer, SolarPanel> sectionPanels = bySection.get(section);
+        sectionPanels.remove(existing.getId());
+        if (sectionPanels.isEmpty()) {
+            bySection.remove(section);
+        }
+    }
+}
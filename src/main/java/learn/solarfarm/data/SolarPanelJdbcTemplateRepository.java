@@ -1,32 +1,62 @@
 package learn.solarfarm.data;
 
 import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SectionRegistry;
 import learn.solarfarm.models.SolarPanel;
 import learn.solarfarm.models.SolarPanelKey;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
 
 @Profile("jdbc-template")
 @Repository
 public class SolarPanelJdbcTemplateRepository implements SolarPanelRepository {
 
+    private static final String EVENT_REPOSITORY = SolarPanelJdbcTemplateRepository.class.getSimpleName();
     private static final String SOLAR_PANEL_NATURAL_COLUMNS = "section,`row`,`column`,year_installed,material_id,is_tracking";
     private static final String SOLAR_PANEL_ALL_COLUMNS = "solar_panel_id," + SOLAR_PANEL_NATURAL_COLUMNS;
 
+    // Rows fetched per round trip when streaming a section. MySQL Connector/J ignores a
+    // fetch size unless the connection uses cursor fetch, which makes every statement a
+    // server-side prepared statement. Instead, the streaming query alone asks for MySQL's
+    // row-by-row streaming with a fetch size of Integer.MIN_VALUE.
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    // Keys matched per findByKeys query, three parameters each. Keeps a large batch well
+    // under MySQL's limit of 65,535 parameters in a prepared statement.
+    private static final int KEYS_PER_QUERY = 1000;
+
     private final JdbcTemplate template;
+    private final SolarPanelSlowQueryLog slowQueries;
     private final RowMapper<SolarPanel> mapper = (resultSet, rowNumber) -> {
         SolarPanel panel = new SolarPanel();
         panel.setId(resultSet.getInt("solar_panel_id"));
-        panel.setSection(resultSet.getString("section"));
+        panel.setSection(SectionRegistry.getDefault().intern(resultSet.getString("section")));
         panel.setRow(resultSet.getInt("row"));
         panel.setColumn(resultSet.getInt("column"));
         panel.setYearInstalled(resultSet.getInt("year_installed"));
@@ -37,14 +67,76 @@ public class SolarPanelJdbcTemplateRepository implements SolarPanelRepository {
     };
 
     public SolarPanelJdbcTemplateRepository(JdbcTemplate template) {
+        this(template, -1, false);
+    }
+
+    /**
+     * @param slowQueryMillis Statements that take at least this long are logged with their
+     *                        parameters, duration, and row count. Negative turns it off.
+     * @param explainSlowQueries When true, slow statements are logged with their `EXPLAIN` plan.
+     */
+    @Autowired
+    public SolarPanelJdbcTemplateRepository(JdbcTemplate template,
+                                            @Value("${solarPanelSlowQueryMillis:500}") long slowQueryMillis,
+                                            @Value("${solarPanelSlowQueryExplain:false}") boolean explainSlowQueries) {
         this.template = template;
+        this.slowQueries = new SolarPanelSlowQueryLog(template, slowQueryMillis, explainSlowQueries);
     }
 
     @Override
     public List<SolarPanel> findBySection(String section) throws DataAccessException {
         final String sql = String.format("select %s from solar_panel where section = ?;", SOLAR_PANEL_ALL_COLUMNS);
 
-        return template.query(sql, mapper, section);
+        SolarPanelDataAccessEvent event = SolarPanelDataAccessEvent.begin(EVENT_REPOSITORY, "findBySection", section);
+        long start = System.nanoTime();
+        Object[] params = {section};
+        List<SolarPanel> result = template.query(sql, mapper, params);
+        slowQueries.record(sql, start, result.size(), params);
+        event.commit(result.size());
+        return result;
+    }
+
+    @Override
+    public List<SolarPanel> findBySection(String section, int afterRow, int afterColumn, int limit) throws DataAccessException {
+        // Seeks along the (section, row, column) unique index, so a page costs the same
+        // no matter how deep into the section it starts.
+        final String sql = String.format("select %s from solar_panel where " +
+                "section = ? and " +
+                "(`row` > ? or (`row` = ? and `column` > ?)) " +
+                "order by `row`, `column` " +
+                "limit ?;", SOLAR_PANEL_ALL_COLUMNS);
+
+        SolarPanelDataAccessEvent event = SolarPanelDataAccessEvent.begin(EVENT_REPOSITORY, "findBySectionPage", section);
+        long start = System.nanoTime();
+        Object[] params = {section, afterRow, afterRow, afterColumn, limit};
+        List<SolarPanel> result = template.query(sql, mapper, params);
+        slowQueries.record(sql, start, result.size(), params);
+        event.commit(result.size());
+        return result;
+    }
+
+    @Override
+    public void streamBySection(String section, Consumer<SolarPanel> consumer) throws DataAccessException {
+        final String sql = String.format("select %s from solar_panel where section = ? " +
+                "order by `row`, `column`;", SOLAR_PANEL_ALL_COLUMNS);
+
+        PreparedStatementCreator creator = connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(isMySql(connection) ? Integer.MIN_VALUE : STREAM_FETCH_SIZE);
+            statement.setString(1, section);
+            return statement;
+        };
+        SolarPanelDataAccessEvent event = SolarPanelDataAccessEvent.begin(EVENT_REPOSITORY, "streamBySection", section);
+        long start = System.nanoTime();
+        int[] rowCount = new int[1];
+        template.query(creator, resultSet -> {
+            consumer.accept(mapper.mapRow(resultSet, resultSet.getRow()));
+            rowCount[0]++;
+        });
+        // Includes the time the consumer took with each row.
+        slowQueries.record(sql, start, rowCount[0], section);
+        event.commit(rowCount[0]);
     }
 
     @Override
@@ -53,12 +145,77 @@ public class SolarPanelJdbcTemplateRepository implements SolarPanelRepository {
                 "section = ? and " +
                 "`row` = ? and " +
                 "`column` = ?;", SOLAR_PANEL_ALL_COLUMNS);
+        SolarPanelDataAccessEvent event = SolarPanelDataAccessEvent.begin(EVENT_REPOSITORY, "findByKey", key.getSection());
+        long start = System.nanoTime();
+        Object[] params = {key.getSection(), key.getRow(), key.getColumn()};
+        SolarPanel result = null;
+        try {
+            result = template.queryForObject(sql, mapper, params);
+        } catch (EmptyResultDataAccessException ex) {
+            // No solar panel has the key.
+        }
+        slowQueries.record(sql, start, result == null ? 0 : 1, params);
+        event.commit(result == null ? 0 : 1);
+        return result;
+    }
+
+    @Override
+    public SolarPanel findById(int id) throws DataAccessException {
+        final String sql = String.format("select %s from solar_panel where solar_panel_id = ?;",
+                SOLAR_PANEL_ALL_COLUMNS);
+        SolarPanelDataAccessEvent event = SolarPanelDataAccessEvent.begin(EVENT_REPOSITORY, "findById", null);
+        long start = System.nanoTime();
+        SolarPanel result = null;
         try {
-            return template.queryForObject(sql, mapper, key.getSection(), key.getRow(), key.getColumn());
+            result = template.queryForObject(sql, mapper, id);
         } catch (EmptyResultDataAccessException ex) {
-            System.out.printf("No object found for %s, %d, %d%n", key.getSection(), key.getRow(), key.getColumn());
+            // No solar panel has the id.
         }
-        return null;
+        slowQueries.record(sql, start, result == null ? 0 : 1, id);
+        event.commit(result == null ? 0 : 1);
+        return result;
+    }
+
+    @Override
+    public Map<Integer, SolarPanelKey> findAllKeys() throws DataAccessException {
+        final String sql = "select solar_panel_id, section, `row`, `column` from solar_panel;";
+
+        SolarPanelDataAccessEvent event = SolarPanelDataAccessEvent.begin(EVENT_REPOSITORY, "findAllKeys", null);
+        long start = System.nanoTime();
+        HashMap<Integer, SolarPanelKey> result = new HashMap<>();
+        template.query(sql, resultSet -> {
+            result.put(resultSet.getInt("solar_panel_id"), new SolarPanelKey(resultSet.getString("section"),
+                    resultSet.getInt("row"), resultSet.getInt("column")));
+        });
+        slowQueries.record(sql, start, result.size());
+        event.commit(result.size());
+        return result;
+    }
+
+    @Override
+    public List<SolarPanel> findByKeys(Collection<SolarPanelKey> keys) throws DataAccessException {
+        // Keys compare case-insensitively on section, like the database's collation does.
+        ArrayList<SolarPanelKey> distinct = new ArrayList<>(new LinkedHashSet<>(keys));
+        ArrayList<SolarPanel> result = new ArrayList<>();
+        SolarPanelDataAccessEvent event = SolarPanelDataAccessEvent.begin(EVENT_REPOSITORY, "findByKeys", null);
+        for (int from = 0; from < distinct.size(); from += KEYS_PER_QUERY) {
+            List<SolarPanelKey> chunk = distinct.subList(from, Math.min(from + KEYS_PER_QUERY, distinct.size()));
+            final String sql = String.format("select %s from solar_panel where %s;", SOLAR_PANEL_ALL_COLUMNS,
+                    String.join(" or ", Collections.nCopies(chunk.size(), "(section = ? and `row` = ? and `column` = ?)")));
+
+            long start = System.nanoTime();
+            Object[] params = new Object[chunk.size() * 3];
+            for (int i = 0; i < chunk.size(); i++) {
+                params[i * 3] = chunk.get(i).getSection();
+                params[i * 3 + 1] = chunk.get(i).getRow();
+                params[i * 3 + 2] = chunk.get(i).getColumn();
+            }
+            List<SolarPanel> found = template.query(sql, mapper, params);
+            slowQueries.record(sql, start, found.size(), params);
+            result.addAll(found);
+        }
+        event.commit(result.size());
+        return result;
     }
 
     @Override
@@ -67,18 +224,30 @@ public class SolarPanelJdbcTemplateRepository implements SolarPanelRepository {
                 "(%s) values" +
                 "(?, ?, ?, ?, ?, ?);", SOLAR_PANEL_NATURAL_COLUMNS);
 
+        SolarPanelDataAccessEvent event = SolarPanelDataAccessEvent.begin(EVENT_REPOSITORY, "create", solarPanel.getSection());
+        long start = System.nanoTime();
         KeyHolder keyHolder = new GeneratedKeyHolder();
-        int rowsAffected = template.update(connection -> {
-            PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-            statement.setString(1, solarPanel.getSection());
-            statement.setInt(2, solarPanel.getRow());
-            statement.setInt(3, solarPanel.getColumn());
-            statement.setInt(4, solarPanel.getYearInstalled());
-            statement.setInt(5, solarPanel.getMaterial().getValue());
-            statement.setBoolean(6, solarPanel.isTracking());
-            return statement;
-        }, keyHolder);
+        int rowsAffected;
+        try {
+            rowsAffected = template.update(connection -> {
+                PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+                statement.setString(1, solarPanel.getSection());
+                statement.setInt(2, solarPanel.getRow());
+                statement.setInt(3, solarPanel.getColumn());
+                statement.setInt(4, solarPanel.getYearInstalled());
+                statement.setInt(5, solarPanel.getMaterial().getValue());
+                statement.setBoolean(6, solarPanel.isTracking());
+                return statement;
+            }, keyHolder);
+        } catch (DuplicateKeyException ex) {
+            // The un_solar_panel unique constraint enforces the natural key.
+            throw duplicateKey(solarPanel, ex);
+        }
 
+        slowQueries.record(sql, start, rowsAffected, solarPanel.getSection(), solarPanel.getRow(),
+                solarPanel.getColumn(), solarPanel.getYearInstalled(), solarPanel.getMaterial().getValue(),
+                solarPanel.isTracking());
+        event.commit(rowsAffected);
         if (rowsAffected == 0) {
             return null;
         }
@@ -88,6 +257,63 @@ public class SolarPanelJdbcTemplateRepository implements SolarPanelRepository {
         return solarPanel;
     }
 
+    /**
+     * Inserts every solar panel as one JDBC batch in one transaction.
+     * JdbcTemplate.batchUpdate can't return generated keys, so the batch is run on the
+     * template's connection directly. With `rewriteBatchedStatements=true` on the
+     * datasource url, MySQL Connector/J sends the batch as multi-row inserts.
+     * A duplicate natural key fails the whole batch.
+     */
+    @Override
+    @Transactional(rollbackFor = DataAccessException.class)
+    public List<SolarPanel> createAll(List<SolarPanel> solarPanels) throws DataAccessException {
+        final String sql = String.format("insert into solar_panel " +
+                "(%s) values" +
+                "(?, ?, ?, ?, ?, ?);", SOLAR_PANEL_NATURAL_COLUMNS);
+
+        SolarPanelDataAccessEvent event = SolarPanelDataAccessEvent.begin(EVENT_REPOSITORY, "createAll", null);
+        long start = System.nanoTime();
+        try {
+            insertBatch(sql, solarPanels);
+        } catch (DuplicateKeyException ex) {
+            throw new DuplicateSolarPanelKeyException("SolarPanel `section`, `row`, and `column` must be unique.", ex);
+        }
+        slowQueries.record(sql, start, solarPanels.size(), (Object[]) null);
+        event.commit(solarPanels.size());
+
+        return solarPanels;
+    }
+
+    private void insertBatch(String sql, List<SolarPanel> solarPanels) {
+        template.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                for (SolarPanel solarPanel : solarPanels) {
+                    statement.setString(1, solarPanel.getSection());
+                    statement.setInt(2, solarPanel.getRow());
+                    statement.setInt(3, solarPanel.getColumn());
+                    statement.setInt(4, solarPanel.getYearInstalled());
+                    statement.setInt(5, solarPanel.getMaterial().getValue());
+                    statement.setBoolean(6, solarPanel.isTracking());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+
+                int index = 0;
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    while (keys.next() && index < solarPanels.size()) {
+                        solarPanels.get(index++).setId(keys.getInt(1));
+                    }
+                }
+                if (index != solarPanels.size()) {
+                    // Throwing rolls the transaction back.
+                    throw new SQLException(String.format("Expected %s generated keys but got %s.",
+                            solarPanels.size(), index));
+                }
+            }
+            return null;
+        });
+    }
+
     @Override
     public boolean update(SolarPanel solarPanel) throws DataAccessException {
         final String sql = "update solar_panel set " +
@@ -99,17 +325,41 @@ public class SolarPanelJdbcTemplateRepository implements SolarPanelRepository {
                 "is_tracking = ? " +
                 "where solar_panel_id = ?;";
 
-        int rowsUpdated = template.update(sql, solarPanel.getSection(), solarPanel.getRow(),
+        SolarPanelDataAccessEvent event = SolarPanelDataAccessEvent.begin(EVENT_REPOSITORY, "update", solarPanel.getSection());
+        long start = System.nanoTime();
+        Object[] params = {solarPanel.getSection(), solarPanel.getRow(),
                 solarPanel.getColumn(), solarPanel.getYearInstalled(),
                 solarPanel.getMaterial().getValue(), solarPanel.isTracking(),
-                solarPanel.getId());
+                solarPanel.getId()};
+        try {
+            int rowsUpdated = template.update(sql, params);
 
-        return rowsUpdated > 0;
+            slowQueries.record(sql, start, rowsUpdated, params);
+            event.commit(rowsUpdated);
+            return rowsUpdated > 0;
+        } catch (DuplicateKeyException ex) {
+            throw duplicateKey(solarPanel, ex);
+        }
     }
 
     @Override
     public boolean deleteByKey(SolarPanelKey key) throws DataAccessException {
         final String sql = "delete from solar_panel where section = ? and `row` = ? and `column` = ?;";
-        return template.update(sql, key.getSection(), key.getRow(), key.getColumn()) > 0;
+        SolarPanelDataAccessEvent event = SolarPanelDataAccessEvent.begin(EVENT_REPOSITORY, "deleteByKey", key.getSection());
+        long start = System.nanoTime();
+        Object[] params = {key.getSection(), key.getRow(), key.getColumn()};
+        int rowsDeleted = template.update(sql, params);
+        slowQueries.record(sql, start, rowsDeleted, params);
+        event.commit(rowsDeleted);
+        return rowsDeleted > 0;
+    }
+
+    private static boolean isMySql(Connection connection) throws SQLException {
+        return connection.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT).contains("mysql");
+    }
+
+    private DuplicateSolarPanelKeyException duplicateKey(SolarPanel solarPanel, DuplicateKeyException ex) {
+        return new DuplicateSolarPanelKeyException(String.format("SolarPanel %s already exists.",
+                solarPanel.getKey()), ex);
     }
 }
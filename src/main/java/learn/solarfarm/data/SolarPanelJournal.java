@@ -0,0 +1,205 @@
+package learn.solarfarm.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An append-only log of solar panel mutations that sits next to a snapshot file.
+ *
+ * The journal doesn't know what a record means. The repository decides how a mutation
+ * is encoded; the journal only appends records, reads them back in order, and rotates
+ * itself out of the way so that a compaction can fold it into a new snapshot.
+ *
+ * Files used (for a snapshot at `farm.txt`):
+ *   farm.txt.journal            - the live journal, appended to by every mutation
+ *   farm.txt.journal.compacting - a rotated journal that is being folded into the snapshot
+ *   farm.txt.compacted          - the new snapshot, written but not yet renamed over farm.txt
+ *
+ * Deleting the rotated journal is the point at which a compaction commits. Until then a
+ * crash leaves the old snapshot plus the rotated journal; after it, the new snapshot, which
+ * includes every rotated record. So no record is ever replayed over a snapshot that
+ * already includes it.
+ */
+public class SolarPanelJournal {
+    private final Path snapshotPath;
+    private final Path journalPath;
+    private final Path compactingPath;
+    private final Path compactedPath;
+    private int recordCount;
+    private long bytesRead;
+
+    public SolarPanelJournal(String snapshotPath) {
+        this.snapshotPath = Paths.get(snapshotPath);
+        this.journalPath = Paths.get(snapshotPath + ".journal");
+        this.compactingPath = Paths.get(snapshotPath + ".journal.compacting");
+        this.compactedPath = Paths.get(snapshotPath + ".compacted");
+    }
+
+    /**
+     * Reads every record that hasn't been folded into the snapshot yet, oldest first.
+     * Records from an interrupted compaction come before records from the live journal.
+     */
+    public List<String> readRecords() throws DataAccessException {
+        ArrayList<String> result = new ArrayList<>();
+        bytesRead = 0;
+        readRecords(compactingPath, result);
+        int compactingCount = result.size();
+        readRecords(journalPath, result);
+        recordCount = result.size() - compactingCount;
+        return result;
+    }
+
+    /**
+     * Appends records with a single write and syncs them to disk before returning.
+     * @return The number of bytes written.
+     */
+    public long append(List<String> records) throws DataAccessException {
+        StringBuilder lines = new StringBuilder();
+        for (String record : records) {
+            lines.append(record).append(System.lineSeparator());
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+        int bytes = buffer.remaining();
+        try (FileChannel channel = FileChannel.open(journalPath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException ex) {
+            throw new DataAccessException("Could not append to journal: " + journalPath, ex);
+        }
+        recordCount += records.size();
+        return bytes;
+    }
+
+    /**
+     * The size of the journal files the last {@link #readRecords()} read.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * The number of records in the live journal.
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    public boolean isCompacting() {
+        return Files.exists(compactingPath);
+    }
+
+    /**
+     * Moves the live journal aside so new records start a fresh journal.
+     * The rotated records stay on disk until {@link #finishCompaction()} is called,
+     * so a crash before the new snapshot is written loses nothing.
+     */
+    public void beginCompaction() throws DataAccessException {
+        if (isCompacting() || !Files.exists(journalPath)) {
+            return;
+        }
+        try {
+            Files.move(journalPath, compactingPath);
+        } catch (IOException ex) {
+            throw new DataAccessException("Could not rotate journal: " + journalPath, ex);
+        }
+        recordCount = 0;
+    }
+
+    /**
+     * Where a compaction puts the new snapshot, complete and synced, before it calls
+     * {@link #finishCompaction()}.
+     */
+    public Path getCompactedPath() {
+        return compactedPath;
+    }
+
+    /**
+     * Discards the rotated journal, then renames the new snapshot over the old one.
+     * Only call this once a snapshot that includes every rotated record is safely at
+     * {@link #getCompactedPath()}.
+     */
+    public void finishCompaction() throws DataAccessException {
+        try {
+            Files.deleteIfExists(compactingPath);
+        } catch (IOException ex) {
+            throw new DataAccessException("Could not delete compacted journal: " + compactingPath, ex);
+        }
+        installCompacted();
+    }
+
+    /**
+     * Finishes or rolls back a compaction that was interrupted between writing the new
+     * snapshot and installing it. Call before reading the snapshot.
+     */
+    public void recoverCompaction() throws DataAccessException {
+        if (!Files.exists(compactedPath)) {
+            return;
+        }
+        if (!isCompacting()) {
+            // The rotated journal was discarded, so the new snapshot is the only copy of it.
+            installCompacted();
+            return;
+        }
+        try {
+            // Not committed: the old snapshot plus the rotated journal are still the state.
+            Files.delete(compactedPath);
+        } catch (IOException ex) {
+            throw new DataAccessException("Could not delete uncommitted snapshot: " + compactedPath, ex);
+        }
+    }
+
+    /**
+     * Discards every record, live or rotated. Only call this once every record is
+     * reflected in the files the journal sits next to.
+     */
+    public void clear() throws DataAccessException {
+        try {
+            Files.deleteIfExists(compactingPath);
+            Files.deleteIfExists(journalPath);
+        } catch (IOException ex) {
+            throw new DataAccessException("Could not delete journal: " + journalPath, ex);
+        }
+        recordCount = 0;
+    }
+
+    private void installCompacted() throws DataAccessException {
+        try {
+            Files.move(compactedPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            throw new DataAccessException("Could not install compacted snapshot: " + snapshotPath, ex);
+        }
+    }
+
+    private void readRecords(Path path, List<String> result) throws DataAccessException {
+        try {
+            byte[] bytes = Files.readAllBytes(path);
+            bytesRead += bytes.length;
+            String contents = new String(bytes, StandardCharsets.UTF_8);
+            // A record only counts once its line ending is on disk. Anything after the
+            // last line ending is a torn append from a crash and is ignored.
+            int end = contents.lastIndexOf('\n');
+            for (String line : contents.substring(0, end + 1).split("\\R")) {
+                if (!line.isBlank()) {
+                    result.add(line);
+                }
+            }
+        } catch (NoSuchFileException ex) {
+            // No journal just means no mutations since the last snapshot.
+        } catch (IOException ex) {
+            throw new DataAccessException("Could not read journal: " + path, ex);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package learn.solarfarm.data;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import learn.solarfarm.models.SolarPanel;
+import learn.solarfarm.models.SolarPanelKey;
+import org.springframework.util.ClassUtils;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Times every call to another repository.
+ *
+ * Each method has a `solarfarm.repository` timer tagged with the method, the delegate's
+ * implementation, and the outcome (success or error, where error is a thrown exception).
+ * Timers are created up front, so a call only reads the clock twice and records once;
+ * there are no lookups or tag allocations per call.
+ *
+ * findByKey is the hot read path, and is often answered from memory in less time than
+ * reading the clock twice and recording takes. Only a sample of those calls is timed
+ * (one in `sampleEvery`, rounded up to a power of two), so its timer's count is the
+ * number of samples. Every call is counted by `solarfarm.repository.calls`.
+ *
+ * Percentile histograms are turned on with
+ * `management.metrics.distribution.percentiles-histogram.solarfarm.repository=true`.
+ */
+public class SolarPanelMeteredRepository implements SolarPanelRepository {
+    public static final String TIMER_NAME = "solarfarm.repository";
+    public static final String CALLS_NAME = "solarfarm.repository.calls";
+    public static final int DEFAULT_SAMPLE_EVERY = 64;
+
+    private final SolarPanelRepository delegate;
+
+    private final Timers findBySection;
+    private final Timers findBySectionPage;
+    private final Timers streamBySection;
+    private final SampledTimers findByKey;
+    private final Timers findById;
+    private final Timers findAllKeys;
+    private final Timers findByKeys;
+    private final Timers create;
+    private final Timers createAll;
+    private final Timers update;
+    private final Timers deleteByKey;
+
+    public SolarPanelMeteredRepository(SolarPanelRepository delegate, MeterRegistry registry) {
+        this(delegate, registry, DEFAULT_SAMPLE_EVERY);
+    }
+
+    public SolarPanelMeteredRepository(SolarPanelRepository delegate, MeterRegistry registry, int sampleEvery) {
+        this.delegate = delegate;
+        String implementation = ClassUtils.getUserClass(delegate).getSimpleName();
+        findBySection = new Timers(registry, implementation, "findBySection");
+        findBySectionPage = new Timers(registry, implementation, "findBySectionPage");
+        streamBySection = new Timers(registry, implementation, "streamBySection");
+        findByKey = new SampledTimers(registry, implementation, "findByKey", sampleEvery);
+        findById = new Timers(registry, implementation, "findById");
+        findAllKeys = new Timers(registry, implementation, "findAllKeys");
+        findByKeys = new Timers(registry, implementation, "findByKeys");
+        create = new Timers(registry, implementation, "create");
+        createAll = new Timers(registry, implementation, "createAll");
+        update = new Timers(registry, implementation, "update");
+        deleteByKey = new Timers(registry, implementation, "deleteByKey");
+    }
+
+    public SolarPanelRepository getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public List<SolarPanel> findBySection(String section) throws DataAccessException {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            List<SolarPanel> result = delegate.findBySection(section);
+            success = true;
+            return result;
+        } finally {
+            findBySection.record(start, success);
+        }
+    }
+
+    @Override
+    public List<SolarPanel> findBySection(String section, int afterRow, int afterColumn, int limit) throws DataAccessException {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            List<SolarPanel> result = delegate.findBySection(section, afterRow, afterColumn, limit);
+            success = true;
+            return result;
+        } finally {
+            findBySectionPage.record(start, success);
+        }
+    }
+
+    @Override
+    public void streamBySection(String section, Consumer<SolarPanel> consumer) throws DataAccessException {
+        // Includes the time the consumer takes, e.g. writing the response.
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            delegate.streamBySection(section, consumer);
+            success = true;
+        } finally {
+            streamBySection.record(start, success);
+        }
+    }
+
+    @Override
+    public SolarPanel findByKey(SolarPanelKey key) throws DataAccessException {
+        boolean sampled = findByKey.sample();
+        long start = sampled ? System.nanoTime() : 0;
+        boolean success = false;
+        try {
+            SolarPanel result = delegate.findByKey(key);
+            success = true;
+            return result;
+        } finally {
+            if (sampled) {
+                findByKey.record(start, success);
+            }
+            findByKey.count(success);
+        }
+    }
+
+    @Override
+    public SolarPanel findById(int id) throws DataAccessException {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            SolarPanel result = delegate.findById(id);
+            success = true;
+            return result;
+        } finally {
+            findById.record(start, success);
+        }
+    }
+
+    @Override
+    public Map<Integer, SolarPanelKey> findAllKeys() throws DataAccessException {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            Map<Integer, SolarPanelKey> result = delegate.findAllKeys();
+            success = true;
+            return result;
+        } finally {
+            findAllKeys.record(start, success);
+        }
+    }
+
+    @Override
+    public List<SolarPanel> findByKeys(Collection<SolarPanelKey> keys) throws DataAccessException {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            List<SolarPanel> result = delegate.findByKeys(keys);
+            success = true;
+            return result;
+        } finally {
+            findByKeys.record(start, success);
+        }
+    }
+
+    @Override
+    public SolarPanel create(SolarPanel solarPanel) throws DataAccessException {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            SolarPanel result = delegate.create(solarPanel);
+            success = true;
+            return result;
+        } finally {
+            create.record(start, success);
+        }
+    }
+
+    @Override
+    public List<SolarPanel> createAll(List<SolarPanel> solarPanels) throws DataAccessException {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            List<SolarPanel> result = delegate.createAll(solarPanels);
+            success = true;
+            return result;
+        } finally {
+            createAll.record(start, success);
+        }
+    }
+
+    @Override
+    public boolean update(SolarPanel solarPanel) throws DataAccessException {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            boolean result = delegate.update(solarPanel);
+            success = true;
+            return result;
+        } finally {
+            update.record(start, success);
+        }
+    }
+
+    @Override
+    public boolean deleteByKey(SolarPanelKey key) throws DataAccessException {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            boolean result = delegate.deleteByKey(key);
+            success = true;
+            return result;
+        } finally {
+            deleteByKey.record(start, success);
+        }
+    }
+
+    private static class Timers {
+        private final Timer success;
+        private final Timer error;
+
+        private Timers(MeterRegistry registry, String implementation, String method) {
+            success = timer(registry, implementation, method, "success");
+            error = timer(registry, implementation, method, "error");
+        }
+
+        private static Timer timer(MeterRegistry registry, String implementation, String method, String outcome) {
+            return Timer.builder(TIMER_NAME)
+                    .description("Solar panel repository calls")
+                    .tag("repository", implementation)
+                    .tag("method", method)
+                    .tag("outcome", outcome)
+                    .register(registry);
+        }
+
+        void record(long start, boolean succeeded) {
+            (succeeded ? success : error).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static class SampledTimers extends Timers {
+        private final int mask;
+        private final LongAdder successCalls = new LongAdder();
+        private final LongAdder errorCalls = new LongAdder();
+
+        private SampledTimers(MeterRegistry registry, String implementation, String method, int sampleEvery) {
+            super(registry, implementation, method);
+            mask = sampleEvery <= 1 ? 0 : Integer.highestOneBit(sampleEvery - 1) * 2 - 1;
+            calls(registry, implementation, method, "success", successCalls);
+            calls(registry, implementation, method, "error", errorCalls);
+        }
+
+        private static void calls(MeterRegistry registry, String implementation, String method,
+                                  String outcome, LongAdder calls) {
+            FunctionCounter.builder(CALLS_NAME, calls, LongAdder::sum)
+                    .description("Solar panel repository calls, including those that weren't timed")
+                    .tag("repository", implementation)
+                    .tag("method", method)
+                    .tag("outcome", outcome)
+                    .register(registry);
+        }
+
+        boolean sample() {
+            return (ThreadLocalRandom.current().nextInt() & mask) == 0;
+        }
+
+        void count(boolean succeeded) {
+            (succeeded ? successCalls : errorCalls).increment();
+        }
+    }
+}
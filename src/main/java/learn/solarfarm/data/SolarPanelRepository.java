@@ -3,15 +3,57 @@ package learn.solarfarm.data;
 import learn.solarfarm.models.SolarPanel;
 import learn.solarfarm.models.SolarPanelKey;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public interface SolarPanelRepository {
     List<SolarPanel> findBySection(String section) throws DataAccessException;
 
+    /**
+     * Finds one page of a section, ordered by row then column.
+     * The page starts after the given row and column; pass 0 and 0 for the first page.
+     */
+    List<SolarPanel> findBySection(String section, int afterRow, int afterColumn, int limit) throws DataAccessException;
+
+    /**
+     * Hands every solar panel in a section to the consumer, ordered by row then column,
+     * as they're read instead of collecting the section first.
+     */
+    void streamBySection(String section, Consumer<SolarPanel> consumer) throws DataAccessException;
+
     SolarPanel findByKey(SolarPanelKey key) throws DataAccessException;
 
+    /**
+     * @return The solar panel with the id, or null if there's none.
+     */
+    SolarPanel findById(int id) throws DataAccessException;
+
+    /**
+     * The natural key of every solar panel, by id.
+     */
+    Map<Integer, SolarPanelKey> findAllKeys() throws DataAccessException;
+
+    /**
+     * Finds the solar panels with any of the keys, in one lookup.
+     */
+    List<SolarPanel> findByKeys(Collection<SolarPanelKey> keys) throws DataAccessException;
+
+    /**
+     * @throws DuplicateSolarPanelKeyException If another solar panel has the same natural key.
+     */
     SolarPanel create(SolarPanel solarPanel) throws DataAccessException;
 
+    /**
+     * Creates every solar panel or none of them, setting each generated id.
+     * @throws DuplicateSolarPanelKeyException If any natural key is already taken or repeated.
+     */
+    List<SolarPanel> createAll(List<SolarPanel> solarPanels) throws DataAccessException;
+
+    /**
+     * @throws DuplicateSolarPanelKeyException If another solar panel has the new natural key.
+     */
     boolean update(SolarPanel solarPanel) throws DataAccessException;
 
     boolean deleteByKey(SolarPanelKey key) throws DataAccessException;
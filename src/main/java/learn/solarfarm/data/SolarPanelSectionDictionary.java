@@ -0,0 +1,107 @@
+package learn.solarfarm.data;
+
+import learn.solarfarm.models.SectionRegistry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * The section names of a farm, kept next to its data file, one name per line in the order
+ * the farm first used them.
+ *
+ * Loading the dictionary registers its names with the {@link SectionRegistry} before any
+ * solar panel is read, so a section's id and canonical spelling come from the dictionary
+ * rather than from whichever panel happens to be read first. Names are only ever appended;
+ * a section keeps its entry after its last panel is deleted, the same way the registry
+ * never reuses an id.
+ *
+ * Files used (for a farm at `farm.txt`):
+ *   farm.txt.sections
+ */
+public class SolarPanelSectionDictionary {
+    private final Path path;
+    // Registry ids of the names in the file. Guarded by the owning repository's lock.
+    private final HashSet<Integer> known = new HashSet<>();
+
+    public SolarPanelSectionDictionary(String dataPath) {
+        this.path = Paths.get(dataPath + ".sections");
+    }
+
+    /**
+     * Reads the dictionary and registers every name in it, in file order.
+     * A missing file is an empty dictionary.
+     */
+    public List<String> load() throws DataAccessException {
+        ArrayList<String> result = new ArrayList<>();
+        known.clear();
+        try {
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) {
+                    String section = SectionRegistry.getDefault().intern(line);
+                    if (known.add(SectionRegistry.getDefault().find(section))) {
+                        result.add(section);
+                    }
+                }
+            }
+        } catch (NoSuchFileException ex) {
+            // No dictionary yet, it's written with the farm's first section.
+        } catch (IOException ex) {
+            throw new DataAccessException("Could not read section dictionary: " + path, ex);
+        }
+        return result;
+    }
+
+    /**
+     * Appends the sections the dictionary doesn't have yet with a single write, synced
+     * to disk before returning. Does nothing, and touches no file, when every section
+     * is already known.
+     */
+    public void addAll(Collection<String> sections) throws DataAccessException {
+        StringBuilder lines = new StringBuilder();
+        ArrayList<Integer> added = new ArrayList<>();
+        for (String section : sections) {
+            int id = SectionRegistry.getDefault().register(section);
+            if (!known.contains(id) && !added.contains(id)) {
+                added.add(id);
+                lines.append(clean(section)).append(System.lineSeparator());
+            }
+        }
+        if (added.isEmpty()) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+        try {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            try (FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+        } catch (IOException ex) {
+            throw new DataAccessException("Could not append to section dictionary: " + path, ex);
+        }
+        known.addAll(added);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    private String clean(String section) {
+        // A line break in a name would split it into two entries.
+        return section.replace("\r", "").replace("\n", "");
+    }
+}
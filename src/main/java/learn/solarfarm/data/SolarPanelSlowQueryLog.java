@@ -0,0 +1,130 @@
+package learn.solarfarm.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Logs statements that take longer than a threshold, with their parameters, duration,
+ * and row count, and optionally the database's `EXPLAIN` plan for them.
+ *
+ * Checking a statement against the threshold is a subtraction on the caller's thread.
+ * Everything else, formatting, logging, and running `EXPLAIN` on a pooled connection,
+ * happens on a single background thread, so a slow query never makes its caller slower
+ * still. When the background thread falls behind, entries past the queue are dropped
+ * and counted rather than blocking callers.
+ *
+ * A statement is explained at most once a minute, however often it's slow.
+ */
+public class SolarPanelSlowQueryLog {
+    private static final Logger logger = LoggerFactory.getLogger(SolarPanelSlowQueryLog.class);
+    private static final int QUEUE_SIZE = 1000;
+    private static final long EXPLAIN_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final JdbcTemplate template;
+    private final long thresholdNanos;
+    private final boolean explain;
+    private final Consumer<String> sink;
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentHashMap<String, Long> lastExplained = new ConcurrentHashMap<>();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param thresholdMillis Statements that take at least this long are logged.
+     *                        A negative threshold turns the log off.
+     * @param explain When true, the `EXPLAIN` plan of a slow statement is logged too.
+     */
+    public SolarPanelSlowQueryLog(JdbcTemplate template, long thresholdMillis, boolean explain) {
+        this(template, thresholdMillis, explain, logger::warn);
+    }
+
+    SolarPanelSlowQueryLog(JdbcTemplate template, long thresholdMillis, boolean explain, Consumer<String> sink) {
+        this.template = template;
+        this.thresholdNanos = thresholdMillis < 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.explain = explain;
+        this.sink = sink;
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_SIZE),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "solar-panel-slow-query-log");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (runnable, pool) -> dropped.incrementAndGet());
+    }
+
+    /**
+     * Logs the statement if it took at least the threshold.
+     * @param sql The statement as it was run.
+     * @param start When the statement started, from {@link System#nanoTime()}.
+     * @param rowCount The rows the statement read or changed.
+     * @param params The statement's parameters, or null for a batch.
+     */
+    public void record(String sql, long start, int rowCount, Object... params) {
+        long elapsed = System.nanoTime() - start;
+        if (elapsed >= thresholdNanos) {
+            executor.execute(() -> log(sql, elapsed, rowCount, params));
+        }
+    }
+
+    /**
+     * The slow statements that weren't logged because the log had fallen behind.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private void log(String sql, long elapsed, int rowCount, Object[] params) {
+        StringBuilder entry = new StringBuilder();
+        entry.append(String.format("Slow query (%.3f ms, %s rows): %s",
+                elapsed / 1_000_000.0, rowCount, sql));
+        entry.append(" parameters: ").append(params == null ? "batch" : Arrays.toString(params));
+        long skipped = dropped.getAndSet(0);
+        if (skipped > 0) {
+            entry.append(String.format(" (%s earlier slow queries were dropped)", skipped));
+        }
+        if (explain && params != null && shouldExplain(sql)) {
+            entry.append(System.lineSeparator()).append(explain(sql, params));
+        }
+        sink.accept(entry.toString());
+    }
+
+    private boolean shouldExplain(String sql) {
+        long now = System.nanoTime();
+        Long last = lastExplained.get(sql);
+        if (last != null && now - last < EXPLAIN_INTERVAL_NANOS) {
+            return false;
+        }
+        lastExplained.put(sql, now);
+        return true;
+    }
+
+    private String explain(String sql, Object[] params) {
+        String statement = sql.trim();
+        if (statement.endsWith(";")) {
+            statement = statement.substring(0, statement.length() - 1);
+        }
+        try {
+            StringBuilder plan = new StringBuilder("EXPLAIN:");
+            List<Map<String, Object>> rows = template.queryForList("explain " + statement, params);
+            for (Map<String, Object> row : rows) {
+                plan.append(System.lineSeparator()).append("  ").append(row.size() == 1
+                        ? row.values().iterator().next()
+                        : row);
+            }
+            return plan.toString();
+        } catch (RuntimeException ex) {
+            return "EXPLAIN failed: " + ex.getMessage();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package learn.solarfarm.data;
+
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SectionRegistry;
+import learn.solarfarm.models.SolarPanel;
+
+/**
+ * Decodes and encodes single `~` delimited solar panel lines without the intermediate
+ * objects a String.split based parser needs. Lines are parsed in place from a char range,
+ * numbers are accumulated digit by digit, materials are matched against the enum names
+ * without creating a String, and a section name is only allocated when it differs from
+ * the previous line's section (lines are usually grouped by section). Section names are
+ * interned with the {@link SectionRegistry}, so ungrouped lines still share one String.
+ *
+ * A codec remembers the last section it decoded and reuses its field bounds, so an
+ * instance mustn't be shared between threads.
+ */
+public class SolarPanelTextCodec {
+    public static final char DELIMITER = '~';
+    public static final int FIELD_COUNT = 7;
+
+    private static final Material[] MATERIALS = Material.values();
+    private static final char[][] MATERIAL_NAMES = new char[MATERIALS.length][];
+    private static final char[] TRUE = "true".toCharArray();
+    private static final char[] FALSE = "false".toCharArray();
+
+    static {
+        for (int i = 0; i < MATERIALS.length; i++) {
+            MATERIAL_NAMES[i] = MATERIALS[i].name().toCharArray();
+        }
+    }
+
+    // Where each field starts, and one past the end of the last field. Reused by every line.
+    private final int[] bounds = new int[FIELD_COUNT + 1];
+    private String lastSection;
+
+    /**
+     * Decodes one line.
+     * @param chars The buffer holding the line.
+     * @param start The index of the line's first char.
+     * @param end The index after the line's last char, excluding the line terminator.
+     * @param lineNumber The line's number, used to report a malformed line.
+     * @param source Where the line came from, used to report a malformed line.
+     * @throws DataAccessException If the line isn't a well-formed solar panel.
+     */
+    public SolarPanel decode(char[] chars, int start, int end, long lineNumber, String source) throws DataAccessException {
+        int[] bounds = this.bounds;
+        int field = 0;
+        bounds[0] = start;
+        for (int i = start; i < end; i++) {
+            if (chars[i] == DELIMITER) {
+                if (++field == FIELD_COUNT) {
+                    throw malformed(lineNumber, source, "more than " + FIELD_COUNT + " fields");
+                }
+                bounds[field] = i + 1;
+            }
+        }
+        if (field != FIELD_COUNT - 1) {
+            throw malformed(lineNumber, source, "expected " + FIELD_COUNT + " fields but found " + (field + 1));
+        }
+        bounds[FIELD_COUNT] = end + 1;
+
+        return new SolarPanel(
+                parseInt(chars, bounds[0], bounds[1] - 1, "id", lineNumber, source),
+                section(chars, bounds[1], bounds[2] - 1),
+                parseInt(chars, bounds[2], bounds[3] - 1, "row", lineNumber, source),
+                parseInt(chars, bounds[3], bounds[4] - 1, "column", lineNumber, source),
+                parseInt(chars, bounds[4], bounds[5] - 1, "yearInstalled", lineNumber, source),
+                material(chars, bounds[5], bounds[6] - 1, lineNumber, source),
+                tracking(chars, bounds[6], bounds[7] - 1, lineNumber, source)
+        );
+    }
+
+    /**
+     * Appends a solar panel as one line, without a line terminator.
+     */
+    public void encode(SolarPanel solarPanel, StringBuilder out) {
+        out.append(solarPanel.getId()).append(DELIMITER);
+        appendClean(solarPanel.getSection(), out);
+        out.append(DELIMITER);
+        out.append(solarPanel.getRow()).append(DELIMITER);
+        out.append(solarPanel.getColumn()).append(DELIMITER);
+        out.append(solarPanel.getYearInstalled()).append(DELIMITER);
+        out.append(solarPanel.getMaterial().name()).append(DELIMITER);
+        out.append(solarPanel.isTracking());
+    }
+
+    private String section(char[] chars, int start, int end) {
+        String previous = lastSection;
+        if (previous != null && previous.length() == end - start) {
+            boolean same = true;
+            for (int i = 0; i < previous.length() && same; i++) {
+                same = previous.charAt(i) == chars[start + i];
+            }
+            if (same) {
+                return previous;
+            }
+        }
+        lastSection = SectionRegistry.getDefault().intern(new String(chars, start, end - start));
+        return lastSection;
+    }
+
+    private int parseInt(char[] chars, int start, int end, String field,
+                         long lineNumber, String source) throws DataAccessException {
+        boolean negative = start < end && chars[start] == '-';
+        int i = negative ? start + 1 : start;
+        if (i == end) {
+            throw malformed(lineNumber, source, "`" + field + "` is empty");
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = chars[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw malformed(lineNumber, source, "`" + field + "` is not a number");
+            }
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE + 1L) {
+                throw malformed(lineNumber, source, "`" + field + "` is out of range");
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw malformed(lineNumber, source, "`" + field + "` is out of range");
+        }
+        return (int) value;
+    }
+
+    private Material material(char[] chars, int start, int end,
+                              long lineNumber, String source) throws DataAccessException {
+        for (int m = 0; m < MATERIAL_NAMES.length; m++) {
+            if (matches(chars, start, end, MATERIAL_NAMES[m])) {
+                return MATERIALS[m];
+            }
+        }
+        throw malformed(lineNumber, source, "unknown `material`");
+    }
+
+    private boolean tracking(char[] chars, int start, int end,
+                             long lineNumber, String source) throws DataAccessException {
+        if (matches(chars, start, end, TRUE)) {
+            return true;
+        }
+        if (matches(chars, start, end, FALSE)) {
+            return false;
+        }
+        throw malformed(lineNumber, source, "`isTracking` must be true or false");
+    }
+
+    private boolean matches(char[] chars, int start, int end, char[] expected) {
+        if (end - start != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (chars[start + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void appendClean(String field, StringBuilder out) {
+        // If the file delimiter, a carriage return, or a newline was written to the file,
+        // it would ruin our ability to read the solar panel.
+        // Here, we insure those characters don't end up in the file.
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c != DELIMITER && c != '\r' && c != '\n') {
+                out.append(c);
+            }
+        }
+    }
+
+    private DataAccessException malformed(long lineNumber, String source, String reason) {
+        return new DataAccessException(String.format("Malformed solar panel on line %s of %s: %s.",
+                lineNumber, source, reason));
+    }
+}
@@ -0,0 +1,157 @@
+package learn.solarfarm.data;
+
+import learn.solarfarm.models.SolarPanel;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The original `~` delimited format, one solar panel per line:
+ *   id~section~row~column~yearInstalled~MATERIAL~isTracking
+ *
+ * Files are streamed through one reused char buffer and each line is decoded in place
+ * by a {@link SolarPanelTextCodec}. Blank lines are skipped; any other line that isn't
+ * a solar panel fails the read with its line number.
+ */
+public class SolarPanelTextFormat implements SolarPanelFileFormat {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Override
+    public List<SolarPanel> read(Path path) throws DataAccessException {
+        ArrayList<SolarPanel> result = new ArrayList<>();
+        try (Reader reader = new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8)) {
+            read(reader, path.toString(), result);
+        } catch (NoSuchFileException ex) {
+            // If the file doesn't exist, no big deal.
+            // We'll create it when we add a new solar panel.
+            // No file just means no solar panels yet.
+        } catch (IOException ex) {
+            throw new DataAccessException("Could not open the file path: " + path, ex);
+        }
+        return result;
+    }
+
+    @Override
+    public void write(Path path, Collection<SolarPanel> solarPanels) throws DataAccessException {
+        try (Writer writer = new OutputStreamWriter(Files.newOutputStream(path), StandardCharsets.UTF_8)) {
+            write(writer, solarPanels);
+        } catch (IOException ex) {
+            throw new DataAccessException("Could not write to file path: " + path, ex);
+        }
+    }
+
+    /**
+     * Decodes every line from a reader.
+     * @param source Names the input in the message of a malformed line.
+     */
+    public void read(Reader reader, String source, List<SolarPanel> result) throws IOException, DataAccessException {
+        SolarPanelTextCodec codec = new SolarPanelTextCodec();
+        char[] buffer = new char[BUFFER_SIZE];
+        int start = 0;
+        int limit = 0;
+        int scanned = 0;
+        long lineNumber = 0;
+        boolean eof = false;
+
+        while (true) {
+            int newline = -1;
+            for (int i = scanned; i < limit; i++) {
+                if (buffer[i] == '\n') {
+                    newline = i;
+                    break;
+                }
+            }
+
+            if (newline < 0) {
+                if (eof) {
+                    if (start < limit) {
+                        // The last line has no line ending.
+                        decodeLine(codec, buffer, start, limit, ++lineNumber, source, result);
+                    }
+                    return;
+                }
+                // Keep the partial line, then refill the rest of the buffer.
+                // A line longer than the buffer grows it.
+                int partial = limit - start;
+                if (start > 0) {
+                    System.arraycopy(buffer, start, buffer, 0, partial);
+                } else if (partial == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                start = 0;
+                scanned = partial;
+                limit = partial;
+                int read = reader.read(buffer, limit, buffer.length - limit);
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    limit += read;
+                }
+                continue;
+            }
+
+            decodeLine(codec, buffer, start, newline, ++lineNumber, source, result);
+            start = newline + 1;
+            scanned = start;
+        }
+    }
+
+    /**
+     * Encodes every solar panel, one per line, buffering through a reused StringBuilder.
+     */
+    public void write(Writer writer, Collection<SolarPanel> solarPanels) throws IOException {
+        SolarPanelTextCodec codec = new SolarPanelTextCodec();
+        String lineSeparator = System.lineSeparator();
+        StringBuilder buffer = new StringBuilder(BUFFER_SIZE + 256);
+        for (SolarPanel solarPanel : solarPanels) {
+            codec.encode(solarPanel, buffer);
+            buffer.append(lineSeparator);
+            if (buffer.length() >= BUFFER_SIZE) {
+                writer.append(buffer);
+                buffer.setLength(0);
+            }
+        }
+        writer.append(buffer);
+    }
+
+    public SolarPanel lineToSolarPanel(String line) throws DataAccessException {
+        return new SolarPanelTextCodec().decode(line.toCharArray(), 0, line.length(), 1, "line");
+    }
+
+    public String solarPanelToLine(SolarPanel solarPanel) {
+        StringBuilder buffer = new StringBuilder(100);
+        new SolarPanelTextCodec().encode(solarPanel, buffer);
+        return buffer.toString();
+    }
+
+    private void decodeLine(SolarPanelTextCodec codec, char[] buffer, int start, int end, long lineNumber,
+                            String source, List<SolarPanel> result) throws DataAccessException {
+        if (end > start && buffer[end - 1] == '\r') {
+            end--;
+        }
+        if (isBlank(buffer, start, end)) {
+            return;
+        }
+        result.add(codec.decode(buffer, start, end, lineNumber, source));
+    }
+
+    private boolean isBlank(char[] buffer, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!Character.isWhitespace(buffer[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
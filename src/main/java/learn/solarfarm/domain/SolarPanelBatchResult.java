@@ -0,0 +1,52 @@
+package learn.solarfarm.domain;
+
+import learn.solarfarm.models.SolarPanel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The outcome of creating a batch of solar panels. A batch is all or nothing:
+ * either every solar panel was created, or none were and the errors say why.
+ * Errors about one solar panel are keyed by its position in the batch.
+ */
+public class SolarPanelBatchResult {
+    private final ArrayList<String> messages = new ArrayList<>();
+    private final TreeMap<Integer, List<String>> itemMessages = new TreeMap<>();
+    private List<SolarPanel> solarPanels = new ArrayList<>();
+
+    public List<String> getErrorMessages() {
+        return new ArrayList<>(messages);
+    }
+
+    public void addErrorMessage(String message) {
+        messages.add(message);
+    }
+
+    public Map<Integer, List<String>> getItemErrorMessages() {
+        return new TreeMap<>(itemMessages);
+    }
+
+    public void addItemErrorMessage(int index, String message) {
+        itemMessages.computeIfAbsent(index, i -> new ArrayList<>()).add(message);
+    }
+
+    public void addItemErrorMessage(int index, String format, Object... args) {
+        addItemErrorMessage(index, String.format(format, args));
+    }
+
+    public boolean isSuccess() {
+        // If an error message exists, the operation failed.
+        return messages.isEmpty() && itemMessages.isEmpty();
+    }
+
+    public List<SolarPanel> getSolarPanels() {
+        return new ArrayList<>(solarPanels);
+    }
+
+    public void setSolarPanels(List<SolarPanel> solarPanels) {
+        this.solarPanels = solarPanels;
+    }
+}
@@ -0,0 +1,60 @@
+package learn.solarfarm.domain;
+
+import learn.solarfarm.models.SolarPanel;
+import learn.solarfarm.models.SolarPanelKey;
+
+/**
+ * One write to a solar panel, as kept by {@link SolarPanelChangeLog}.
+ *
+ * A CREATE or UPDATE has the panel as it was written; a DELETE has only the key it was
+ * deleted from. A client applies changes in sequence order, putting created and updated
+ * panels by key and removing deleted keys. A panel that moves is a DELETE of its old key
+ * followed by an UPDATE.
+ */
+public class SolarPanelChange {
+    public enum Type {
+        CREATE,
+        UPDATE,
+        DELETE
+    }
+
+    private final long sequence;
+    private final Type type;
+    private final SolarPanelKey key;
+    private final SolarPanel solarPanel;
+    private final int sectionId;
+
+    SolarPanelChange(long sequence, Type type, SolarPanelKey key, SolarPanel solarPanel, int sectionId) {
+        this.sequence = sequence;
+        this.type = type;
+        this.key = key;
+        this.solarPanel = solarPanel;
+        this.sectionId = sectionId;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public SolarPanelKey getKey() {
+        return key;
+    }
+
+    /**
+     * The panel as it was written, or null for a DELETE.
+     */
+    public SolarPanel getSolarPanel() {
+        return solarPanel;
+    }
+
+    /**
+     * The {@link learn.solarfarm.models.SectionRegistry} id of the key's section.
+     */
+    public int sectionId() {
+        return sectionId;
+    }
+}
@@ -0,0 +1,95 @@
+package learn.solarfarm.domain;
+
+import learn.solarfarm.models.SectionRegistry;
+import learn.solarfarm.models.SolarPanel;
+import learn.solarfarm.models.SolarPanelKey;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * The most recent writes to solar panels, for clients that sync a section by asking for
+ * what changed instead of reading it all again.
+ *
+ * Changes are kept in a ring of a fixed size, so the log holds the last `capacity`
+ * changes across all sections, and memory doesn't grow with the write rate. Every change
+ * has a sequence number one more than the last. Finding the changes after a sequence is
+ * a jump to its slot in the ring, so a request reads only the changes made since then.
+ *
+ * Sequences start from the clock in microseconds when the log is created, so a sequence
+ * from before a restart is older than anything in the new log and the client resyncs.
+ *
+ * Only writes through {@link SolarPanelService} are logged.
+ *
+ * Listeners are called with each change as it's added, in sequence order, while the
+ * log is locked, so they must only hand the change off.
+ */
+public class SolarPanelChangeLog {
+    public static final int DEFAULT_CAPACITY = 10_000;
+
+    private final SolarPanelChange[] changes;
+    private final long start;
+    private long last;
+    private final CopyOnWriteArrayList<Consumer<SolarPanelChange>> listeners = new CopyOnWriteArrayList<>();
+
+    public SolarPanelChangeLog(int capacity) {
+        changes = new SolarPanelChange[Math.max(1, capacity)];
+        start = System.currentTimeMillis() * 1000;
+        last = start;
+    }
+
+    /**
+     * The sequence of the latest change.
+     */
+    public synchronized long getSequence() {
+        return last;
+    }
+
+    public synchronized void add(SolarPanelChange.Type type, SolarPanelKey key, SolarPanel solarPanel) {
+        last++;
+        SolarPanelChange change = new SolarPanelChange(last, type, key,
+                solarPanel == null ? null : new SolarPanel(solarPanel),
+                SectionRegistry.getDefault().register(key.getSection()));
+        changes[slot(last)] = change;
+        for (Consumer<SolarPanelChange> listener : listeners) {
+            listener.accept(change);
+        }
+    }
+
+    public void addListener(Consumer<SolarPanelChange> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<SolarPanelChange> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Up to `limit` changes to the section after the sequence, oldest first.
+     */
+    public synchronized SolarPanelChanges since(String section, long sequence, int limit) {
+        long oldest = Math.max(start + 1, last - changes.length + 1);
+        if (sequence < oldest - 1 || sequence > last) {
+            return new SolarPanelChanges(last, true, false, List.of());
+        }
+
+        int sectionId = SectionRegistry.getDefault().find(section);
+        ArrayList<SolarPanelChange> result = new ArrayList<>();
+        for (long next = sequence + 1; next <= last; next++) {
+            SolarPanelChange change = changes[slot(next)];
+            if (change.sectionId() == sectionId) {
+                result.add(change);
+                if (result.size() >= limit) {
+                    return new SolarPanelChanges(next, false, next < last, result);
+                }
+            }
+        }
+        return new SolarPanelChanges(last, false, false, result);
+    }
+
+    private int slot(long sequence) {
+        return (int) Math.floorMod(sequence, (long) changes.length);
+    }
+}
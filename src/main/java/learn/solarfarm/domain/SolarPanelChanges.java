@@ -0,0 +1,44 @@
+package learn.solarfarm.domain;
+
+import java.util.List;
+
+/**
+ * The changes to a section after a sequence number.
+ *
+ * `sequence` is where the next request should start from. When `more` is true, there
+ * were more changes than fit and the client should ask again straight away.
+ *
+ * When `resync` is true there are no changes: the requested sequence is older than the
+ * oldest change kept, or is from before the application restarted. The client has to
+ * read the whole section again, then continue from `sequence`. Changes from between
+ * `sequence` and reading the section are sent again, and applying them twice is harmless.
+ */
+public class SolarPanelChanges {
+    private final long sequence;
+    private final boolean resync;
+    private final boolean more;
+    private final List<SolarPanelChange> changes;
+
+    SolarPanelChanges(long sequence, boolean resync, boolean more, List<SolarPanelChange> changes) {
+        this.sequence = sequence;
+        this.resync = resync;
+        this.more = more;
+        this.changes = changes;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public boolean isResync() {
+        return resync;
+    }
+
+    public boolean isMore() {
+        return more;
+    }
+
+    public List<SolarPanelChange> getChanges() {
+        return changes;
+    }
+}
@@ -0,0 +1,117 @@
+package learn.solarfarm.domain;
+
+import learn.solarfarm.models.SectionRegistry;
+import learn.solarfarm.models.SolarPanelKey;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Which slots of each section hold a solar panel, one bit per row and column.
+ *
+ * Valid rows and columns are 1 to {@link SolarPanelService#MAX_ROW_COLUMN} - 1, so a
+ * section's grid is a fixed 62,001 bit bitmap, and every free slot it reports passes
+ * validation. Bitmaps are found by {@link SectionRegistry} id, so sections are compared
+ * case-insensitively, like the repositories compare them. The id of each panel's key is
+ * kept too, so an update can clear the slot the panel is leaving.
+ *
+ * Keys outside the grid aren't tracked; {@link #isTracked} is false for them and callers
+ * must ask the repository instead.
+ *
+ * The occupancy only sees the writes it's told about, so it's a hint: a set bit may be
+ * stale and a clear bit may miss a panel written elsewhere. Callers confirm a set bit with
+ * the repository before acting on it and never treat a clear bit as proof of absence.
+ */
+public class SolarPanelOccupancy {
+    // The same bound SolarPanelService validates rows and columns against.
+    private static final int SIZE = SolarPanelService.MAX_ROW_COLUMN - 1;
+    private static final int WORDS = (SIZE * SIZE + Long.SIZE - 1) / Long.SIZE;
+
+    private final HashMap<Integer, long[]> sections = new HashMap<>();
+    private final HashMap<Integer, SolarPanelKey> keysById = new HashMap<>();
+
+    public SolarPanelOccupancy(Map<Integer, SolarPanelKey> keysById) {
+        for (Map.Entry<Integer, SolarPanelKey> entry : keysById.entrySet()) {
+            add(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public static boolean isTracked(SolarPanelKey key) {
+        return key.getSection() != null
+                && key.getRow() >= 1 && key.getRow() <= SIZE
+                && key.getColumn() >= 1 && key.getColumn() <= SIZE;
+    }
+
+    public synchronized boolean isOccupied(SolarPanelKey key) {
+        if (!isTracked(key)) {
+            return false;
+        }
+        long[] bits = sections.get(SectionRegistry.getDefault().find(key.getSection()));
+        int slot = slot(key);
+        return bits != null && (bits[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    /**
+     * True if the key is occupied by a panel other than the one with this id.
+     */
+    public synchronized boolean isOccupiedByOther(int id, SolarPanelKey key) {
+        SolarPanelKey current = keysById.get(id);
+        if (current != null && current.equals(key)) {
+            return false;
+        }
+        return isOccupied(key);
+    }
+
+    public synchronized void add(int id, SolarPanelKey key) {
+        SolarPanelKey previous = keysById.put(id, key);
+        if (previous != null) {
+            clear(previous);
+        }
+        set(key);
+    }
+
+    /**
+     * Marks a key occupied without knowing which panel holds it.
+     */
+    public synchronized void set(SolarPanelKey key) {
+        if (isTracked(key)) {
+            int slot = slot(key);
+            sections.computeIfAbsent(SectionRegistry.getDefault().register(key.getSection()),
+                    s -> new long[WORDS])[slot >>> 6] |= 1L << slot;
+        }
+    }
+
+    public synchronized void clear(SolarPanelKey key) {
+        long[] bits = sections.get(SectionRegistry.getDefault().find(key.getSection()));
+        if (bits != null && isTracked(key)) {
+            int slot = slot(key);
+            bits[slot >>> 6] &= ~(1L << slot);
+        }
+    }
+
+    /**
+     * The first free slots of a section, in row then column order.
+     */
+    public synchronized List<SolarPanelKey> findFree(String section, int limit) {
+        ArrayList<SolarPanelKey> result = new ArrayList<>();
+        long[] bits = sections.get(SectionRegistry.getDefault().find(section));
+        for (int word = 0; word < WORDS && result.size() < limit; word++) {
+            long free = bits == null ? -1L : ~bits[word];
+            while (free != 0 && result.size() < limit) {
+                int slot = word * Long.SIZE + Long.numberOfTrailingZeros(free);
+                if (slot >= SIZE * SIZE) {
+                    break;
+                }
+                result.add(new SolarPanelKey(section, slot / SIZE + 1, slot % SIZE + 1));
+                free &= free - 1;
+            }
+        }
+        return result;
+    }
+
+    private int slot(SolarPanelKey key) {
+        return (key.getRow() - 1) * SIZE + (key.getColumn() - 1);
+    }
+}
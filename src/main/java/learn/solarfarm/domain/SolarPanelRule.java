@@ -0,0 +1,29 @@
+package learn.solarfarm.domain;
+
+/**
+ * The rules a solar panel is validated against, used to count failures by rule.
+ */
+public enum SolarPanelRule {
+    REQUIRED("required"),
+    SECTION("section"),
+    ROW("row"),
+    COLUMN("column"),
+    YEAR_INSTALLED("yearInstalled"),
+    MATERIAL("material"),
+    ID("id"),
+    UNIQUE("unique"),
+    UNIQUE_IN_BATCH("uniqueInBatch");
+
+    private final String tag;
+
+    SolarPanelRule(String tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * The rule's name as a metric tag value.
+     */
+    public String getTag() {
+        return tag;
+    }
+}
@@ -0,0 +1,43 @@
+package learn.solarfarm.domain;
+
+import learn.solarfarm.models.SectionRegistry;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A version number per section, increased by every write to it that goes through
+ * {@link SolarPanelService}. Sections are found by {@link SectionRegistry} id, so they're
+ * compared case-insensitively, like the repositories compare them. A section that was
+ * never written is at version 0.
+ *
+ * Versions start again at 0 when the process restarts, so {@link #getEpoch()} is a random
+ * number chosen at startup that tells one run's versions from another's.
+ *
+ * Only writes through this process's service are seen. A write made directly to the
+ * database, by another instance of the application, or by another process sharing the
+ * data file (`dataFileShared=true`) doesn't change the version. So the versions, and the
+ * ETags built from them, are only valid when a single instance owns the data; with more
+ * than one writer a client can be told a section hasn't changed when it has.
+ */
+public class SolarPanelSectionVersions {
+    private final long epoch = ThreadLocalRandom.current().nextLong() >>> 1;
+    private final ConcurrentHashMap<Integer, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public long get(String section) {
+        AtomicLong version = versions.get(SectionRegistry.getDefault().find(section));
+        return version == null ? 0 : version.get();
+    }
+
+    public void increment(String section) {
+        if (section != null) {
+            versions.computeIfAbsent(SectionRegistry.getDefault().register(section), id -> new AtomicLong())
+                    .incrementAndGet();
+        }
+    }
+}
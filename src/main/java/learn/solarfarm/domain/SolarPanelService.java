@@ -1,46 +1,292 @@
 package learn.solarfarm.domain;
 
 import learn.solarfarm.data.DataAccessException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import learn.solarfarm.data.DuplicateSolarPanelKeyException;
+import learn.solarfarm.data.SolarPanelMeteredRepository;
 import learn.solarfarm.data.SolarPanelRepository;
+import learn.solarfarm.models.SectionRegistry;
 import learn.solarfarm.models.SolarPanel;
 import learn.solarfarm.models.SolarPanelKey;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.Year;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 @Service
 public class SolarPanelService {
     public final static int MAX_ROW_COLUMN = 250;
+    public final static int MAX_PAGE_SIZE = 1000;
+
+    // Enough that writes to different sections rarely wait for each other.
+    private final static int SECTION_LOCKS = 64;
+
+    private final static String NOT_UNIQUE_MESSAGE = "SolarPanel `section`, `row`, and `column` must be unique.";
+
+    public final static String VALIDATION_FAILURES = "solarfarm.validation.failures";
 
     private final SolarPanelRepository repository;
+    private final EnumMap<SolarPanelRule, Counter> failures = new EnumMap<>(SolarPanelRule.class);
+
+    // Which slots are taken, loaded from the repository on first use and kept up to date
+    // by this service's writes. It's only a hint: writes from another instance, another
+    // process sharing the data file, or plain SQL don't show up here. A set bit is checked
+    // against the repository before a write is refused, and a clear bit proves nothing, so
+    // lookups and deletes always go to the repository and the repository's natural key
+    // constraint decides uniqueness. A stale bit costs a query, never a wrong answer.
+    // Only findFreeSlots answers from the bits alone.
+    private volatile SolarPanelOccupancy occupancy;
+    private final SolarPanelSectionVersions versions = new SolarPanelSectionVersions();
+    private final SolarPanelChangeLog changeLog;
+    // A write and the change it logs happen under the lock of every section the write
+    // touches, so the change log has a section's changes in the order the repository
+    // applied them. Sections share locks by registry id; they're taken in index order.
+    private final ReentrantLock[] sectionLocks = new ReentrantLock[SECTION_LOCKS];
 
     public SolarPanelService(SolarPanelRepository repository) {
-        this.repository = repository;
+        this(repository, Metrics.globalRegistry, SolarPanelMeteredRepository.DEFAULT_SAMPLE_EVERY);
+    }
+
+    public SolarPanelService(SolarPanelRepository repository, MeterRegistry registry, int sampleEvery) {
+        this(repository, registry, sampleEvery, SolarPanelChangeLog.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Times repository calls and counts validation failures by rule in the registry.
+     * @param sampleEvery How many findByKey calls there are for each one that's timed.
+     * @param changeLogSize How many of the latest changes are kept for {@link #findChanges}.
+     */
+    @Autowired
+    public SolarPanelService(SolarPanelRepository repository, MeterRegistry registry,
+                             @Value("${solarPanelMetricsSampleEvery:64}") int sampleEvery,
+                             @Value("${solarPanelChangeLogSize:10000}") int changeLogSize) {
+        this.repository = new SolarPanelMeteredRepository(repository, registry, sampleEvery);
+        this.changeLog = new SolarPanelChangeLog(changeLogSize);
+        for (int i = 0; i < SECTION_LOCKS; i++) {
+            sectionLocks[i] = new ReentrantLock();
+        }
+        for (SolarPanelRule rule : SolarPanelRule.values()) {
+            failures.put(rule, Counter.builder(VALIDATION_FAILURES)
+                    .description("Solar panels that failed validation")
+                    .tag("rule", rule.getTag())
+                    .register(registry));
+        }
+    }
+
+    /**
+     * The page size a limit is clamped to: between 1 and {@link #MAX_PAGE_SIZE}.
+     */
+    public static int clampPageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
     }
 
     public static int getMaxInstallationYear() {
         return Year.now().getValue();
     }
 
+    /**
+     * The section's version, which increases with every write to the section made through
+     * this service. Read it before the section's panels, so the panels are at least as
+     * new as the version. Writes made elsewhere don't change it, so it's only valid when
+     * this is the only instance writing the data.
+     */
+    public long getSectionVersion(String section) {
+        return versions.get(section);
+    }
+
+    /**
+     * Distinguishes this process's section versions from those of an earlier run.
+     */
+    public long getVersionEpoch() {
+        return versions.getEpoch();
+    }
+
+    /**
+     * The sequence of the latest change. A client that reads it before reading a whole
+     * section can ask for the section's changes since then.
+     */
+    public long getChangeSequence() {
+        return changeLog.getSequence();
+    }
+
+    /**
+     * Up to {@link #MAX_PAGE_SIZE} changes to the section after the sequence, or a
+     * resync when the sequence is no longer in the change log.
+     */
+    public SolarPanelChanges findChanges(String section, long sequence) {
+        return changeLog.since(section, sequence, MAX_PAGE_SIZE);
+    }
+
+    /**
+     * Calls the listener with every change made through this service, in sequence order,
+     * on the thread that made it. The listener must return quickly.
+     */
+    public void addChangeListener(Consumer<SolarPanelChange> listener) {
+        changeLog.addListener(listener);
+    }
+
+    public void removeChangeListener(Consumer<SolarPanelChange> listener) {
+        changeLog.removeListener(listener);
+    }
+
     public List<SolarPanel> findBySection(String section) throws DataAccessException {
         return repository.findBySection(section);
     }
 
+    /**
+     * Finds one page of a section, ordered by row then column, starting after the given
+     * row and column. The limit is clamped to between 1 and {@link #MAX_PAGE_SIZE}.
+     */
+    public List<SolarPanel> findBySection(String section, int afterRow, int afterColumn, int limit) throws DataAccessException {
+        return repository.findBySection(section, afterRow, afterColumn, clampPageSize(limit));
+    }
+
+    public void streamBySection(String section, Consumer<SolarPanel> consumer) throws DataAccessException {
+        repository.streamBySection(section, consumer);
+    }
+
     public SolarPanel findByKey(SolarPanelKey key) throws DataAccessException {
         return repository.findByKey(key);
     }
 
+    /**
+     * The first free slots of a section, in row then column order, from the occupancy
+     * rather than a scan of the section's panels.
+     * The limit is clamped to between 1 and {@link #MAX_PAGE_SIZE}.
+     *
+     * Like the section versions, it's only exact when this is the only instance writing
+     * the data: a panel written elsewhere since the occupancy was loaded isn't seen, so a
+     * slot may be reported free that a create then finds taken.
+     */
+    public List<SolarPanelKey> findFreeSlots(String section, int limit) throws DataAccessException {
+        return getOccupancy().findFree(section, clampPageSize(limit));
+    }
+
     public SolarPanelResult create(SolarPanel solarPanel) throws DataAccessException {
         SolarPanelResult result = validate(solarPanel);
 
         if (solarPanel != null && solarPanel.getId() > 0) {
-            result.addErrorMessage("SolarPanel `id` should not be set.");
+            fail(result, SolarPanelRule.ID, "SolarPanel `id` should not be set.");
+        }
+
+        if (result.isSuccess() && isTaken(solarPanel.getKey(), 0)) {
+            fail(result, SolarPanelRule.UNIQUE, NOT_UNIQUE_MESSAGE);
+        }
+
+        if (result.isSuccess()) {
+            int[] locks = lockSections(List.of(solarPanel.getSection()));
+            try {
+                solarPanel = repository.create(solarPanel);
+                result.setSolarPanel(solarPanel);
+                getOccupancy().add(solarPanel.getId(), solarPanel.getKey());
+                changeLog.add(SolarPanelChange.Type.CREATE, solarPanel.getKey(), solarPanel);
+                versions.increment(solarPanel.getSection());
+            } catch (DuplicateSolarPanelKeyException ex) {
+                // The section was written by someone else.
+                getOccupancy().set(solarPanel.getKey());
+                versions.increment(solarPanel.getSection());
+                fail(result, SolarPanelRule.UNIQUE, NOT_UNIQUE_MESSAGE);
+            } finally {
+                unlockSections(locks);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Creates every solar panel in the batch, or none of them.
+     * The batch is validated in memory, including natural keys that repeat within it.
+     * Keys the occupancy has as taken are confirmed with one repository call, and the
+     * repository's unique key catches any others.
+     */
+    public SolarPanelBatchResult createAll(List<SolarPanel> solarPanels) throws DataAccessException {
+        SolarPanelBatchResult result = new SolarPanelBatchResult();
+
+        if (solarPanels == null || solarPanels.isEmpty()) {
+            count(SolarPanelRule.REQUIRED);
+            result.addErrorMessage("SolarPanels are required.");
+            return result;
+        }
+
+        // SolarPanelKey compares sections case-insensitively, like the repositories do.
+        HashMap<SolarPanelKey, Integer> indexByKey = new HashMap<>();
+        // Keys the occupancy says are taken, checked against the repository in one call.
+        HashMap<SolarPanelKey, Integer> suspects = new HashMap<>();
+        SolarPanelOccupancy current = getOccupancy();
+        for (int i = 0; i < solarPanels.size(); i++) {
+            SolarPanel solarPanel = solarPanels.get(i);
+            SolarPanelResult itemResult = validate(solarPanel);
+
+            if (solarPanel != null && solarPanel.getId() > 0) {
+                fail(itemResult, SolarPanelRule.ID, "SolarPanel `id` should not be set.");
+            }
+
+            if (itemResult.isSuccess()) {
+                Integer first = indexByKey.putIfAbsent(solarPanel.getKey(), i);
+                if (first != null) {
+                    fail(itemResult, SolarPanelRule.UNIQUE_IN_BATCH,
+                            "SolarPanel `section`, `row`, and `column` duplicate solar panel %s.", first);
+                } else if (current.isOccupied(solarPanel.getKey())) {
+                    suspects.put(solarPanel.getKey(), i);
+                }
+            }
+
+            for (String message : itemResult.getErrorMessages()) {
+                result.addItemErrorMessage(i, message);
+            }
+        }
+
+        if (!suspects.isEmpty()) {
+            HashSet<SolarPanelKey> taken = new HashSet<>();
+            for (SolarPanel existing : repository.findByKeys(suspects.keySet())) {
+                taken.add(existing.getKey());
+            }
+            for (Map.Entry<SolarPanelKey, Integer> suspect : suspects.entrySet()) {
+                if (taken.contains(suspect.getKey())) {
+                    count(SolarPanelRule.UNIQUE);
+                    result.addItemErrorMessage(suspect.getValue(), NOT_UNIQUE_MESSAGE);
+                } else {
+                    current.clear(suspect.getKey());
+                }
+            }
         }
 
         if (result.isSuccess()) {
-            solarPanel = repository.create(solarPanel);
-            result.setSolarPanel(solarPanel);
+            ArrayList<String> sections = new ArrayList<>();
+            for (SolarPanel solarPanel : solarPanels) {
+                sections.add(solarPanel.getSection());
+            }
+            int[] locks = lockSections(sections);
+            try {
+                result.setSolarPanels(repository.createAll(solarPanels));
+                for (SolarPanel solarPanel : solarPanels) {
+                    current.add(solarPanel.getId(), solarPanel.getKey());
+                    changeLog.add(SolarPanelChange.Type.CREATE, solarPanel.getKey(), solarPanel);
+                }
+                incrementSections(solarPanels);
+            } catch (DuplicateSolarPanelKeyException ex) {
+                // Another write took one of the keys after they were checked.
+                incrementSections(solarPanels);
+                count(SolarPanelRule.UNIQUE);
+                result.addErrorMessage(NOT_UNIQUE_MESSAGE);
+            } finally {
+                unlockSections(locks);
+            }
         }
 
         return result;
@@ -50,14 +296,48 @@ public class SolarPanelService {
         SolarPanelResult result = validate(solarPanel);
 
         if (solarPanel.getId() <= 0) {
-            result.addErrorMessage("SolarPanel `id` is required.");
+            fail(result, SolarPanelRule.ID, "SolarPanel `id` is required.");
+        }
+
+        if (result.isSuccess() && getOccupancy().isOccupiedByOther(solarPanel.getId(), solarPanel.getKey())
+                && isTaken(solarPanel.getKey(), solarPanel.getId())) {
+            fail(result, SolarPanelRule.UNIQUE, NOT_UNIQUE_MESSAGE);
         }
 
         if (result.isSuccess()) {
-            if (repository.update(solarPanel)) {
-                result.setSolarPanel(solarPanel);
-            } else {
-                result.addErrorMessage("SolarPanel id %s was not found.", solarPanel.getId());
+            // The panel's current section has to be locked too, and it's only known once
+            // the panel is read; if it's under another lock, take both and read it again.
+            int[] locks = lockSections(List.of(solarPanel.getSection()));
+            try {
+                SolarPanel existing = repository.findById(solarPanel.getId());
+                while (existing != null && !isLocked(locks, existing.getSection())) {
+                    unlockSections(locks);
+                    locks = lockSections(List.of(existing.getSection(), solarPanel.getSection()));
+                    existing = repository.findById(solarPanel.getId());
+                }
+                if (existing != null && repository.update(solarPanel)) {
+                    SolarPanelKey previous = existing.getKey();
+                    result.setSolarPanel(solarPanel);
+                    // Frees the slot the panel moved out of, if it moved.
+                    getOccupancy().clear(previous);
+                    getOccupancy().add(solarPanel.getId(), solarPanel.getKey());
+                    if (!previous.equals(solarPanel.getKey())) {
+                        changeLog.add(SolarPanelChange.Type.DELETE, previous, null);
+                    }
+                    changeLog.add(SolarPanelChange.Type.UPDATE, solarPanel.getKey(), solarPanel);
+                    if (!previous.getSection().equalsIgnoreCase(solarPanel.getSection())) {
+                        versions.increment(previous.getSection());
+                    }
+                    versions.increment(solarPanel.getSection());
+                } else {
+                    result.addErrorMessage("SolarPanel id %s was not found.", solarPanel.getId());
+                }
+            } catch (DuplicateSolarPanelKeyException ex) {
+                getOccupancy().set(solarPanel.getKey());
+                versions.increment(solarPanel.getSection());
+                fail(result, SolarPanelRule.UNIQUE, NOT_UNIQUE_MESSAGE);
+            } finally {
+                unlockSections(locks);
             }
         }
         return result;
@@ -65,52 +345,166 @@ public class SolarPanelService {
 
     public SolarPanelResult deleteByKey(SolarPanelKey key) throws DataAccessException {
         SolarPanelResult result = new SolarPanelResult();
-        if (!repository.deleteByKey(key)) {
-            result.addErrorMessage("SolarPanel %s was not found.", key);
+        int[] locks = lockSections(List.of(key.getSection()));
+        try {
+            if (!repository.deleteByKey(key)) {
+                result.addErrorMessage("SolarPanel %s was not found.", key);
+            } else {
+                changeLog.add(SolarPanelChange.Type.DELETE, key, null);
+                versions.increment(key.getSection());
+            }
+        } finally {
+            unlockSections(locks);
         }
+        getOccupancy().clear(key);
         return result;
     }
 
-    private SolarPanelResult validate(SolarPanel solarPanel) throws DataAccessException {
+    /**
+     * Takes the locks of the sections, in index order so two writers can't each hold
+     * one the other is waiting for.
+     * @return The indexes of the locks taken, for {@link #unlockSections}.
+     */
+    private int[] lockSections(Collection<String> sections) {
+        TreeSet<Integer> indexes = new TreeSet<>();
+        for (String section : sections) {
+            indexes.add(lockIndex(section));
+        }
+        int[] locks = new int[indexes.size()];
+        int i = 0;
+        for (int index : indexes) {
+            sectionLocks[index].lock();
+            locks[i++] = index;
+        }
+        return locks;
+    }
+
+    private void unlockSections(int[] locks) {
+        if (locks != null) {
+            for (int i = locks.length - 1; i >= 0; i--) {
+                sectionLocks[locks[i]].unlock();
+            }
+        }
+    }
+
+    private boolean isLocked(int[] locks, String section) {
+        return Arrays.binarySearch(locks, lockIndex(section)) >= 0;
+    }
+
+    private int lockIndex(String section) {
+        return Math.floorMod(SectionRegistry.getDefault().register(section), SECTION_LOCKS);
+    }
+
+    // Whether a panel other than the one with this id holds the key. Only a set bit is
+    // checked with the repository; a stale one is cleared.
+    private boolean isTaken(SolarPanelKey key, int id) throws DataAccessException {
+        SolarPanelOccupancy current = getOccupancy();
+        if (!current.isOccupied(key)) {
+            return false;
+        }
+        SolarPanel existing = repository.findByKey(key);
+        if (existing == null) {
+            current.clear(key);
+            return false;
+        }
+        return existing.getId() != id;
+    }
+
+    private void incrementSections(List<SolarPanel> solarPanels) {
+        HashSet<Integer> incremented = new HashSet<>();
+        for (SolarPanel solarPanel : solarPanels) {
+            if (incremented.add(SectionRegistry.getDefault().register(solarPanel.getSection()))) {
+                versions.increment(solarPanel.getSection());
+            }
+        }
+    }
+
+    private SolarPanelOccupancy getOccupancy() throws DataAccessException {
+        SolarPanelOccupancy current = occupancy;
+        if (current == null) {
+            synchronized (this) {
+                if (occupancy == null) {
+                    occupancy = new SolarPanelOccupancy(repository.findAllKeys());
+                }
+                current = occupancy;
+            }
+        }
+        return current;
+    }
+
+    // The combined values of **Section**, **Row**, and **Column** must be unique (i.e. the natural key).
+    // The repository enforces that as part of the write (the database through its unique constraint),
+    // so there's no lookup before the write and no window for two writes to take the same key.
+    private SolarPanelResult validate(SolarPanel solarPanel) {
         SolarPanelResult result = new SolarPanelResult();
 
-        if (solarPanel == null) {
-            result.addErrorMessage("SolarPanel cannot be null.");
+        if (violates(SolarPanelRule.REQUIRED, solarPanel, solarPanel == null)) {
+            fail(result, SolarPanelRule.REQUIRED, "SolarPanel cannot be null.");
             return result;
         }
 
-        if (solarPanel.getSection() == null || solarPanel.getSection().isBlank()) {
-            result.addErrorMessage("SolarPanel `section` is required.");
+        if (violates(SolarPanelRule.SECTION, solarPanel,
+                solarPanel.getSection() == null || solarPanel.getSection().isBlank())) {
+            fail(result, SolarPanelRule.SECTION, "SolarPanel `section` is required.");
+        } else if (violates(SolarPanelRule.SECTION, solarPanel, hasReservedChar(solarPanel.getSection()))) {
+            fail(result, SolarPanelRule.SECTION, "SolarPanel `section` cannot contain `~` or a line break.");
         }
 
-        if (solarPanel.getRow() < 1 || solarPanel.getRow() >= MAX_ROW_COLUMN) {
-            result.addErrorMessage("SolarPanel `row` must be a positive number less than or equal to %s.", MAX_ROW_COLUMN);
+        if (violates(SolarPanelRule.ROW, solarPanel,
+                solarPanel.getRow() < 1 || solarPanel.getRow() >= MAX_ROW_COLUMN)) {
+            fail(result, SolarPanelRule.ROW, "SolarPanel `row` must be a positive number less than or equal to %s.", MAX_ROW_COLUMN);
         }
 
-        if (solarPanel.getColumn() < 1 || solarPanel.getColumn() >= MAX_ROW_COLUMN) {
-            result.addErrorMessage("SolarPanel `column` must be a positive number less than or equal to %s.", MAX_ROW_COLUMN);
+        if (violates(SolarPanelRule.COLUMN, solarPanel,
+                solarPanel.getColumn() < 1 || solarPanel.getColumn() >= MAX_ROW_COLUMN)) {
+            fail(result, SolarPanelRule.COLUMN, "SolarPanel `column` must be a positive number less than or equal to %s.", MAX_ROW_COLUMN);
         }
 
-        if (solarPanel.getYearInstalled() > getMaxInstallationYear()) {
-            result.addErrorMessage("SolarPanel `yearInstalled` must be in the past.");
+        if (violates(SolarPanelRule.YEAR_INSTALLED, solarPanel,
+                solarPanel.getYearInstalled() > getMaxInstallationYear())) {
+            fail(result, SolarPanelRule.YEAR_INSTALLED, "SolarPanel `yearInstalled` must be in the past.");
         }
 
-        if (solarPanel.getMaterial() == null) {
-            result.addErrorMessage("SolarPanel `material` is required.");
+        if (violates(SolarPanelRule.MATERIAL, solarPanel, solarPanel.getMaterial() == null)) {
+            fail(result, SolarPanelRule.MATERIAL, "SolarPanel `material` is required.");
         }
 
-        // If everything is successful so far, then check if the combined values
-        // of **Section**, **Row**, and **Column** are unique (i.e. the natural key).
-        if (result.isSuccess()) {
-            SolarPanel existingSolarPanel = repository.findByKey(solarPanel.getKey());
+        return result;
+    }
 
-            // If an existing panel was found for the provided **Section**, **Row**, and **Column** values
-            // add an error message if the id values don't match (i.e. they're not the same record).
-            if (existingSolarPanel != null && existingSolarPanel.getId() != solarPanel.getId()) {
-                result.addErrorMessage("SolarPanel `section`, `row`, and `column` must be unique.");
+    // The data file delimits fields with `~` and panels with line breaks. The file repository
+    // would drop these on write, so a panel would read back differently after a restart.
+    private boolean hasReservedChar(String section) {
+        for (int i = 0; i < section.length(); i++) {
+            char c = section.charAt(i);
+            if (c == '~' || c == '\r' || c == '\n') {
+                return true;
             }
         }
+        return false;
+    }
+
+    /**
+     * Records the check of a rule as a flight recorder event.
+     * @return Whether the solar panel violates the rule.
+     */
+    private boolean violates(SolarPanelRule rule, SolarPanel solarPanel, boolean violated) {
+        SolarPanelValidationEvent event = new SolarPanelValidationEvent();
+        if (event.shouldCommit()) {
+            event.rule = rule.getTag();
+            event.section = solarPanel == null ? null : solarPanel.getSection();
+            event.passed = !violated;
+            event.commit();
+        }
+        return violated;
+    }
 
-        return result;
+    private void fail(SolarPanelResult result, SolarPanelRule rule, String message, Object... args) {
+        count(rule);
+        result.addErrorMessage(message, args);
+    }
+
+    private void count(SolarPanelRule rule) {
+        failures.get(rule).increment();
     }
 }
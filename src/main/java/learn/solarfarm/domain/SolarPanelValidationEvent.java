@@ -0,0 +1,29 @@
+package learn.solarfarm.domain;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JDK Flight Recorder event for one validation rule checked against one solar panel.
+ * Checking a rule takes nanoseconds, so the event marks the moment it was checked and
+ * whether the panel passed rather than timing it.
+ */
+@Name("learn.solarfarm.Validation")
+@Label("Solar Panel Validation")
+@Category({"Solar Farm", "Validation"})
+@Description("A validation rule checked against a solar panel")
+@StackTrace(false)
+public class SolarPanelValidationEvent extends Event {
+    @Label("Rule")
+    String rule;
+
+    @Label("Section")
+    String section;
+
+    @Label("Passed")
+    boolean passed;
+}
@@ -0,0 +1,93 @@
+package learn.solarfarm.models;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Interns section names as small, dense ids, case-insensitively.
+ *
+ * The first spelling registered is the canonical name for the id. Ids are never reused
+ * or reassigned, so they can stand in for a section anywhere in the process.
+ * Looking a section up never registers it, so a query for a section that doesn't exist
+ * doesn't grow the registry.
+ *
+ * The registry also interns each spelling of a section, so the panels loaded from a file
+ * or a query share one String per spelling instead of holding a copy each.
+ */
+public class SectionRegistry {
+    public static final int UNKNOWN = -1;
+
+    private static final SectionRegistry DEFAULT = new SectionRegistry();
+
+    // Compares the way SolarPanelKey and the repositories do, without lower-casing a copy.
+    private final ConcurrentSkipListMap<String, Integer> ids = new ConcurrentSkipListMap<>(String.CASE_INSENSITIVE_ORDER);
+    private volatile String[] names = new String[0];
+    private final ConcurrentHashMap<String, String> spellings = new ConcurrentHashMap<>();
+
+    public static SectionRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return The section's id or {@link #UNKNOWN} if it was never registered.
+     */
+    public int find(String section) {
+        if (section == null) {
+            return UNKNOWN;
+        }
+        Integer id = ids.get(section);
+        return id == null ? UNKNOWN : id;
+    }
+
+    /**
+     * @return The section's id, registering it if it's new.
+     */
+    public int register(String section) {
+        int id = find(section);
+        if (id != UNKNOWN) {
+            return id;
+        }
+        synchronized (this) {
+            Integer existing = ids.get(section);
+            if (existing != null) {
+                return existing;
+            }
+            String[] current = names;
+            String[] grown = Arrays.copyOf(current, current.length + 1);
+            grown[current.length] = section;
+            names = grown;
+            ids.put(section, current.length);
+            return current.length;
+        }
+    }
+
+    /**
+     * Registers a section and returns the shared instance of its exact spelling.
+     * Unlike {@link #nameOf}, the case of the spelling is kept.
+     */
+    public String intern(String section) {
+        if (section == null) {
+            return null;
+        }
+        String existing = spellings.get(section);
+        if (existing != null) {
+            return existing;
+        }
+        register(section);
+        existing = spellings.putIfAbsent(section, section);
+        return existing == null ? section : existing;
+    }
+
+    /**
+     * @return The canonical name for an id or null if the id was never assigned.
+     */
+    public String nameOf(int id) {
+        String[] current = names;
+        return id >= 0 && id < current.length ? current[id] : null;
+    }
+
+    public int size() {
+        return names.length;
+    }
+}
@@ -1,7 +1,5 @@
 package learn.solarfarm.models;
 
-import java.util.Objects;
-
 public class SolarPanel {
 
     private int id;
@@ -11,6 +9,8 @@ public class SolarPanel {
     private int yearInstalled;
     private Material material;
     private boolean isTracking;
+    // Built on first use and dropped when section, row, or column change,
+    // so populating a panel field by field doesn't build throwaway keys.
     private SolarPanelKey key;
 
     public SolarPanel() {
@@ -24,7 +24,10 @@ public class SolarPanel {
         this.yearInstalled = yearInstalled;
         this.material = material;
         this.isTracking = isTracking;
-        this.key = new SolarPanelKey(section, row, column);
+    }
+
+    public SolarPanel(SolarPanel other) {
+        this(other.id, other.section, other.row, other.column, other.yearInstalled, other.material, other.isTracking);
     }
 
     public int getId() {
@@ -41,8 +44,7 @@ public class SolarPanel {
 
     public void setSection(String section) {
         this.section = section;
-        // Keep the key up-to-date.
-        this.key = new SolarPanelKey(section, this.row, this.column);
+        this.key = null;
     }
 
     public int getRow() {
@@ -51,8 +53,7 @@ public class SolarPanel {
 
     public void setRow(int row) {
         this.row = row;
-        // Keep the key up-to-date.
-        this.key = new SolarPanelKey(this.section, row, this.column);
+        this.key = null;
     }
 
     public int getColumn() {
@@ -61,8 +62,7 @@ public class SolarPanel {
 
     public void setColumn(int column) {
         this.column = column;
-        // Keep the key up-to-date.
-        this.key = new SolarPanelKey(this.section, this.row, column);
+        this.key = null;
     }
 
     public int getYearInstalled() {
@@ -90,11 +90,16 @@ public class SolarPanel {
     }
 
     public SolarPanelKey getKey() {
-        return key;
+        SolarPanelKey current = key;
+        if (current == null) {
+            current = new SolarPanelKey(section, row, column);
+            key = current;
+        }
+        return current;
     }
 
     public boolean isMatch(SolarPanelKey key) {
-        return this.key.equals(key);
+        return getKey().equals(key);
     }
 
     @Override
@@ -102,12 +107,12 @@ public class SolarPanel {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         SolarPanel that = (SolarPanel) o;
-        return key.equals(that.key);
+        return getKey().equals(that.getKey());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(key);
+        return getKey().hashCode();
     }
 
     @Override
@@ -120,7 +125,7 @@ public class SolarPanel {
                 ", yearInstalled=" + yearInstalled +
                 ", material=" + material +
                 ", isTracking=" + isTracking +
-                ", key=" + key +
+                ", key=" + getKey() +
                 '}';
     }
 }
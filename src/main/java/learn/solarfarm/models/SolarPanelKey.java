@@ -1,19 +1,32 @@
 package learn.solarfarm.models;
 
-import java.util.Objects;
-
 /**
  * Represents the natural key for a solar panel.
  * Having a class for the key makes it possible for a method
  * to return a key (which is the composite of three values) to the caller.
  *
+ * Sections compare case-insensitively. The hash code is folded the same way and computed
+ * once, without boxing or copying the section, so a key is cheap to use in a hash map.
+ * {@link #toLong()} packs the key into a primitive long, which the file repository's index
+ * is keyed on.
+ *
  * NOTE: This class isn't a requirement of this project. The UI layer could be
  * updated to work without needing this data structure.
  */
 public class SolarPanelKey {
-    private String section;
-    private int row;
-    private int column;
+    public static final long UNPACKED = -1L;
+
+    private static final int GRID_BITS = 16;
+    private static final int GRID_MAX = (1 << GRID_BITS) - 1;
+
+    private final String section;
+    private final int row;
+    private final int column;
+
+    // Computed on first use. 0 means "not computed yet" (a hash of 0 is just recomputed).
+    private int hash;
+    // Computed on first use, once the section is registered. Volatile so it can't be torn.
+    private volatile long packed = UNPACKED;
 
     public SolarPanelKey(String section, int row, int column) {
         this.section = section;
@@ -33,6 +46,25 @@ public class SolarPanelKey {
         return column;
     }
 
+    /**
+     * Packs the key as section id (high 32 bits), row (16 bits), and column (16 bits).
+     * The section is looked up, never registered, so this is {@link #UNPACKED} if the
+     * {@link SectionRegistry} doesn't know the section yet, or if the row or column is
+     * outside 0 to 65,535. Section ids are never reassigned, so a packed value is
+     * computed once and kept.
+     */
+    public long toLong() {
+        long p = packed;
+        if (p == UNPACKED && row >= 0 && row <= GRID_MAX && column >= 0 && column <= GRID_MAX) {
+            int sectionId = SectionRegistry.getDefault().find(section);
+            if (sectionId != SectionRegistry.UNKNOWN) {
+                p = ((long) sectionId << (2 * GRID_BITS)) | ((long) row << GRID_BITS) | column;
+                packed = p;
+            }
+        }
+        return p;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -40,12 +72,24 @@ public class SolarPanelKey {
         SolarPanelKey that = (SolarPanelKey) o;
         return row == that.row &&
                 column == that.column &&
-                section.equalsIgnoreCase(that.section);
+                (section == null ? that.section == null : section.equalsIgnoreCase(that.section));
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(section, row, column);
+        int h = hash;
+        if (h == 0) {
+            // Fold each char the way String.equalsIgnoreCase does, so keys that are equal
+            // hash the same.
+            if (section != null) {
+                for (int i = 0; i < section.length(); i++) {
+                    h = 31 * h + Character.toLowerCase(Character.toUpperCase(section.charAt(i)));
+                }
+            }
+            h = 31 * (31 * h + row) + column;
+            hash = h;
+        }
+        return h;
     }
 
     @Override
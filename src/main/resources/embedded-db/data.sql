@@ -0,0 +1,2 @@
+-- Seeds the embedded database with the known good state.
+call set_known_good_state();
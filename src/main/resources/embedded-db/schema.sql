@@ -0,0 +1,34 @@
+-- The solar farm schema for the embedded database, in H2's MySQL mode.
+-- Mirrors databaseScripts/createSolarFarm.sql. Every statement can run again
+-- against an existing database, since each application context runs it.
+
+create table if not exists material (
+    material_id int primary key auto_increment,
+    `name` varchar(200) not null,
+    abbreviation varchar(10),
+    constraint un_name_abbr unique (`name`, abbreviation)
+);
+
+create table if not exists solar_panel (
+    solar_panel_id int primary key auto_increment,
+    section varchar(50) not null,
+    `row` int not null,
+    `column` int not null,
+    year_installed int not null,
+    material_id int not null,
+    is_tracking bit not null,
+    constraint fk_solar_panel_material
+        foreign key (material_id)
+        references material(material_id),
+    constraint un_solar_panel unique (section, `row`, `column`)
+);
+
+merge into material key (material_id) values
+    (1, 'Multicrystalline Silicon', 'poly-Si'),
+    (2, 'Monocrystalline Silicon', 'mono-Si'),
+    (3, 'Amorphous Silicon', 'a-Si'),
+    (4, 'Cadmium Telluride', 'CdTe'),
+    (5, 'Copper Indium Gallium Selenide', 'CIGS');
+
+create alias if not exists set_known_good_state
+    for "learn.solarfarm.data.EmbeddedDatabaseProcedures.setKnownGoodState";
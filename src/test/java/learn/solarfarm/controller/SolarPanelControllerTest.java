@@ -5,22 +5,32 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.json.JsonMapper;
 import learn.solarfarm.data.DataAccessException;
 import learn.solarfarm.data.SolarPanelJdbcTemplateRepository;
+import learn.solarfarm.domain.SolarPanelService;
 import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SectionRegistry;
 import learn.solarfarm.models.SolarPanel;
 import learn.solarfarm.models.SolarPanelKey;
+import org.hamcrest.Matchers;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultHandlers;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -55,10 +65,15 @@ class SolarPanelControllerTest {
     }
 
     @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD) // reloads the service's occupancy
     void shouldFindByKey() throws Exception {
         SolarPanelKey inputKey = new SolarPanelKey("test", 1, 1);
         SolarPanel panel = new SolarPanel(1, "test", 1, 1, 2000, Material.MONO_SI, true);
 
+        Mockito
+                .when(repository.findAllKeys())
+                .thenReturn(Map.of(1, inputKey));
+
         Mockito
                 .when(repository.findByKey(inputKey))
                 .thenReturn(panel);
@@ -107,8 +122,261 @@ class SolarPanelControllerTest {
                 .andExpect(MockMvcResultMatchers.status().isBadRequest());
     }
 
+    @Test
+    void shouldWriteSectionWithoutKey() throws Exception {
+        Mockito
+                .when(repository.findBySection("Section One"))
+                .thenReturn(List.of(new SolarPanel(1, "Section One", 1, 1, 2020, Material.POLY_SI, true)));
+
+        mvc.perform(MockMvcRequestBuilders.get("/solar-panel/Section One"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().string("[{\"id\":1,\"section\":\"Section One\"," +
+                        "\"row\":1,\"column\":1,\"yearInstalled\":2020,\"material\":\"POLY_SI\",\"tracking\":true}]"));
+    }
+
+    @Test
+    void shouldWriteSectionCompact() throws Exception {
+        Mockito
+                .when(repository.findBySection("Section One"))
+                .thenReturn(List.of(new SolarPanel(1, "Section One", 1, 1, 2020, Material.MONO_SI, true)));
+
+        mvc.perform(MockMvcRequestBuilders.get("/solar-panel/Section One")
+                        .accept(SolarPanelJsonHttpMessageConverter.COMPACT))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType(SolarPanelJsonHttpMessageConverter.COMPACT))
+                .andExpect(MockMvcResultMatchers.content().string("[[1,\"Section One\",1,1,2020,2,true]]"));
+    }
+
+    @Test
+    void shouldWriteSectionColumnar() throws Exception {
+        Mockito
+                .when(repository.findBySection("Section One"))
+                .thenReturn(List.of(
+                        new SolarPanel(1, "Section One", 1, 1, 2020, Material.POLY_SI, true),
+                        new SolarPanel(2, "Section One", 1, 2, 2019, Material.CIGS, false)));
+
+        mvc.perform(MockMvcRequestBuilders.get("/solar-panel/Section One")
+                        .accept(SolarPanelJsonHttpMessageConverter.COLUMNAR))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType(SolarPanelJsonHttpMessageConverter.COLUMNAR))
+                .andExpect(MockMvcResultMatchers.content().string("{\"count\":2,\"id\":[1,2]," +
+                        "\"section\":[\"Section One\",\"Section One\"],\"row\":[1,1],\"column\":[1,2]," +
+                        "\"yearInstalled\":[2020,2019],\"material\":[1,5],\"tracking\":[true,false]}"));
+    }
+
+    @Test
+    void shouldCreateFromBodyWithKeyAndMaterialValue() throws Exception {
+        SolarPanel testOutput = new SolarPanel(1, "test", 7, 7, 2000, Material.MONO_SI, true);
+        Mockito
+                .when(repository.create(Mockito.any()))
+                .thenReturn(testOutput);
+
+        var request = MockMvcRequestBuilders.post("/solar-panel")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"section\":\"test\",\"row\":7,\"column\":7,\"yearInstalled\":2000," +
+                        "\"material\":2,\"tracking\":true,\"key\":{\"section\":\"test\",\"row\":7,\"column\":7}}");
+
+        mvc.perform(request)
+                .andExpect(MockMvcResultMatchers.status().isCreated())
+                .andExpect(MockMvcResultMatchers.content().json(mapToJson(testOutput)));
+    }
+
+    @Test
+    void shouldWriteSectionBinary() throws Exception {
+        List<SolarPanel> expected = List.of(
+                new SolarPanel(1, "Section One", 1, 1, 2020, Material.POLY_SI, true),
+                new SolarPanel(300, "Section One", 1, 200, 2019, Material.CIGS, false));
+        Mockito
+                .when(repository.findBySection("Section One"))
+                .thenReturn(expected);
+
+        byte[] body = mvc.perform(MockMvcRequestBuilders.get("/solar-panel/Section One")
+                        .accept(SolarPanelBinaryHttpMessageConverter.BINARY))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType(SolarPanelBinaryHttpMessageConverter.BINARY))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        // version, one section of 11 bytes, two panels: 1+1+1+1+2+1 and 2+1+1+2+2+1
+        assertEquals(1 + 1 + 1 + 11 + 1 + 7 + 9, body.length);
+        List<SolarPanel> actual = SolarPanelBinaryHttpMessageConverter.read(body, null);
+        assertEquals(mapToJson(expected), mapToJson(actual));
+        assertSame(actual.get(0).getSection(), actual.get(1).getSection());
+    }
+
+    @Test
+    void shouldCreateBatchFromBinary() throws Exception {
+        List<SolarPanel> input = List.of(
+                new SolarPanel(0, "binary", 8, 8, 2018, Material.A_SI, false),
+                new SolarPanel(0, "binary", 8, 9, 2018, Material.CD_TE, true));
+        Mockito
+                .when(repository.createAll(Mockito.any()))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        SolarPanelBinaryHttpMessageConverter.write(input, body);
+
+        mvc.perform(MockMvcRequestBuilders.post("/solar-panel/batch")
+                        .contentType(SolarPanelBinaryHttpMessageConverter.BINARY)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(body.toByteArray()))
+                .andExpect(MockMvcResultMatchers.status().isCreated())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.solarPanels[1].material").value("CD_TE"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.solarPanels[1].tracking").value(true));
+    }
+
+    @Test
+    void shouldNotReadTruncatedBinary() throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        SolarPanelBinaryHttpMessageConverter.write(
+                List.of(new SolarPanel(0, "binary", 9, 9, 2018, Material.A_SI, false)), body);
+        byte[] truncated = Arrays.copyOf(body.toByteArray(), body.size() - 1);
+
+        mvc.perform(MockMvcRequestBuilders.post("/solar-panel/batch")
+                        .contentType(SolarPanelBinaryHttpMessageConverter.BINARY)
+                        .content(truncated))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+
+    @Test
+    void shouldAnswerNotModifiedUntilSectionIsWritten() throws Exception {
+        Mockito
+                .when(repository.findBySection("etag"))
+                .thenReturn(List.of(new SolarPanel(1, "etag", 1, 1, 2020, Material.POLY_SI, true)));
+
+        String etag = mvc.perform(MockMvcRequestBuilders.get("/solar-panel/etag"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().exists(HttpHeaders.ETAG))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mvc.perform(MockMvcRequestBuilders.get("/solar-panel/etag").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(MockMvcResultMatchers.status().isNotModified())
+                .andExpect(MockMvcResultMatchers.content().string(""));
+        mvc.perform(MockMvcRequestBuilders.get("/solar-panel/ETAG/1/1").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(MockMvcResultMatchers.status().isNotModified());
+        Mockito.verify(repository, Mockito.times(1)).findBySection("etag");
+        Mockito.verify(repository, Mockito.never()).findByKey(Mockito.any());
+
+        // Another representation of the section has its own ETag.
+        mvc.perform(MockMvcRequestBuilders.get("/solar-panel/etag").header(HttpHeaders.IF_NONE_MATCH, etag)
+                        .accept(SolarPanelJsonHttpMessageConverter.COMPACT))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+
+        Mockito
+                .when(repository.create(Mockito.any()))
+                .thenReturn(new SolarPanel(2, "etag", 1, 2, 2020, Material.POLY_SI, true));
+        mvc.perform(MockMvcRequestBuilders.post("/solar-panel")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapToJson(new SolarPanel(0, "etag", 1, 2, 2020, Material.POLY_SI, true))))
+                .andExpect(MockMvcResultMatchers.status().isCreated());
+
+        mvc.perform(MockMvcRequestBuilders.get("/solar-panel/etag").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, Matchers.not(etag)));
+    }
+
+    @Test
+    void shouldFindChangesSinceSectionWasRead() throws Exception {
+        String sequence = mvc.perform(MockMvcRequestBuilders.get("/solar-panel/changes"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andReturn().getResponse().getHeader(SolarPanelController.CHANGE_SEQUENCE);
+
+        Mockito
+                .when(repository.create(Mockito.any()))
+                .thenReturn(new SolarPanel(3, "changes", 6, 6, 2020, Material.POLY_SI, true));
+        mvc.perform(MockMvcRequestBuilders.post("/solar-panel")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapToJson(new SolarPanel(0, "changes", 6, 6, 2020, Material.POLY_SI, true))))
+                .andExpect(MockMvcResultMatchers.status().isCreated());
+
+        mvc.perform(MockMvcRequestBuilders.get("/solar-panel/changes/changes").param("since", sequence))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.sequence").value(Long.parseLong(sequence) + 1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.resync").value(false))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.changes[0].type").value("CREATE"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.changes[0].solarPanel.id").value(3));
+
+        mvc.perform(MockMvcRequestBuilders.get("/solar-panel/changes/changes").param("since", "0"))
+                .andExpect(MockMvcResultMatchers.status().isGone())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.resync").value(true));
+    }
+
+    @Test
+    void shouldStreamChangesToSectionSubscribers() throws Exception {
+        MvcResult sse = mvc.perform(MockMvcRequestBuilders.get("/solar-panel/stream").param("section", "sse"))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+        MvcResult other = mvc.perform(MockMvcRequestBuilders.get("/solar-panel/stream").param("section", "other"))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+
+        Mockito
+                .when(repository.create(Mockito.any()))
+                .thenReturn(new SolarPanel(4, "sse", 5, 5, 2020, Material.CIGS, false));
+        mvc.perform(MockMvcRequestBuilders.post("/solar-panel")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapToJson(new SolarPanel(0, "sse", 5, 5, 2020, Material.CIGS, false))))
+                .andExpect(MockMvcResultMatchers.status().isCreated());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!sse.getResponse().getContentAsString().contains("\n\n") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        String event = sse.getResponse().getContentAsString();
+        assertTrue(event.startsWith("id:"), event);
+        assertTrue(event.contains("\nevent:create\ndata:{"), event);
+        assertTrue(event.contains("\"solarPanel\":{\"id\":4,\"section\":\"sse\""), event);
+        assertEquals(MediaType.TEXT_EVENT_STREAM_VALUE, sse.getResponse().getContentType());
+        assertEquals("", other.getResponse().getContentAsString());
+    }
+
+    @Test
+    void shouldStreamSectionBeforeItsFirstWrite() throws Exception {
+        MvcResult sse = mvc.perform(MockMvcRequestBuilders.get("/solar-panel/stream").param("section", "Not Yet Written"))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+        assertEquals(SectionRegistry.UNKNOWN, SectionRegistry.getDefault().find("Not Yet Written"));
+
+        Mockito
+                .when(repository.create(Mockito.any()))
+                .thenReturn(new SolarPanel(7, "not yet written", 5, 5, 2020, Material.CIGS, false));
+        mvc.perform(MockMvcRequestBuilders.post("/solar-panel")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapToJson(new SolarPanel(0, "not yet written", 5, 5, 2020, Material.CIGS, false))))
+                .andExpect(MockMvcResultMatchers.status().isCreated());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!sse.getResponse().getContentAsString().contains("\n\n") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        String event = sse.getResponse().getContentAsString();
+        assertTrue(event.contains("\"solarPanel\":{\"id\":7,\"section\":\"not yet written\""), event);
+    }
+
+    @Test
+    void shouldLinkNextPageWhenLimitIsClamped() throws Exception {
+        List<SolarPanel> page = new ArrayList<>();
+        for (int i = 1; i <= SolarPanelService.MAX_PAGE_SIZE; i++) {
+            page.add(new SolarPanel(i, "paged", 1 + (i - 1) / 200, 1 + (i - 1) % 200, 2020, Material.POLY_SI, true));
+        }
+        Mockito
+                .when(repository.findBySection("paged", 0, 0, SolarPanelService.MAX_PAGE_SIZE))
+                .thenReturn(page);
+        Mockito
+                .when(repository.findBySection("paged", 0, 0, 1))
+                .thenReturn(page.subList(0, 1));
+
+        mvc.perform(MockMvcRequestBuilders.get("/solar-panel/paged").param("limit", "5000"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.LINK,
+                        Matchers.containsString("after=5-200")));
+        mvc.perform(MockMvcRequestBuilders.get("/solar-panel/paged").param("limit", "0"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.LINK,
+                        Matchers.containsString("after=1-1")));
+    }
+
     private String mapToJson(Object o) throws JsonProcessingException {
-        ObjectMapper jsonMapper = new JsonMapper();
+        ObjectMapper jsonMapper = JsonMapper.builder().addModule(new SolarPanelJsonModule()).build();
         return jsonMapper.writeValueAsString(o);
     }
 }
\ No newline at end of file
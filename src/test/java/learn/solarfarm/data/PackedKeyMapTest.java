@@ -0,0 +1,48 @@
+package learn.solarfarm.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackedKeyMapTest {
+
+    @Test
+    void shouldPutGetAndReplace() {
+        PackedKeyMap<String> map = new PackedKeyMap<>();
+
+        assertNull(map.put(42L, "first"));
+        assertEquals("first", map.put(42L, "second"));
+
+        assertEquals("second", map.get(42L));
+        assertNull(map.get(43L));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void shouldAgreeWithHashMapThroughGrowthAndRemoval() {
+        PackedKeyMap<Long> map = new PackedKeyMap<>();
+        HashMap<Long, Long> expected = new HashMap<>();
+        Random random = new Random(13);
+
+        // A small key space, so puts replace and removes hit, and probe chains run long.
+        for (int i = 0; i < 50_000; i++) {
+            long key = ((long) random.nextInt(4) << 32) | random.nextInt(2_000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (int section = 0; section < 4; section++) {
+            for (int slot = 0; slot < 2_000; slot++) {
+                long key = ((long) section << 32) | slot;
+                assertEquals(expected.get(key), map.get(key));
+            }
+        }
+    }
+}
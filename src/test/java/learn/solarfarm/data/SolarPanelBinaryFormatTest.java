@@ -0,0 +1,116 @@
+package learn.solarfarm.data;
+
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SolarPanel;
+import learn.solarfarm.models.SolarPanelKey;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SolarPanelBinaryFormatTest {
+    static final String SEED_FILE_PATH = "./data/solarfarm-seed.txt";
+
+    SolarPanelBinaryFormat format = new SolarPanelBinaryFormat();
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void shouldRoundTripThroughTextFormat() throws DataAccessException, IOException {
+        Path binaryPath = tempDir.resolve("solarfarm.bin");
+        Path textPath = tempDir.resolve("solarfarm.txt");
+
+        assertEquals(5, SolarPanelFileConverter.convert(new SolarPanelTextFormat(), format,
+                Paths.get(SEED_FILE_PATH), binaryPath));
+        assertEquals(5, SolarPanelFileConverter.convert(format, new SolarPanelTextFormat(),
+                binaryPath, textPath));
+
+        assertEquals(Files.readAllLines(Paths.get(SEED_FILE_PATH)), Files.readAllLines(textPath));
+    }
+
+    @Test
+    void shouldWriteFixedWidthRecords() throws DataAccessException, IOException {
+        Path binaryPath = tempDir.resolve("solarfarm.bin");
+        format.write(binaryPath, List.of(
+                new SolarPanel(1, "Flats", 1, 1, 2017, Material.A_SI, true),
+                new SolarPanel(2, "Flats", 2, 6, 2017, Material.CD_TE, false)));
+
+        // one header, one dictionary entry ("Flats"), two records
+        assertEquals(SolarPanelBinaryFormat.HEADER_SIZE + 2 + 5 + 2 * SolarPanelBinaryFormat.RECORD_SIZE,
+                Files.size(binaryPath));
+
+        List<SolarPanel> actual = format.read(binaryPath);
+        assertEquals(2, actual.size());
+        assertSame(actual.get(0).getSection(), actual.get(1).getSection());
+        assertEquals(Material.CD_TE, actual.get(1).getMaterial());
+        assertFalse(actual.get(1).isTracking());
+    }
+
+    @Test
+    void shouldNotReadARecordWithAnUnknownSectionOrMaterial() throws DataAccessException, IOException {
+        Path binaryPath = tempDir.resolve("solarfarm.bin");
+        format.write(binaryPath, List.of(new SolarPanel(1, "Flats", 1, 1, 2017, Material.A_SI, true)));
+        int record = SolarPanelBinaryFormat.HEADER_SIZE + 2 + 5;
+        byte[] valid = Files.readAllBytes(binaryPath);
+
+        byte[] bytes = valid.clone();
+        bytes[record + 5] = 1; // section index 1 of 1
+        Files.write(binaryPath, bytes);
+        assertThrows(DataAccessException.class, () -> format.read(binaryPath));
+
+        bytes = valid.clone();
+        bytes[record + 12] = 6;
+        Files.write(binaryPath, bytes);
+        assertThrows(DataAccessException.class, () -> format.read(binaryPath));
+
+        bytes = valid.clone();
+        bytes[record + 12] = -1;
+        Files.write(binaryPath, bytes);
+        assertThrows(DataAccessException.class, () -> format.read(binaryPath));
+    }
+
+    @Test
+    void shouldReadMissingFileAsEmpty() throws DataAccessException {
+        assertEquals(0, format.read(tempDir.resolve("missing.bin")).size());
+    }
+
+    @Test
+    void shouldWriteSectionNamesUpToAnUnsignedShortLong() throws DataAccessException, IOException {
+        Path binaryPath = tempDir.resolve("solarfarm.bin");
+        String longest = "é".repeat(SolarPanelBinaryFormat.MAX_SECTION_BYTES / 2) + "a";
+        format.write(binaryPath, List.of(new SolarPanel(1, longest, 1, 1, 2017, Material.A_SI, true)));
+        assertEquals(longest, format.read(binaryPath).get(0).getSection());
+
+        String tooLong = longest + "a";
+        byte[] before = Files.readAllBytes(binaryPath);
+        assertThrows(DataAccessException.class, () -> format.write(binaryPath,
+                List.of(new SolarPanel(1, tooLong, 1, 1, 2017, Material.A_SI, true))));
+        assertArrayEquals(before, Files.readAllBytes(binaryPath));
+    }
+
+    @Test
+    void shouldNotReadTextFile() {
+        assertThrows(DataAccessException.class, () -> format.read(Paths.get(SEED_FILE_PATH)));
+    }
+
+    @Test
+    void repositoryShouldUseBinaryFile() throws DataAccessException {
+        String binaryPath = tempDir.resolve("solarfarm.bin").toString();
+        SolarPanelFileRepository repository = new SolarPanelFileRepository(binaryPath, "binary", "single", false,
+                SolarPanelFileRepository.DEFAULT_COMPACTION_THRESHOLD, false, 0);
+
+        SolarPanel created = repository.create(new SolarPanel(0, "East Hill", 3, 4, 2015, Material.CIGS, true));
+        assertEquals(1, created.getId());
+
+        SolarPanelFileRepository restarted = new SolarPanelFileRepository(binaryPath, "binary", "single", false,
+                SolarPanelFileRepository.DEFAULT_COMPACTION_THRESHOLD, false, 0);
+        assertEquals(created, restarted.findByKey(new SolarPanelKey("east hill", 3, 4)));
+    }
+}
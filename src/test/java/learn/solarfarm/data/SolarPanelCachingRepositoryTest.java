@@ -0,0 +1,125 @@
+package learn.solarfarm.data;
+
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SolarPanel;
+import learn.solarfarm.models.SolarPanelKey;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SolarPanelCachingRepositoryTest {
+    static final String SEED_FILE_PATH = "./data/solarfarm-seed.txt";
+    static final String TEST_FILE_PATH = "./data/solarfarm-test.txt";
+
+    SolarPanelFileRepository fileRepository;
+    SolarPanelCachingRepository repository;
+
+    @BeforeEach
+    void setupTest() throws IOException {
+        Files.copy(Paths.get(SEED_FILE_PATH), Paths.get(TEST_FILE_PATH), StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(Paths.get(TEST_FILE_PATH + ".sections"));
+        fileRepository = new SolarPanelFileRepository(TEST_FILE_PATH);
+        repository = new SolarPanelCachingRepository(fileRepository, 2, 100, 60_000);
+    }
+
+    @AfterEach
+    void cleanUp() throws IOException {
+        Files.deleteIfExists(Paths.get(TEST_FILE_PATH + ".sections"));
+    }
+
+    @Test
+    void shouldServeRepeatedReadsFromTheCache() throws DataAccessException {
+        assertEquals(3, repository.findBySection("Flats").size());
+        assertEquals(3, repository.findBySection("FLATS").size());
+        assertNotNull(repository.findByKey(new SolarPanelKey("Flats", 1, 1)));
+        assertNotNull(repository.findByKey(new SolarPanelKey("flats", 1, 1)));
+        assertNull(repository.findByKey(new SolarPanelKey("Flats", 9, 9)));
+        assertNull(repository.findByKey(new SolarPanelKey("Flats", 9, 9)));
+
+        assertEquals(3, repository.getHitCount());
+        assertEquals(3, repository.getMissCount());
+    }
+
+    @Test
+    void shouldReturnCopies() throws DataAccessException {
+        repository.findByKey(new SolarPanelKey("Flats", 1, 1)).setYearInstalled(1900);
+        repository.findBySection("Flats").get(0).setYearInstalled(1900);
+
+        assertEquals(2017, repository.findByKey(new SolarPanelKey("Flats", 1, 1)).getYearInstalled());
+        assertEquals(2017, repository.findBySection("Flats").get(0).getYearInstalled());
+    }
+
+    @Test
+    void shouldInvalidateTheCreatedKeyAndSection() throws DataAccessException {
+        SolarPanelKey key = new SolarPanelKey("Flats", 9, 9);
+        assertNull(repository.findByKey(key));
+        assertEquals(3, repository.findBySection("Flats").size());
+        assertEquals(2, repository.findBySection("The Ridge").size());
+
+        repository.create(new SolarPanel(0, "Flats", 9, 9, 2020, Material.A_SI, false));
+
+        assertNotNull(repository.findByKey(key));
+        assertEquals(4, repository.findBySection("Flats").size());
+        // untouched sections stay cached
+        long hits = repository.getHitCount();
+        repository.findBySection("The Ridge");
+        assertEquals(hits + 1, repository.getHitCount());
+    }
+
+    @Test
+    void shouldInvalidateTheOldKeyAndSectionWhenAnUpdateMovesAPanel() throws DataAccessException {
+        SolarPanel solarPanel = repository.findByKey(new SolarPanelKey("Flats", 1, 1));
+        assertEquals(3, repository.findBySection("Flats").size());
+        assertEquals(0, repository.findBySection("East Hill").size());
+
+        solarPanel.setSection("East Hill");
+        assertTrue(repository.update(solarPanel));
+
+        assertNull(repository.findByKey(new SolarPanelKey("Flats", 1, 1)));
+        assertEquals(2, repository.findBySection("Flats").size());
+        assertEquals(1, repository.findBySection("East Hill").size());
+    }
+
+    @Test
+    void shouldInvalidateTheDeletedKey() throws DataAccessException {
+        SolarPanelKey key = new SolarPanelKey("Flats", 1, 1);
+        assertNotNull(repository.findByKey(key));
+
+        assertTrue(repository.deleteByKey(key));
+
+        assertNull(repository.findByKey(key));
+    }
+
+    @Test
+    void shouldEvictTheLeastRecentlyUsedKey() throws DataAccessException {
+        repository.findByKey(new SolarPanelKey("Flats", 1, 1));
+        repository.findByKey(new SolarPanelKey("Flats", 2, 6));
+        repository.findByKey(new SolarPanelKey("Flats", 1, 1));
+        repository.findByKey(new SolarPanelKey("Flats", 3, 7));
+
+        assertEquals(2, repository.getKeyCount());
+        assertEquals(1, repository.getEvictionCount());
+        long misses = repository.getMissCount();
+        repository.findByKey(new SolarPanelKey("Flats", 1, 1));
+        assertEquals(misses, repository.getMissCount());
+    }
+
+    @Test
+    void shouldExpireEntries() throws DataAccessException, InterruptedException {
+        repository = new SolarPanelCachingRepository(fileRepository, 10, 100, 1);
+        repository.findBySection("Flats");
+        Thread.sleep(5);
+        repository.findBySection("Flats");
+
+        assertEquals(2, repository.getMissCount());
+        assertEquals(1, repository.getEvictionCount());
+    }
+}
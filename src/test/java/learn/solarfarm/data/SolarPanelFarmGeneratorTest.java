@@ -0,0 +1,108 @@
+package learn.solarfarm.data;
+
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SolarPanel;
+import learn.solarfarm.models.SolarPanelKey;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SolarPanelFarmGeneratorTest {
+
+    @Test
+    void shouldGenerateTheSameFarmForTheSameSeed() {
+        assertEquals(generate(42), generate(42));
+        assertNotEquals(generate(42), generate(43));
+    }
+
+    @Test
+    void shouldFollowTheSettings() {
+        SolarPanelFarmGenerator generator = new SolarPanelFarmGenerator();
+        generator.setSections(3);
+        generator.setGrid(20, 10);
+        generator.setDensity(0.5);
+        generator.setYears(2010, 2012, 1.0);
+        generator.setMaterialWeight(Material.POLY_SI, 0);
+        ArrayList<SolarPanel> solarPanels = new ArrayList<>();
+
+        long count = generator.generate(solarPanels::add);
+
+        assertEquals(count, solarPanels.size());
+        // about half of 3 x 20 x 10 slots
+        assertTrue(count > 200 && count < 400, "count: " + count);
+        HashSet<SolarPanelKey> keys = new HashSet<>();
+        for (SolarPanel solarPanel : solarPanels) {
+            assertTrue(keys.add(solarPanel.getKey()));
+            assertTrue(solarPanel.getRow() >= 1 && solarPanel.getRow() <= 20);
+            assertTrue(solarPanel.getColumn() >= 1 && solarPanel.getColumn() <= 10);
+            assertTrue(solarPanel.getYearInstalled() >= 2010 && solarPanel.getYearInstalled() <= 2012);
+            assertNotEquals(Material.POLY_SI, solarPanel.getMaterial());
+        }
+        assertEquals("Section 3", solarPanels.get(solarPanels.size() - 1).getSection());
+    }
+
+    @Test
+    void shouldWriteATextFileAndASqlScript(@TempDir Path directory) throws DataAccessException, IOException {
+        SolarPanelFarmGenerator generator = new SolarPanelFarmGenerator();
+        generator.setSections(2);
+        generator.setGrid(30, 40);
+
+        Path text = directory.resolve("farm.txt");
+        assertEquals(2400, generator.writeText(text));
+        List<SolarPanel> read = new SolarPanelTextFormat().read(text);
+        assertEquals(2400, read.size());
+        assertEquals(2400, read.get(2399).getId());
+
+        Path sql = directory.resolve("farm.sql");
+        assertEquals(2400, generator.writeSql(sql));
+        String script = Files.readString(sql);
+        assertEquals(3, script.split("insert into solar_panel").length - 1);
+        assertTrue(script.startsWith("start transaction;"));
+        assertTrue(script.endsWith(";\ncommit;\n"));
+    }
+
+    @Test
+    void shouldInsertIntoTheEmbeddedDatabase() throws DataAccessException, SQLException {
+        SolarPanelFarmGenerator generator = new SolarPanelFarmGenerator();
+        generator.setSections(2);
+        generator.setGrid(100, 100);
+        generator.setDensity(0.6);
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:generator;MODE=MySQL;IGNORECASE=TRUE;DB_CLOSE_DELAY=-1", "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("embedded-db/schema.sql")).execute(dataSource);
+
+        long count;
+        try (Connection connection = dataSource.getConnection()) {
+            count = generator.insert(connection);
+        }
+
+        assertEquals(count, new JdbcTemplate(dataSource).queryForObject("select count(*) from solar_panel;", Long.class));
+        new JdbcTemplate(dataSource).execute("drop all objects;");
+    }
+
+    // SolarPanel.equals only compares keys, so compare every field through toString.
+    private List<String> generate(long seed) {
+        SolarPanelFarmGenerator generator = new SolarPanelFarmGenerator();
+        generator.setSeed(seed);
+        generator.setSections(2);
+        generator.setGrid(10, 10);
+        generator.setDensity(0.7);
+        ArrayList<String> result = new ArrayList<>();
+        generator.generate(solarPanel -> result.add(solarPanel.toString()));
+        return result;
+    }
+}
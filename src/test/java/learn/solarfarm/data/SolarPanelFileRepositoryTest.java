@@ -1,23 +1,39 @@
 package learn.solarfarm.data;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import learn.solarfarm.models.Material;
 import learn.solarfarm.models.SolarPanel;
 import learn.solarfarm.models.SolarPanelKey;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 class SolarPanelFileRepositoryTest {
     static final String SEED_FILE_PATH = "./data/solarfarm-seed.txt";
     static final String TEST_FILE_PATH = "./data/solarfarm-test.txt";
+    static final String TEST_JOURNAL_PATH = TEST_FILE_PATH + ".journal";
+    static final String TEST_COMPACTING_PATH = TEST_FILE_PATH + ".journal.compacting";
+    static final String TEST_LOCK_PATH = TEST_FILE_PATH + ".lock";
+    static final String TEST_SECTIONS_PATH = TEST_FILE_PATH + ".sections";
 
     SolarPanelFileRepository repository = new SolarPanelFileRepository(TEST_FILE_PATH);
 
@@ -27,6 +43,12 @@ class SolarPanelFileRepositoryTest {
         Path testPath = Paths.get(TEST_FILE_PATH);
 
         Files.copy(seedPath, testPath, StandardCopyOption.REPLACE_EXISTING);
+        deleteJournals();
+    }
+
+    @AfterEach
+    void cleanUp() throws IOException {
+        deleteJournals();
     }
 
     @Test
@@ -44,6 +66,23 @@ class SolarPanelFileRepositoryTest {
         assertEquals(0, actual.size());
     }
 
+    @Test
+    void findBySectionShouldPageByRowAndColumn() throws DataAccessException {
+        // Flats is 1-1, 2-6, 3-7
+        List<SolarPanel> page = repository.findBySection("Flats", 0, 0, 2);
+        assertEquals(2, page.size());
+        assertEquals(2, page.get(1).getRow());
+
+        page = repository.findBySection("Flats", 2, 6, 2);
+        assertEquals(1, page.size());
+        assertEquals(7, page.get(0).getColumn());
+
+        ArrayList<SolarPanel> streamed = new ArrayList<>();
+        repository.streamBySection("flats", streamed::add);
+        assertEquals(3, streamed.size());
+        assertEquals(1, streamed.get(0).getRow());
+    }
+
     @Test
     void findByKey() throws DataAccessException {
         // test that an existing solar panel can be retrieved
@@ -83,6 +122,53 @@ class SolarPanelFileRepositoryTest {
                 Material.A_SI, true);
     }
 
+    @Test
+    void createShouldRejectADuplicateKey() throws DataAccessException {
+        assertThrows(DuplicateSolarPanelKeyException.class, () -> repository.create(
+                new SolarPanel(0, "THE RIDGE", 1, 1, 2020, Material.A_SI, true)));
+        assertThrows(DuplicateSolarPanelKeyException.class, () -> repository.createAll(List.of(
+                new SolarPanel(0, "East Hill", 1, 1, 2020, Material.A_SI, true),
+                new SolarPanel(0, "east hill", 1, 1, 2020, Material.A_SI, true))));
+
+        SolarPanel solarPanel = repository.findByKey(new SolarPanelKey("The Ridge", 1, 1));
+        solarPanel.setColumn(2);
+        assertThrows(DuplicateSolarPanelKeyException.class, () -> repository.update(solarPanel));
+
+        assertEquals(5, repository.findBySection("The Ridge").size() + repository.findBySection("Flats").size());
+        assertEquals(0, repository.findBySection("East Hill").size());
+    }
+
+    @Test
+    void createAll() throws DataAccessException, IOException {
+        List<SolarPanel> actual = repository.createAll(List.of(
+                new SolarPanel(0, "East Hill", 1, 1, 2020, Material.A_SI, true),
+                new SolarPanel(0, "East Hill", 1, 2, 2020, Material.A_SI, true),
+                new SolarPanel(0, "Flats", 9, 9, 2020, Material.CD_TE, false)));
+
+        assertEquals(List.of(6, 7, 8), List.of(actual.get(0).getId(), actual.get(1).getId(), actual.get(2).getId()));
+        assertEquals(2, repository.findBySection("East Hill").size());
+        assertEquals(1, repository.findByKeys(List.of(new SolarPanelKey("flats", 9, 9),
+                new SolarPanelKey("Flats", 10, 10))).size());
+        assertEquals(8, Files.readAllLines(Paths.get(TEST_FILE_PATH)).size());
+    }
+
+    @Test
+    void sectionDictionaryShouldListEachSectionOnce() throws DataAccessException, IOException {
+        // loading writes the sections the data file already has
+        repository.findBySection("Flats");
+        List<String> sections = Files.readAllLines(Paths.get(TEST_SECTIONS_PATH));
+        assertEquals(2, sections.size());
+
+        repository.create(new SolarPanel(0, "East Hill", 1, 1, 2020, Material.A_SI, true));
+        repository.create(new SolarPanel(0, "EAST HILL", 1, 2, 2020, Material.A_SI, true));
+        sections = Files.readAllLines(Paths.get(TEST_SECTIONS_PATH));
+        assertEquals(3, sections.size());
+        assertEquals("East Hill", sections.get(2));
+
+        SolarPanelSectionDictionary dictionary = new SolarPanelSectionDictionary(TEST_FILE_PATH);
+        assertEquals(sections, dictionary.load());
+    }
+
     @Test
     void update() throws DataAccessException {
         SolarPanel solarPanel = repository.findByKey(new SolarPanelKey("The Ridge", 1, 1));
@@ -108,6 +194,286 @@ class SolarPanelFileRepositoryTest {
         assertEquals(count - 1, repository.findBySection("The Ridge").size());
     }
 
+    @Test
+    void readsShouldBeServedFromMemory() throws DataAccessException, IOException {
+        assertEquals(3, repository.findBySection("Flats").size());
+
+        // once loaded, reads don't go back to the file
+        Files.delete(Paths.get(TEST_FILE_PATH));
+        assertEquals(3, repository.findBySection("flats").size());
+        assertNotNull(repository.findByKey(new SolarPanelKey("FLATS", 2, 6)));
+
+        // changing a returned panel doesn't change the repository
+        SolarPanel solarPanel = repository.findByKey(new SolarPanelKey("Flats", 2, 6));
+        solarPanel.setRow(20);
+        assertNotNull(repository.findByKey(new SolarPanelKey("Flats", 2, 6)));
+        assertNull(repository.findByKey(new SolarPanelKey("Flats", 20, 6)));
+    }
+
+    @Test
+    void concurrentCreatesShouldAllBeWritten() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<SolarPanel>> futures = new ArrayList<>();
+        for (int i = 1; i <= 40; i++) {
+            SolarPanel solarPanel = new SolarPanel(0, "East Hill", i, 1, 2020, Material.CIGS, false);
+            futures.add(executor.submit(() -> repository.create(solarPanel)));
+        }
+        for (Future<SolarPanel> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        SolarPanelFileRepository restarted = new SolarPanelFileRepository(TEST_FILE_PATH);
+        List<SolarPanel> created = restarted.findBySection("East Hill");
+        assertEquals(40, created.size());
+        assertEquals(40, created.stream().mapToInt(SolarPanel::getId).distinct().count());
+
+        // every write went through a temporary file that was renamed into place
+        try (Stream<Path> files = Files.list(Paths.get(TEST_FILE_PATH).getParent())) {
+            assertEquals(0, files.filter(path -> path.toString().endsWith(".tmp")).count());
+        }
+    }
+
+    @Test
+    void groupCommitShouldMakeEveryAcknowledgedWriteDurable() throws Exception {
+        SolarPanelFileRepository journaled = new SolarPanelFileRepository(TEST_FILE_PATH, "text", "single", true,
+                SolarPanelFileRepository.DEFAULT_COMPACTION_THRESHOLD, false, 5);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int i = 1; i <= 40; i++) {
+            SolarPanel solarPanel = new SolarPanel(0, "East Hill", i, 1, 2020, Material.CIGS, false);
+            futures.add(executor.submit(() -> journaled.create(solarPanel).getId() > 0));
+        }
+        futures.add(executor.submit(() -> journaled.deleteByKey(new SolarPanelKey("Flats", 1, 1))));
+        for (Future<Boolean> future : futures) {
+            assertTrue(future.get());
+        }
+        executor.shutdown();
+
+        // every acknowledged write is in the journal
+        assertEquals(41, Files.readAllLines(Paths.get(TEST_JOURNAL_PATH)).size());
+        SolarPanelFileRepository restarted = new SolarPanelFileRepository(TEST_FILE_PATH, "text", "single", true,
+                SolarPanelFileRepository.DEFAULT_COMPACTION_THRESHOLD, false, 0);
+        assertEquals(40, restarted.findBySection("East Hill").size());
+        assertEquals(2, restarted.findBySection("Flats").size());
+    }
+
+    @Test
+    void sharedRepositoriesShouldSeeEachOthersWrites() throws DataAccessException, IOException {
+        SolarPanelFileRepository first = new SolarPanelFileRepository(TEST_FILE_PATH, "text", "single", false,
+                SolarPanelFileRepository.DEFAULT_COMPACTION_THRESHOLD, true, 0);
+        SolarPanelFileRepository second = new SolarPanelFileRepository(TEST_FILE_PATH, "text", "single", false,
+                SolarPanelFileRepository.DEFAULT_COMPACTION_THRESHOLD, true, 0);
+        try {
+            assertEquals(3, second.findBySection("Flats").size());
+
+            first.create(new SolarPanel(0, "Flats", 9, 9, 2020, Material.MONO_SI, true));
+            assertEquals(4, second.findBySection("Flats").size());
+
+            // the second repository reloads before writing, so the first repository's panel isn't lost
+            second.create(new SolarPanel(0, "Flats", 10, 10, 2020, Material.MONO_SI, true));
+            assertEquals(5, first.findBySection("Flats").size());
+            assertEquals(5, new SolarPanelFileRepository(TEST_FILE_PATH).findBySection("Flats").size());
+        } finally {
+            Files.deleteIfExists(Paths.get(TEST_LOCK_PATH));
+        }
+    }
+
+    @Test
+    void shardedLayoutShouldKeepEachSectionInItsOwnFile(@TempDir Path farmDirectory) throws DataAccessException {
+        SolarPanelFileRepository sharded = new SolarPanelFileRepository(farmDirectory.toString(), "text", "sharded",
+                false, SolarPanelFileRepository.DEFAULT_COMPACTION_THRESHOLD, false, 0);
+
+        sharded.create(new SolarPanel(0, "The Ridge", 1, 1, 2020, Material.POLY_SI, true));
+        sharded.create(new SolarPanel(0, "Flats", 1, 1, 2017, Material.A_SI, true));
+        SolarPanel moving = sharded.create(new SolarPanel(0, "Flats", 2, 2, 2017, Material.A_SI, true));
+        assertTrue(Files.exists(farmDirectory.resolve("the+ridge.txt")));
+        assertTrue(Files.exists(farmDirectory.resolve("flats.txt")));
+
+        // moving a panel rewrites both sections
+        moving.setSection("East Hill");
+        assertTrue(sharded.update(moving));
+        assertTrue(Files.exists(farmDirectory.resolve("east+hill.txt")));
+
+        // removing the last panel in a section removes its file
+        assertTrue(sharded.deleteByKey(new SolarPanelKey("THE RIDGE", 1, 1)));
+        assertFalse(Files.exists(farmDirectory.resolve("the+ridge.txt")));
+
+        SolarPanelFileRepository restarted = new SolarPanelFileRepository(farmDirectory.toString(), "text", "sharded",
+                false, SolarPanelFileRepository.DEFAULT_COMPACTION_THRESHOLD, false, 0);
+        assertEquals(0, restarted.findBySection("The Ridge").size());
+        assertEquals(1, restarted.findBySection("Flats").size());
+        assertSolarPanelFieldValues(restarted.findByKey(new SolarPanelKey("East Hill", 2, 2)),
+                3, "East Hill", 2, 2, 2017, Material.A_SI, true);
+        assertEquals(4, restarted.create(new SolarPanel(0, "Flats", 3, 3, 2017, Material.A_SI, true)).getId());
+    }
+
+    @Test
+    void shardedLayoutShouldFinishMovesInterruptedByACrash(@TempDir Path directory) throws Exception {
+        Path farmDirectory = directory.resolve("farm");
+        Path movesJournal = directory.resolve("farm.moves.journal");
+        Files.createDirectories(farmDirectory);
+        // Panel 3 moved from Flats to East Hill: East Hill was written, Flats wasn't.
+        // Panel 4 moved from Flats to The Ridge: Flats was written, The Ridge wasn't.
+        Files.writeString(farmDirectory.resolve("flats.txt"), "3~Flats~1~1~2017~A_SI~true\n");
+        Files.writeString(farmDirectory.resolve("east+hill.txt"), "3~East Hill~2~2~2017~A_SI~true\n");
+        Files.writeString(movesJournal, "U~3~East Hill~2~2~2017~A_SI~true\nU~4~The Ridge~5~5~2019~CIGS~false\n");
+
+        SolarPanelFileRepository sharded = new SolarPanelFileRepository(farmDirectory.toString(), "text", "sharded",
+                false, SolarPanelFileRepository.DEFAULT_COMPACTION_THRESHOLD, false, 0);
+        assertEquals(0, sharded.findBySection("Flats").size());
+        assertEquals(3, sharded.findByKey(new SolarPanelKey("East Hill", 2, 2)).getId());
+        assertEquals(4, sharded.findByKey(new SolarPanelKey("The Ridge", 5, 5)).getId());
+        assertFalse(Files.exists(farmDirectory.resolve("flats.txt")));
+        assertTrue(Files.exists(farmDirectory.resolve("the+ridge.txt")));
+        assertFalse(Files.exists(movesJournal));
+
+        // A move that finishes leaves no journal behind.
+        SolarPanel moving = sharded.findByKey(new SolarPanelKey("The Ridge", 5, 5));
+        moving.setSection("Flats");
+        assertTrue(sharded.update(moving));
+        assertFalse(Files.exists(movesJournal));
+
+        SolarPanelFileRepository restarted = new SolarPanelFileRepository(farmDirectory.toString(), "text", "sharded",
+                false, SolarPanelFileRepository.DEFAULT_COMPACTION_THRESHOLD, false, 0);
+        assertEquals(2, restarted.findAllKeys().size());
+        assertEquals(4, restarted.findByKey(new SolarPanelKey("Flats", 5, 5)).getId());
+    }
+
+    @Test
+    void journalShouldSurviveRestart() throws DataAccessException, IOException {
+        SolarPanelFileRepository journaled = new SolarPanelFileRepository(TEST_FILE_PATH, "text", "single", true,
+                SolarPanelFileRepository.DEFAULT_COMPACTION_THRESHOLD, false, 0);
+
+        SolarPanel solarPanel = new SolarPanel(0, "East Hill", 4, 4, 2019, Material.CD_TE, false);
+        journaled.create(solarPanel);
+        SolarPanel flats = journaled.findByKey(new SolarPanelKey("Flats", 1, 1));
+        flats.setRow(9);
+        assertTrue(journaled.update(flats));
+        assertTrue(journaled.deleteByKey(new SolarPanelKey("The Ridge", 1, 2)));
+
+        // mutations go to the journal, the data file is untouched
+        assertEquals(Files.readAllLines(Paths.get(SEED_FILE_PATH)), Files.readAllLines(Paths.get(TEST_FILE_PATH)));
+        assertEquals(3, Files.readAllLines(Paths.get(TEST_JOURNAL_PATH)).size());
+
+        // a new repository rebuilds the same state from the data file and the journal
+        SolarPanelFileRepository restarted = new SolarPanelFileRepository(TEST_FILE_PATH, "text", "single", true,
+                SolarPanelFileRepository.DEFAULT_COMPACTION_THRESHOLD, false, 0);
+        assertSolarPanelFieldValues(restarted.findByKey(new SolarPanelKey("East Hill", 4, 4)),
+                6, "East Hill", 4, 4, 2019, Material.CD_TE, false);
+        assertNotNull(restarted.findByKey(new SolarPanelKey("Flats", 9, 1)));
+        assertNull(restarted.findByKey(new SolarPanelKey("Flats", 1, 1)));
+        assertEquals(1, restarted.findBySection("The Ridge").size());
+    }
+
+    @Test
+    void journalShouldCompactIntoDataFile() throws DataAccessException, InterruptedException {
+        SolarPanelFileRepository journaled = new SolarPanelFileRepository(TEST_FILE_PATH, "text", "single", true, 2, false, 0);
+
+        assertTrue(journaled.deleteByKey(new SolarPanelKey("Flats", 1, 1)));
+        assertTrue(journaled.deleteByKey(new SolarPanelKey("Flats", 2, 6)));
+
+        // compaction runs in the background
+        for (int i = 0; i < 100 && (Files.exists(Paths.get(TEST_JOURNAL_PATH))
+                || Files.exists(Paths.get(TEST_COMPACTING_PATH))); i++) {
+            Thread.sleep(50);
+        }
+        assertFalse(Files.exists(Paths.get(TEST_COMPACTING_PATH)));
+        assertFalse(Files.exists(Paths.get(TEST_JOURNAL_PATH)));
+
+        // the data file alone now holds the state
+        assertEquals(1, repository.findBySection("Flats").size());
+        assertEquals(1, journaled.findBySection("Flats").size());
+    }
+
+    @Test
+    void journalShouldRollBackACompactionInterruptedBeforeItCommitted(@TempDir Path directory) throws Exception {
+        Path farm = directory.resolve("farm.txt");
+        Path compacted = directory.resolve("farm.txt.compacted");
+        Files.copy(Paths.get(SEED_FILE_PATH), farm);
+        // Panels 1 and 2 swapped places through a spare slot. The new snapshot was written,
+        // but the rotated journal wasn't discarded yet.
+        Files.writeString(directory.resolve("farm.txt.journal.compacting"),
+                "U~1~The Ridge~9~9~2020~POLY_SI~true\n"
+                        + "U~2~The Ridge~1~1~2019~MONO_SI~true\n"
+                        + "U~1~The Ridge~1~2~2020~POLY_SI~true\n");
+        Files.writeString(compacted, "1~The Ridge~1~2~2020~POLY_SI~true\n"
+                + "2~The Ridge~1~1~2019~MONO_SI~true\n");
+        Files.writeString(directory.resolve("farm.txt.journal"), "D~5\n");
+
+        SolarPanelFileRepository journaled = new SolarPanelFileRepository(farm.toString(), "text", "single", true,
+                SolarPanelFileRepository.DEFAULT_COMPACTION_THRESHOLD, false, 0);
+
+        assertEquals(1, journaled.findByKey(new SolarPanelKey("The Ridge", 1, 2)).getId());
+        assertEquals(2, journaled.findByKey(new SolarPanelKey("The Ridge", 1, 1)).getId());
+        assertNull(journaled.findByKey(new SolarPanelKey("The Ridge", 9, 9)));
+        assertEquals(2, journaled.findBySection("Flats").size());
+
+        // The compaction is run again, from the old snapshot.
+        for (int i = 0; i < 100 && Files.exists(directory.resolve("farm.txt.journal.compacting")); i++) {
+            Thread.sleep(50);
+        }
+        assertFalse(Files.exists(compacted));
+        SolarPanelFileRepository plain = new SolarPanelFileRepository(farm.toString());
+        assertEquals(4, plain.findAllKeys().size());
+        assertEquals(1, plain.findByKey(new SolarPanelKey("The Ridge", 1, 2)).getId());
+    }
+
+    @Test
+    void journalShouldInstallACompactionInterruptedAfterItCommitted(@TempDir Path directory) throws Exception {
+        Path farm = directory.resolve("farm.txt");
+        Path compacted = directory.resolve("farm.txt.compacted");
+        Files.copy(Paths.get(SEED_FILE_PATH), farm);
+        // The rotated journal was discarded, but the new snapshot wasn't renamed into place.
+        Files.writeString(compacted, "1~The Ridge~1~2~2020~POLY_SI~true\n"
+                + "2~The Ridge~1~1~2019~MONO_SI~true\n"
+                + "5~Flats~3~7~2000~CIGS~false\n");
+        Files.writeString(directory.resolve("farm.txt.journal"), "D~5\n");
+
+        SolarPanelFileRepository journaled = new SolarPanelFileRepository(farm.toString(), "text", "single", true,
+                SolarPanelFileRepository.DEFAULT_COMPACTION_THRESHOLD, false, 0);
+
+        assertEquals(1, journaled.findByKey(new SolarPanelKey("The Ridge", 1, 2)).getId());
+        assertEquals(2, journaled.findByKey(new SolarPanelKey("The Ridge", 1, 1)).getId());
+        assertEquals(0, journaled.findBySection("Flats").size());
+        assertFalse(Files.exists(compacted));
+        assertEquals(3, Files.readAllLines(farm).size());
+    }
+
+    @Test
+    void shouldRecordFlightRecorderEvents(@TempDir Path directory) throws DataAccessException, IOException {
+        Path recordingPath = directory.resolve("test.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(SolarPanelDataAccessEvent.class).withThreshold(Duration.ZERO);
+            recording.start();
+            repository.findBySection("The Ridge");
+            repository.deleteByKey(new SolarPanelKey("Flats", 1, 1));
+            recording.stop();
+            recording.dump(recordingPath);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recordingPath);
+        List<String> operations = events.stream()
+                .map(event -> event.getString("operation"))
+                .collect(Collectors.toList());
+        assertEquals(List.of("load", "findBySection", "writeFile", "deleteByKey"), operations);
+
+        RecordedEvent load = events.get(0);
+        assertEquals(Files.size(Paths.get(SEED_FILE_PATH)), load.getLong("bytesRead"));
+        assertEquals(5, load.getInt("rowCount"));
+        assertEquals("The Ridge", events.get(1).getString("section"));
+        assertEquals(2, events.get(1).getInt("rowCount"));
+        assertEquals(Files.size(Paths.get(TEST_FILE_PATH)), events.get(2).getLong("bytesWritten"));
+        assertEquals(1, events.get(3).getInt("rowCount"));
+    }
+
+    private void deleteJournals() throws IOException {
+        Files.deleteIfExists(Paths.get(TEST_JOURNAL_PATH));
+        Files.deleteIfExists(Paths.get(TEST_COMPACTING_PATH));
+        Files.deleteIfExists(Paths.get(TEST_SECTIONS_PATH));
+    }
+
     private void assertSolarPanelFieldValues(
             SolarPanel solarPanel, int id, String section, int row, int column, int yearInstalled,
             Material material, boolean isTracking) {
@@ -9,7 +9,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.jdbc.core.JdbcTemplate;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -106,4 +108,104 @@ class SolarPanelJdbcTemplateRepositoryTest {
         assertFalse(repository.deleteByKey(new SolarPanelKey("Missing", 1, 1)));
     }
 
-}
\ No newline at end of file
+    @Test
+    void shouldCreateAllWithGeneratedIdsInOrder() throws DataAccessException {
+        List<SolarPanel> solarPanels = List.of(
+                new SolarPanel(0, "Batch", 1, 1, 2018, Material.CIGS, true),
+                new SolarPanel(0, "Batch", 1, 2, 2019, Material.CD_TE, false),
+                new SolarPanel(0, "Batch", 2, 1, 2020, Material.MONO_SI, true));
+
+        List<SolarPanel> actual = repository.createAll(solarPanels);
+
+        assertEquals(3, actual.size());
+        assertEquals(List.of(6, 7, 8), actual.stream().map(SolarPanel::getId).collect(Collectors.toList()));
+        for (SolarPanel solarPanel : actual) {
+            assertEquals(solarPanel, repository.findByKey(solarPanel.getKey()));
+        }
+    }
+
+    @Test
+    void shouldRollBackCreateAllWhenAnyKeyIsDuplicate() {
+        List<SolarPanel> solarPanels = List.of(
+                new SolarPanel(0, "Batch", 1, 1, 2018, Material.CIGS, true),
+                new SolarPanel(0, "The Ridge", 1, 1, 2018, Material.CIGS, true),
+                new SolarPanel(0, "Batch", 1, 2, 2018, Material.CIGS, true));
+
+        assertThrows(DuplicateSolarPanelKeyException.class, () -> repository.createAll(solarPanels));
+
+        assertEquals(5, template.queryForObject("select count(*) from solar_panel;", Integer.class));
+        assertEquals(0, template.queryForObject("select count(*) from solar_panel where section = 'Batch';", Integer.class));
+    }
+
+    @Test
+    void shouldFindSectionPagesAfterKey() throws DataAccessException {
+        List<SolarPanel> first = repository.findBySection("flats", 0, 0, 2);
+        assertEquals(List.of("1-1", "2-6"), rowColumns(first));
+
+        List<SolarPanel> second = repository.findBySection("Flats", 2, 6, 2);
+        assertEquals(List.of("3-7"), rowColumns(second));
+
+        assertEquals(List.of("2-6", "3-7"), rowColumns(repository.findBySection("Flats", 1, 1, 10)));
+        assertEquals(0, repository.findBySection("Flats", 3, 7, 10).size());
+    }
+
+    @Test
+    void shouldStreamSectionInRowColumnOrder() throws DataAccessException {
+        repository.create(new SolarPanel(0, "Flats", 1, 9, 2015, Material.CIGS, false));
+        ArrayList<SolarPanel> streamed = new ArrayList<>();
+
+        repository.streamBySection("Flats", streamed::add);
+
+        assertEquals(List.of("1-1", "1-9", "2-6", "3-7"), rowColumns(streamed));
+    }
+
+    @Test
+    void shouldNotCreateDuplicateKey() {
+        SolarPanel solarPanel = new SolarPanel(0, "the ridge", 1, 1, 2020, Material.POLY_SI, true);
+
+        assertThrows(DuplicateSolarPanelKeyException.class, () -> repository.create(solarPanel));
+    }
+
+    @Test
+    void shouldNotUpdateToDuplicateKey() throws DataAccessException {
+        SolarPanel solarPanel = new SolarPanel(3, "The Ridge", 1, 2, 2017, Material.A_SI, true);
+
+        assertThrows(DuplicateSolarPanelKeyException.class, () -> repository.update(solarPanel));
+        assertEquals("Flats", repository.findByKey(new SolarPanelKey("Flats", 1, 1)).getSection());
+    }
+
+    @Test
+    void shouldFindAllKeysById() throws DataAccessException {
+        Map<Integer, SolarPanelKey> keys = repository.findAllKeys();
+
+        assertEquals(5, keys.size());
+        assertEquals(new SolarPanelKey("The Ridge", 1, 1), keys.get(1));
+        assertEquals(new SolarPanelKey("Flats", 3, 7), keys.get(5));
+    }
+
+    @Test
+    void shouldFindById() throws DataAccessException {
+        assertEquals(new SolarPanelKey("Flats", 2, 6), repository.findById(4).getKey());
+        assertNull(repository.findById(99));
+    }
+
+    @Test
+    void shouldFindByExactKeys() throws DataAccessException {
+        List<SolarPanel> actual = repository.findByKeys(List.of(
+                new SolarPanelKey("flats", 2, 6),
+                new SolarPanelKey("FLATS", 2, 6),
+                new SolarPanelKey("Flats", 6, 2),
+                new SolarPanelKey("The Ridge", 1, 1),
+                new SolarPanelKey("Nowhere", 1, 1)));
+
+        assertEquals(List.of(1, 4), actual.stream().map(SolarPanel::getId).sorted()
+                .collect(Collectors.toList()));
+        assertEquals(0, repository.findByKeys(List.of()).size());
+    }
+
+    private List<String> rowColumns(List<SolarPanel> solarPanels) {
+        return solarPanels.stream()
+                .map(solarPanel -> solarPanel.getRow() + "-" + solarPanel.getColumn())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,67 @@
+package learn.solarfarm.data;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SolarPanel;
+import learn.solarfarm.models.SolarPanelKey;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SolarPanelMeteredRepositoryTest {
+
+    SimpleMeterRegistry registry;
+    SolarPanelMeteredRepository repository;
+
+    @BeforeEach
+    void setup() {
+        registry = new SimpleMeterRegistry();
+        repository = new SolarPanelMeteredRepository(new SolarPanelRepositoryDouble(), registry, 1);
+    }
+
+    @Test
+    void shouldTimeEachMethodByImplementation() throws DataAccessException {
+        repository.findByKey(new SolarPanelKey("Section One", 1, 1));
+        repository.findByKey(new SolarPanelKey("Section One", 1, 2));
+        repository.findBySection("Section One");
+
+        assertEquals(2, timer("findByKey", "success").count());
+        assertEquals(1, timer("findBySection", "success").count());
+        assertEquals(0, timer("findBySectionPage", "success").count());
+        assertEquals(0, timer("findByKey", "error").count());
+    }
+
+    @Test
+    void shouldTimeErrorsSeparately() {
+        SolarPanel duplicate = new SolarPanel(0, "Section One", 1, 1, 2020, Material.POLY_SI, true);
+
+        assertThrows(DuplicateSolarPanelKeyException.class, () -> repository.create(duplicate));
+
+        assertEquals(1, timer("create", "error").count());
+        assertEquals(0, timer("create", "success").count());
+    }
+
+    @Test
+    void shouldCountEveryFindByKeyButTimeASample() throws DataAccessException {
+        registry = new SimpleMeterRegistry();
+        repository = new SolarPanelMeteredRepository(new SolarPanelRepositoryDouble(), registry, 1 << 30);
+
+        for (int i = 0; i < 100; i++) {
+            repository.findByKey(new SolarPanelKey("Section One", 1, 1));
+        }
+
+        assertEquals(100, registry.get(SolarPanelMeteredRepository.CALLS_NAME)
+                .tag("method", "findByKey").tag("outcome", "success").functionCounter().count());
+        assertTrue(timer("findByKey", "success").count() < 100);
+    }
+
+    private Timer timer(String method, String outcome) {
+        return registry.get(SolarPanelMeteredRepository.TIMER_NAME)
+                .tag("repository", "SolarPanelRepositoryDouble")
+                .tag("method", method)
+                .tag("outcome", outcome)
+                .timer();
+    }
+}
@@ -5,7 +5,13 @@ import learn.solarfarm.models.SolarPanel;
 import learn.solarfarm.models.SolarPanelKey;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 public class SolarPanelRepositoryDouble implements SolarPanelRepository {
     private ArrayList<SolarPanel> solarPanels = new ArrayList<>();
@@ -27,6 +33,23 @@ public class SolarPanelRepositoryDouble implements SolarPanelRepository {
         return result;
     }
 
+    @Override
+    public List<SolarPanel> findBySection(String section, int afterRow, int afterColumn, int limit) throws DataAccessException {
+        ArrayList<SolarPanel> result = new ArrayList<>();
+        for (SolarPanel sp : findBySection(section)) {
+            if (sp.getRow() > afterRow || (sp.getRow() == afterRow && sp.getColumn() > afterColumn)) {
+                result.add(sp);
+            }
+        }
+        result.sort(Comparator.comparingInt(SolarPanel::getRow).thenComparingInt(SolarPanel::getColumn));
+        return result.subList(0, Math.min(limit, result.size()));
+    }
+
+    @Override
+    public void streamBySection(String section, Consumer<SolarPanel> consumer) throws DataAccessException {
+        findBySection(section, 0, 0, Integer.MAX_VALUE).forEach(consumer);
+    }
+
     @Override
     public SolarPanel findByKey(SolarPanelKey key) throws DataAccessException {
         for (SolarPanel sp : solarPanels) {
@@ -37,11 +60,57 @@ public class SolarPanelRepositoryDouble implements SolarPanelRepository {
         return null;
     }
 
+    @Override
+    public SolarPanel findById(int id) throws DataAccessException {
+        for (SolarPanel sp : solarPanels) {
+            if (sp.getId() == id) {
+                return sp;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Map<Integer, SolarPanelKey> findAllKeys() throws DataAccessException {
+        HashMap<Integer, SolarPanelKey> result = new HashMap<>();
+        for (SolarPanel sp : solarPanels) {
+            result.put(sp.getId(), sp.getKey());
+        }
+        return result;
+    }
+
+    @Override
+    public List<SolarPanel> findByKeys(Collection<SolarPanelKey> keys) throws DataAccessException {
+        ArrayList<SolarPanel> result = new ArrayList<>();
+        for (SolarPanelKey key : keys) {
+            SolarPanel sp = findByKey(key);
+            if (sp != null) {
+                result.add(sp);
+            }
+        }
+        return result;
+    }
+
     @Override
     public SolarPanel create(SolarPanel solarPanel) throws DataAccessException {
+        if (findByKey(solarPanel.getKey()) != null) {
+            throw new DuplicateSolarPanelKeyException("duplicate");
+        }
         return solarPanel;
     }
 
+    @Override
+    public List<SolarPanel> createAll(List<SolarPanel> solarPanels) throws DataAccessException {
+        if (!findByKeys(solarPanels.stream().map(SolarPanel::getKey).collect(Collectors.toList())).isEmpty()) {
+            throw new DuplicateSolarPanelKeyException("duplicate");
+        }
+        int nextId = this.solarPanels.size() + 1;
+        for (SolarPanel sp : solarPanels) {
+            sp.setId(nextId++);
+        }
+        return solarPanels;
+    }
+
     @Override
     public boolean update(SolarPanel solarPanel) throws DataAccessException {
         SolarPanel existingSolarPanel = null;
@@ -50,6 +119,10 @@ public class SolarPanelRepositoryDouble implements SolarPanelRepository {
                 existingSolarPanel = sp;
             }
         }
+        SolarPanel other = findByKey(solarPanel.getKey());
+        if (existingSolarPanel != null && other != null && other.getId() != solarPanel.getId()) {
+            throw new DuplicateSolarPanelKeyException("duplicate");
+        }
         return existingSolarPanel != null;
     }
 
@@ -0,0 +1,58 @@
+package learn.solarfarm.data;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+class SolarPanelSlowQueryLogTest {
+
+    static final String SQL = "select solar_panel_id from solar_panel where section = ? and `row` = ?;";
+
+    @Autowired
+    JdbcTemplate template;
+
+    BlockingQueue<String> entries = new ArrayBlockingQueue<>(10);
+
+    @Test
+    void shouldLogSlowQueryWithPlan() throws InterruptedException {
+        SolarPanelSlowQueryLog log = new SolarPanelSlowQueryLog(template, 0, true, entries::add);
+
+        log.record(SQL, System.nanoTime(), 2, "The Ridge", 1);
+
+        String entry = entries.poll(5, TimeUnit.SECONDS);
+        assertNotNull(entry);
+        assertTrue(entry.contains(SQL));
+        assertTrue(entry.contains("2 rows"));
+        assertTrue(entry.contains("[The Ridge, 1]"));
+        assertTrue(entry.contains("EXPLAIN:"));
+        assertFalse(entry.contains("EXPLAIN failed"));
+    }
+
+    @Test
+    void shouldExplainStatementOnceAMinute() throws InterruptedException {
+        SolarPanelSlowQueryLog log = new SolarPanelSlowQueryLog(template, 0, true, entries::add);
+
+        log.record(SQL, System.nanoTime(), 2, "The Ridge", 1);
+        log.record(SQL, System.nanoTime(), 2, "The Ridge", 2);
+
+        assertTrue(entries.poll(5, TimeUnit.SECONDS).contains("EXPLAIN:"));
+        assertFalse(entries.poll(5, TimeUnit.SECONDS).contains("EXPLAIN:"));
+    }
+
+    @Test
+    void shouldNotLogFastQuery() throws InterruptedException {
+        SolarPanelSlowQueryLog log = new SolarPanelSlowQueryLog(template, 60_000, true, entries::add);
+
+        log.record(SQL, System.nanoTime(), 2, "The Ridge", 1);
+
+        assertNull(entries.poll(200, TimeUnit.MILLISECONDS));
+    }
+}
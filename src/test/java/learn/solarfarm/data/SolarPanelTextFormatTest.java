@@ -0,0 +1,75 @@
+package learn.solarfarm.data;
+
+import learn.solarfarm.models.Material;
+import learn.solarfarm.models.SolarPanel;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SolarPanelTextFormatTest {
+
+    SolarPanelTextFormat format = new SolarPanelTextFormat();
+
+    @Test
+    void shouldReadLinesAndSkipBlankLines() throws IOException, DataAccessException {
+        List<SolarPanel> actual = read("1~Flats~1~1~2017~A_SI~true\r\n\n   \n2~Flats~2~6~2017~CD_TE~false");
+
+        assertEquals(2, actual.size());
+        assertEquals(new SolarPanel(1, "Flats", 1, 1, 2017, Material.A_SI, true), actual.get(0));
+        assertEquals(Material.CD_TE, actual.get(1).getMaterial());
+        assertFalse(actual.get(1).isTracking());
+        // Consecutive lines in the same section share one String.
+        assertSame(actual.get(0).getSection(), actual.get(1).getSection());
+    }
+
+    @Test
+    void shouldReadLinesLongerThanTheBuffer() throws IOException, DataAccessException {
+        String section = "S".repeat(100_000);
+        List<SolarPanel> actual = read("1~" + section + "~1~1~2017~A_SI~true\n");
+
+        assertEquals(1, actual.size());
+        assertEquals(section, actual.get(0).getSection());
+    }
+
+    @Test
+    void shouldReportMalformedLineNumbers() {
+        assertMalformed("1~Flats~1~1~2017~A_SI~true\n2~Flats~2~6~2017~CD_TE\n", "line 2");
+        assertMalformed("\n\n1~Flats~one~1~2017~A_SI~true\n", "line 3");
+        assertMalformed("1~Flats~1~1~2017~PLASTIC~true\n", "line 1");
+        assertMalformed("1~Flats~1~1~2017~A_SI~yes\n", "line 1");
+        assertMalformed("99999999999~Flats~1~1~2017~A_SI~true\n", "line 1");
+        assertMalformed("1~Flats~1~1~2017~A_SI~true~extra\n", "line 1");
+    }
+
+    @Test
+    void shouldWriteWhatItReads() throws IOException, DataAccessException {
+        List<SolarPanel> solarPanels = List.of(
+                new SolarPanel(1, "Fl~ats\n", 1, 1, 2017, Material.A_SI, true),
+                new SolarPanel(-2, "Flats", 2, 6, 2017, Material.CD_TE, false));
+        StringWriter writer = new StringWriter();
+        format.write(writer, solarPanels);
+
+        List<SolarPanel> actual = read(writer.toString());
+
+        assertEquals(2, actual.size());
+        assertEquals("Flats", actual.get(0).getSection());
+        assertEquals(solarPanels.get(1), actual.get(1));
+    }
+
+    private List<SolarPanel> read(String contents) throws IOException, DataAccessException {
+        ArrayList<SolarPanel> result = new ArrayList<>();
+        format.read(new StringReader(contents), "test", result);
+        return result;
+    }
+
+    private void assertMalformed(String contents, String expectedLine) {
+        DataAccessException ex = assertThrows(DataAccessException.class, () -> read(contents));
+        assertTrue(ex.getMessage().contains(expectedLine), ex.getMessage());
+    }
+}
@@ -1,15 +1,30 @@
 package learn.solarfarm.domain;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import learn.solarfarm.data.DataAccessException;
+import learn.solarfarm.data.SolarPanelFileRepository;
+import learn.solarfarm.data.SolarPanelRepository;
 import learn.solarfarm.data.SolarPanelRepositoryDouble;
 import learn.solarfarm.models.Material;
 import learn.solarfarm.models.SolarPanel;
 import learn.solarfarm.models.SolarPanelKey;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Year;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -29,6 +44,12 @@ class SolarPanelServiceTest {
         assertEquals(2, solarPanels.size());
     }
 
+    @Test
+    void shouldClampPageSize() throws DataAccessException {
+        assertEquals(1, service.findBySection("Section One", 0, 0, 0).size());
+        assertEquals(1, service.findBySection("Section One", 1, 1, 100).size());
+    }
+
     @Test
     void shouldFindSolarPanelInSectionTwoRow10Column11() throws DataAccessException {
         SolarPanel solarPanel = service.findByKey(new SolarPanelKey("Section Two", 10, 11));
@@ -236,6 +257,18 @@ class SolarPanelServiceTest {
         assertTrue(result.isSuccess());
     }
 
+    @Test
+    void shouldNotUpdateToNonUniqueSectionRowColumn() throws DataAccessException {
+        // id 1 is Section One 1-1, id 2 is Section One 1-2
+        SolarPanel solarPanel = new SolarPanel(1, "Section One", 1, 2, 2020, Material.POLY_SI, true);
+
+        SolarPanelResult result = service.update(solarPanel);
+
+        assertFalse(result.isSuccess());
+        assertEquals(1, result.getErrorMessages().size());
+        assertTrue(result.getErrorMessages().get(0).contains("must be unique"));
+    }
+
     @Test
     void shouldNotUpdateEmptySection() throws DataAccessException {
         SolarPanel solarPanel = service.findByKey(new SolarPanelKey("Section One", 1, 1));
@@ -248,6 +281,23 @@ class SolarPanelServiceTest {
         assertTrue(result.getErrorMessages().get(0).contains("`section`"));
     }
 
+    @Test
+    void shouldNotAcceptDelimiterOrLineBreakInSection() throws DataAccessException {
+        for (String section : List.of("Section~Three", "Section\nThree", "Section Three\r")) {
+            SolarPanel solarPanel = new SolarPanel(0, section, 1, 1, 2020, Material.POLY_SI, true);
+
+            SolarPanelResult result = service.create(solarPanel);
+
+            assertFalse(result.isSuccess());
+            assertEquals(1, result.getErrorMessages().size());
+            assertTrue(result.getErrorMessages().get(0).contains("`section`"));
+        }
+
+        SolarPanel solarPanel = service.findByKey(new SolarPanelKey("Section One", 1, 1));
+        solarPanel.setSection("Section~One");
+        assertFalse(service.update(solarPanel).isSuccess());
+    }
+
     @Test
     void shouldNotUpdateNonPositiveId() throws DataAccessException {
         SolarPanel solarPanel = new SolarPanel();
@@ -310,4 +360,262 @@ class SolarPanelServiceTest {
 
         assertTrue(result.isSuccess());
     }
+
+    @Test
+    void shouldCreateAll() throws DataAccessException {
+        SolarPanelBatchResult result = service.createAll(List.of(
+                new SolarPanel(0, "Section Three", 1, 1, 2020, Material.CIGS, false),
+                new SolarPanel(0, "Section Three", 1, 2, 2020, Material.CIGS, false)));
+
+        assertTrue(result.isSuccess());
+        assertEquals(2, result.getSolarPanels().size());
+        assertTrue(result.getSolarPanels().get(0).getId() > 0);
+    }
+
+    @Test
+    void shouldNotCreateAllWhenAnyIsInvalid() throws DataAccessException {
+        SolarPanelBatchResult result = service.createAll(List.of(
+                new SolarPanel(0, "Section Three", 1, 1, 2020, Material.CIGS, false),
+                new SolarPanel(0, "SECTION THREE", 1, 1, 2020, Material.CIGS, false), // duplicates item 0
+                new SolarPanel(0, "Section One", 1, 2, 2020, Material.CIGS, false),   // already exists
+                new SolarPanel(0, "", 1, 3, 2020, Material.CIGS, false)));
+
+        assertFalse(result.isSuccess());
+        assertEquals(0, result.getSolarPanels().size());
+        assertEquals(Set.of(1, 2, 3), result.getItemErrorMessages().keySet());
+        assertTrue(result.getItemErrorMessages().get(1).get(0).contains("duplicate"));
+        assertTrue(result.getItemErrorMessages().get(2).get(0).contains("must be unique"));
+    }
+
+    @Test
+    void shouldNotCreateAllEmpty() throws DataAccessException {
+        SolarPanelBatchResult result = service.createAll(List.of());
+
+        assertFalse(result.isSuccess());
+        assertEquals(1, result.getErrorMessages().size());
+    }
+
+    @Test
+    void shouldFindFreeSlotsInRowThenColumnOrder() throws DataAccessException {
+        // Section One has 1-1 and 1-2
+        List<SolarPanelKey> free = service.findFreeSlots("section one", 3);
+
+        assertEquals(3, free.size());
+        assertEquals(new SolarPanelKey("section one", 1, 3), free.get(0));
+        assertEquals(new SolarPanelKey("section one", 1, 5), free.get(2));
+
+        // an unknown section is all free
+        assertEquals(new SolarPanelKey("Section Nine", 1, 1), service.findFreeSlots("Section Nine", 1).get(0));
+    }
+
+    @Test
+    void shouldOnlyFindFreeSlotsThatPassValidation() throws DataAccessException {
+        // Every slot of the first 245 rows is taken, leaving fewer than a page free.
+        HashMap<Integer, SolarPanelKey> keys = new HashMap<>();
+        for (int row = 1; row <= 245; row++) {
+            for (int column = 1; column < SolarPanelService.MAX_ROW_COLUMN; column++) {
+                keys.put(keys.size() + 100, new SolarPanelKey("Full", row, column));
+            }
+        }
+        service = new SolarPanelService(new SolarPanelRepositoryDouble() {
+            @Override
+            public Map<Integer, SolarPanelKey> findAllKeys() {
+                return keys;
+            }
+        });
+
+        List<SolarPanelKey> free = service.findFreeSlots("Full", SolarPanelService.MAX_PAGE_SIZE);
+
+        assertEquals(4 * (SolarPanelService.MAX_ROW_COLUMN - 1), free.size());
+        for (SolarPanelKey key : free) {
+            SolarPanelResult result = service.create(
+                    new SolarPanel(0, key.getSection(), key.getRow(), key.getColumn(), 2020, Material.CIGS, true));
+            assertTrue(result.isSuccess(), key + " " + result.getErrorMessages());
+        }
+    }
+
+    @Test
+    void shouldTrackOccupancyThroughWrites(@TempDir Path directory) throws Exception {
+        service = new SolarPanelService(fileRepository(directory));
+
+        SolarPanelResult created = service.create(new SolarPanel(0, "Section Three", 1, 1, 2020, Material.CIGS, false));
+        assertTrue(created.isSuccess());
+        assertEquals(new SolarPanelKey("Section Three", 1, 2), service.findFreeSlots("Section Three", 1).get(0));
+
+        // id 1 moves from The Ridge 1-1 to 5-5, freeing 1-1
+        SolarPanel moved = new SolarPanel(1, "The Ridge", 5, 5, 2020, Material.POLY_SI, true);
+        assertTrue(service.update(moved).isSuccess());
+        assertEquals(new SolarPanelKey("The Ridge", 1, 1), service.findFreeSlots("The Ridge", 1).get(0));
+
+        assertTrue(service.deleteByKey(new SolarPanelKey("The Ridge", 1, 2)).isSuccess());
+        assertFalse(service.deleteByKey(new SolarPanelKey("The Ridge", 1, 2)).isSuccess());
+    }
+
+    @Test
+    void shouldSeeWritesMadeOutsideTheService(@TempDir Path directory) throws Exception {
+        SolarPanelRepository repository = fileRepository(directory);
+        service = new SolarPanelService(repository);
+        // Another instance, sharing the same storage.
+        SolarPanelService other = new SolarPanelService(repository);
+        SolarPanelKey key = new SolarPanelKey("Section Three", 1, 1);
+        assertEquals(key, service.findFreeSlots("Section Three", 1).get(0));
+
+        assertTrue(other.create(new SolarPanel(0, "Section Three", 1, 1, 2020, Material.CIGS, false)).isSuccess());
+        assertNotNull(service.findByKey(key));
+        assertFalse(service.create(new SolarPanel(0, "Section Three", 1, 1, 2020, Material.CIGS, false)).isSuccess());
+
+        // The slot is freed elsewhere after this service saw it taken.
+        assertTrue(other.deleteByKey(key).isSuccess());
+        assertNull(service.findByKey(key));
+        assertTrue(service.create(new SolarPanel(0, "Section Three", 1, 1, 2020, Material.CIGS, false)).isSuccess());
+        assertTrue(other.deleteByKey(key).isSuccess());
+    }
+
+    private SolarPanelRepository fileRepository(Path directory) throws Exception {
+        return new SolarPanelFileRepository(seedFile(directory));
+    }
+
+    private String seedFile(Path directory) throws Exception {
+        Path path = directory.resolve("solarfarm.txt");
+        Files.copy(Paths.get("./data/solarfarm-seed.txt"), path);
+        return path.toString();
+    }
+
+    @Test
+    void shouldCountValidationFailuresByRule() throws DataAccessException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        service = new SolarPanelService(new SolarPanelRepositoryDouble(), registry, 1);
+
+        service.create(new SolarPanel(1, "Section One", 0, 1, 2020, null, true));
+        service.create(new SolarPanel(0, "Section One", 1, 1, 2020, Material.POLY_SI, true));
+
+        assertEquals(1, count(registry, SolarPanelRule.ID));
+        assertEquals(1, count(registry, SolarPanelRule.ROW));
+        assertEquals(1, count(registry, SolarPanelRule.MATERIAL));
+        assertEquals(1, count(registry, SolarPanelRule.UNIQUE));
+        assertEquals(0, count(registry, SolarPanelRule.COLUMN));
+        assertEquals(1, registry.get("solarfarm.repository")
+                .tag("method", "findAllKeys").tag("outcome", "success").timer().count());
+    }
+
+    private double count(SimpleMeterRegistry registry, SolarPanelRule rule) {
+        return registry.get(SolarPanelService.VALIDATION_FAILURES).tag("rule", rule.getTag()).counter().count();
+    }
+
+    @Test
+    void shouldIncrementSectionVersionOnWrites() throws DataAccessException {
+        long sectionOne = service.getSectionVersion("Section One");
+        long sectionTwo = service.getSectionVersion("Section Two");
+
+        assertTrue(service.create(new SolarPanel(0, "Section One", 100, 100, 2000, Material.CIGS, true)).isSuccess());
+        assertEquals(sectionOne + 1, service.getSectionVersion("section one"));
+
+        // Moving a panel changes the section it leaves and the one it joins.
+        assertTrue(service.update(new SolarPanel(1, "Section Two", 100, 100, 2020, Material.POLY_SI, true)).isSuccess());
+        assertEquals(sectionOne + 2, service.getSectionVersion("Section One"));
+        assertEquals(sectionTwo + 1, service.getSectionVersion("Section Two"));
+
+        assertFalse(service.create(new SolarPanel(0, "Section Two", 10, 11, 2000, Material.CIGS, true)).isSuccess());
+        assertFalse(service.deleteByKey(new SolarPanelKey("Section Two", 200, 200)).isSuccess());
+        assertEquals(sectionTwo + 1, service.getSectionVersion("Section Two"));
+
+        assertTrue(service.deleteByKey(new SolarPanelKey("Section Two", 10, 11)).isSuccess());
+        assertEquals(sectionTwo + 2, service.getSectionVersion("Section Two"));
+        assertEquals(0, service.getSectionVersion("Section Three"));
+    }
+
+    @Test
+    void shouldFindChangesToSectionSinceSequence() throws DataAccessException {
+        long start = service.getChangeSequence();
+
+        assertTrue(service.create(new SolarPanel(0, "Section One", 100, 100, 2000, Material.CIGS, true)).isSuccess());
+        assertTrue(service.deleteByKey(new SolarPanelKey("Section Two", 10, 11)).isSuccess());
+        assertTrue(service.update(new SolarPanel(1, "Section One", 5, 5, 2020, Material.POLY_SI, true)).isSuccess());
+
+        SolarPanelChanges changes = service.findChanges("section one", start);
+        assertFalse(changes.isResync());
+        assertEquals(start + 4, changes.getSequence());
+        assertEquals(List.of(SolarPanelChange.Type.CREATE, SolarPanelChange.Type.DELETE, SolarPanelChange.Type.UPDATE),
+                changes.getChanges().stream().map(SolarPanelChange::getType).collect(Collectors.toList()));
+        assertEquals(new SolarPanelKey("Section One", 1, 1), changes.getChanges().get(1).getKey());
+        assertEquals(5, changes.getChanges().get(2).getSolarPanel().getRow());
+
+        assertEquals(0, service.findChanges("Section One", start + 4).getChanges().size());
+        assertEquals(1, service.findChanges("Section Two", start).getChanges().size());
+        assertTrue(service.findChanges("Section One", 0).isResync());
+    }
+
+    @Test
+    void shouldLogMoveOfPanelWrittenElsewhere(@TempDir Path directory) throws Exception {
+        SolarPanelRepository repository = fileRepository(directory);
+        service = new SolarPanelService(repository);
+        assertTrue(service.create(new SolarPanel(0, "Flats", 9, 9, 2020, Material.CIGS, false)).isSuccess());
+        // Created after this service loaded its occupancy, so only the repository knows it.
+        SolarPanel moving = new SolarPanelService(repository)
+                .create(new SolarPanel(0, "Flats", 8, 8, 2020, Material.CIGS, false)).getSolarPanel();
+        long start = service.getChangeSequence();
+        long flats = service.getSectionVersion("Flats");
+
+        moving.setSection("East Hill");
+        assertTrue(service.update(moving).isSuccess());
+
+        SolarPanelChanges changes = service.findChanges("Flats", start);
+        assertEquals(1, changes.getChanges().size());
+        assertEquals(SolarPanelChange.Type.DELETE, changes.getChanges().get(0).getType());
+        assertEquals(new SolarPanelKey("Flats", 8, 8), changes.getChanges().get(0).getKey());
+        assertEquals(flats + 1, service.getSectionVersion("Flats"));
+    }
+
+    @Test
+    void shouldLogConcurrentUpdatesInTheOrderTheyWereMade(@TempDir Path directory) throws Exception {
+        CountDownLatch applied = new CountDownLatch(1);
+        // The first update is slow to return after the repository has applied it.
+        SolarPanelRepository repository = new SolarPanelFileRepository(seedFile(directory)) {
+            @Override
+            public boolean update(SolarPanel solarPanel) throws DataAccessException {
+                boolean result = super.update(solarPanel);
+                if (solarPanel.getYearInstalled() == 2000) {
+                    applied.countDown();
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return result;
+            }
+        };
+        service = new SolarPanelService(repository);
+        long start = service.getChangeSequence();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<SolarPanelResult> first = executor.submit(() ->
+                    service.update(new SolarPanel(1, "The Ridge", 1, 1, 2000, Material.POLY_SI, true)));
+            applied.await();
+            assertTrue(service.update(new SolarPanel(1, "The Ridge", 1, 1, 2001, Material.POLY_SI, true)).isSuccess());
+            assertTrue(first.get().isSuccess());
+        } finally {
+            executor.shutdown();
+        }
+
+        List<SolarPanelChange> changes = service.findChanges("The Ridge", start).getChanges();
+        assertEquals(List.of(2000, 2001), changes.stream()
+                .map(change -> change.getSolarPanel().getYearInstalled()).collect(Collectors.toList()));
+        assertEquals(2001, repository.findById(1).getYearInstalled());
+    }
+
+    @Test
+    void shouldResyncWhenChangesAreNoLongerKept() throws DataAccessException {
+        service = new SolarPanelService(new SolarPanelRepositoryDouble(), new SimpleMeterRegistry(), 1, 2);
+        long start = service.getChangeSequence();
+        for (int column = 100; column < 103; column++) {
+            assertTrue(service.create(new SolarPanel(0, "Section One", 100, column, 2000, Material.CIGS, true)).isSuccess());
+        }
+
+        SolarPanelChanges changes = service.findChanges("Section One", start);
+        assertTrue(changes.isResync());
+        assertEquals(start + 3, changes.getSequence());
+        assertEquals(2, service.findChanges("Section One", start + 1).getChanges().size());
+    }
 }
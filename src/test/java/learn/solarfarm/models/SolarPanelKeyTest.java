@@ -0,0 +1,68 @@
+package learn.solarfarm.models;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SolarPanelKeyTest {
+
+    @Test
+    void keysThatDifferOnlyBySectionCaseShouldBeEqualAndHashTheSame() {
+        SolarPanelKey key = new SolarPanelKey("The Ridge", 1, 2);
+        SolarPanelKey other = new SolarPanelKey("THE ridge", 1, 2);
+
+        assertEquals(key, other);
+        assertEquals(key.hashCode(), other.hashCode());
+
+        HashMap<SolarPanelKey, String> map = new HashMap<>();
+        map.put(key, "found");
+        assertEquals("found", map.get(other));
+        assertNotEquals(key, new SolarPanelKey("The Ridge", 2, 1));
+    }
+
+    @Test
+    void keysThatDifferOnlyBySectionCaseShouldPackTheSame() {
+        SectionRegistry.getDefault().register("Packed Section");
+
+        long packed = new SolarPanelKey("Packed Section", 249, 17).toLong();
+
+        assertNotEquals(SolarPanelKey.UNPACKED, packed);
+        assertEquals(packed, new SolarPanelKey("PACKED SECTION", 249, 17).toLong());
+        assertNotEquals(packed, new SolarPanelKey("Packed Section", 17, 249).toLong());
+    }
+
+    @Test
+    void shouldNotPackOrRegisterAnUnknownSection() {
+        int sections = SectionRegistry.getDefault().size();
+
+        assertEquals(SolarPanelKey.UNPACKED, new SolarPanelKey("Never Registered", 1, 1).toLong());
+        assertEquals(SolarPanelKey.UNPACKED, new SolarPanelKey(null, 1, 1).toLong());
+        assertEquals(sections, SectionRegistry.getDefault().size());
+        assertEquals(SectionRegistry.UNKNOWN, SectionRegistry.getDefault().find("Never Registered"));
+    }
+
+    @Test
+    void shouldNotPackARowOrColumnThatDoesNotFit() {
+        SectionRegistry.getDefault().register("Packed Section");
+
+        assertEquals(SolarPanelKey.UNPACKED, new SolarPanelKey("Packed Section", 65536, 1).toLong());
+        assertEquals(SolarPanelKey.UNPACKED, new SolarPanelKey("Packed Section", 1, -1).toLong());
+        assertNotEquals(SolarPanelKey.UNPACKED, new SolarPanelKey("Packed Section", 65535, 0).toLong());
+    }
+
+    @Test
+    void panelKeyShouldFollowItsFields() {
+        SolarPanel solarPanel = new SolarPanel();
+        solarPanel.setSection("Flats");
+        solarPanel.setRow(3);
+        solarPanel.setColumn(7);
+
+        assertEquals(new SolarPanelKey("flats", 3, 7), solarPanel.getKey());
+        assertSame(solarPanel.getKey(), solarPanel.getKey());
+
+        solarPanel.setColumn(8);
+        assertEquals(new SolarPanelKey("Flats", 3, 8), solarPanel.getKey());
+    }
+}